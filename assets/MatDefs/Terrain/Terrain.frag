@@ -0,0 +1,19 @@
+uniform sampler2D m_DiffuseMap;
+
+varying vec2 texCoord;
+varying vec3 lightColor;
+varying float sunlit;
+
+void main(){
+    #ifdef HIDE_SUNLIT
+    if (sunlit > 0.5)
+        discard;
+    #endif
+    #ifdef HIDE_DARK
+    if (sunlit <= 0.5)
+        discard;
+    #endif
+
+    vec4 color = texture2D(m_DiffuseMap, texCoord);
+    gl_FragColor = vec4(color.rgb * lightColor, color.a);
+}
@@ -0,0 +1,27 @@
+uniform mat4 g_WorldViewProjectionMatrix;
+uniform mat4 g_WorldMatrix;
+
+uniform vec3 m_SunDirection;
+uniform vec4 m_SunColor;
+uniform vec4 m_AmbientColor;
+
+attribute vec3 inPosition;
+attribute vec3 inNormal;
+attribute vec2 inTexCoord;
+// x is the sunlight exposure of the Face, y the ambient occlusion of the vertex
+attribute vec2 inTexCoord2;
+
+varying vec2 texCoord;
+varying vec3 lightColor;
+varying float sunlit;
+
+void main(){
+    texCoord = inTexCoord;
+    sunlit = inTexCoord2.x;
+
+    vec3 worldNormal = normalize((g_WorldMatrix * vec4(inNormal, 0.0)).xyz);
+    float sun = max(dot(worldNormal, -m_SunDirection), 0.0) * inTexCoord2.x;
+    lightColor = (m_AmbientColor.rgb + m_SunColor.rgb * sun) * inTexCoord2.y;
+
+    gl_Position = g_WorldViewProjectionMatrix * vec4(inPosition, 1.0);
+}
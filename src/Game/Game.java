@@ -154,37 +154,14 @@ public class Game extends AbstractAppState implements ActionListener, Serializab
 		short SizeY = (short) (Y + Height);
 
 		// Create and add Chunks with shape and material data
-		for (int x = X; x < SizeX; x++) {
-			for (int y = Y; y < SizeY; y++) {
-				MapGeology.generateChunkHeight(x, y, (float) 10.0, (float) 1.5);
-
-				int zBottom, zTop;
-				if ((MapGeology.getChunkBottomZLevel() - 2) < 0) {
-					zBottom = ((MapGeology.getChunkBottomZLevel() - 2) / BlockCoordinate.CHUNK_EDGE_SIZE) - 1;
-				} else { 
-					zBottom = ((MapGeology.getChunkBottomZLevel() - 2) / BlockCoordinate.CHUNK_EDGE_SIZE);
-				}
-				if ((MapGeology.getChunkTopZLevel() + 2) < 0) {
-					zTop = ((MapGeology.getChunkTopZLevel() + 2) / BlockCoordinate.CHUNK_EDGE_SIZE) - 1;
-				} else { 
-					zTop = ((MapGeology.getChunkTopZLevel() + 2) / BlockCoordinate.CHUNK_EDGE_SIZE);
-				}
-
-				Sector targetSector = MainMap.getSector(new SectorCoordinate((byte)0, (byte)0));
-				for (int z = zBottom; z <= zTop; z++) {
-					ChunkCoordinate TargetChunkCoordinates = new ChunkCoordinate(x, y, z);
-					Chunk targetChunk = targetSector.getChunk(TargetChunkCoordinates);
-					MapGeology.loadChunkData(targetChunk);
-				}
-			}
-		}
+		MapGeology.loadMapChunks(MainMap, X, Y, SizeX, SizeY);
 
 		MainMap.generateFirstLight();
 
 		for (Sector targetSector : MainMap.getSectorCollection()) {
 			for (Chunk TargetChunk : targetSector.getChunkCollection()) {
 				for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
-					TargetChunk.buildFaces(i);
+					TargetChunk.buildFaces(MainMap, i);
 				}
 				TargetChunk.growGrass();
 			}
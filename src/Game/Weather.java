@@ -19,7 +19,6 @@ package Game;
 
 import com.jme3.light.DirectionalLight;
 import com.jme3.math.ColorRGBA;
-import com.jme3.scene.Node;
 import com.jme3.math.Vector3f;
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
@@ -51,12 +50,26 @@ public class Weather extends Temporal implements Serializable {
 		Sun.setColor(Suncolor.mult(0.6f));
 	}
 
-	public void attatchSun(Node TerrainNode) {
+	public void resetSun() {
 		SunVec.set(0, 0, -1);
 		SunVec.normalizeLocal();
-		Sun.setDirection(SunVec);
+		updateSun();
+	}
+
+	/**
+	 * Light for models standing in sunlight, the Terrain takes the direction
+	 * and color of the Sun as uniforms instead.
+	 */
+	public DirectionalLight getSun() {
+		return Sun;
+	}
+
+	public Vector3f getSunDirection() {
+		return Sun.getDirection();
+	}
 
-		TerrainNode.addLight(Sun);
+	public ColorRGBA getSunColor() {
+		return Sun.getColor();
 	}
 
 	public long wake(long CurrentTick) {
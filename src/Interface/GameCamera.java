@@ -225,6 +225,19 @@ public class GameCamera {
 		}
 	}
 
+	public Camera.FrustumIntersect intersect(BoundingBox Box) {
+		camera.setPlaneState(0);
+		return camera.contains(Box);
+	}
+
+	public Vector3f getTargetLocation() {
+		return TargetNode.getWorldTranslation().clone();
+	}
+
+	public Vector3f getLookDirection() {
+		return camera.getDirection().clone();
+	}
+
 	public void write(JmeExporter ex) throws IOException {
 	}
 
@@ -43,6 +43,7 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.shape.Sphere;
 
 import com.jme3.bounding.BoundingBox;
+import com.jme3.renderer.Camera;
 
 import com.jme3.collision.CollisionResult;
 import com.jme3.collision.CollisionResults;
@@ -304,7 +305,6 @@ public class GameCameraState extends AbstractAppState implements ActionListener,
 			} else if (mouseWheelEnabled) {
 				MainCamera.zoomCamera(value);
 			}
-			Terrain.setLevelofDetail(MainCamera.zoomFactor);
 			Terrain.SwapFrustrumChunks();
 
 		} else if (name.equals("ZoomOut")) {
@@ -314,7 +314,6 @@ public class GameCameraState extends AbstractAppState implements ActionListener,
 			} else if (mouseWheelEnabled) {
 				MainCamera.zoomCamera(-value);
 			}
-			Terrain.setLevelofDetail(MainCamera.zoomFactor);
 			Terrain.SwapFrustrumChunks();
 
 		}
@@ -386,11 +385,9 @@ public class GameCameraState extends AbstractAppState implements ActionListener,
 			}
 		} else if (name.equals("ZoomIn")) {
 			MainCamera.zoomCamera(value);
-			Terrain.setLevelofDetail(MainCamera.zoomFactor);
 			Terrain.SwapFrustrumChunks();
 		} else if (name.equals("ZoomOut")) {
 			MainCamera.zoomCamera(-value);
-			Terrain.setLevelofDetail(MainCamera.zoomFactor);
 			Terrain.SwapFrustrumChunks();
 		}
 	}
@@ -664,4 +661,16 @@ public class GameCameraState extends AbstractAppState implements ActionListener,
 	public boolean contains(BoundingBox box) {
 		return MainCamera.contains(box);
 	}
+
+	public Camera.FrustumIntersect intersect(BoundingBox box) {
+		return MainCamera.intersect(box);
+	}
+
+	public Vector3f getTargetLocation() {
+		return MainCamera.getTargetLocation();
+	}
+
+	public Vector3f getLookDirection() {
+		return MainCamera.getLookDirection();
+	}
 }
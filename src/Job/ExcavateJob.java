@@ -17,6 +17,7 @@
 
 package Job;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.BitSet;
 
@@ -210,15 +211,24 @@ public class ExcavateJob extends Job implements Serializable {
 		MapCoordinate ExcavateBlock = null;
 		MapCoordinate AccsibleBlock = null;
 
+		ArrayList<MapCoordinate> Excavations = new ArrayList<MapCoordinate>();
+		ArrayList<MapCoordinate> Accesses = new ArrayList<MapCoordinate>();
 		for (Map.Entry<MapCoordinate, MapCoordinate> entry : AccessibleMap.entrySet()) {
-			// distance test for best location
 			if (!isAssigned(entry.getKey())) {
-				AccsibleBlock = entry.getValue();
-				ExcavateBlock = entry.getKey();
-				break;
+				Excavations.add(entry.getKey());
+				Accesses.add(entry.getValue());
 			}
 		}
 
+		if (!Excavations.isEmpty()) {
+			// The nearest site the Pawn can walk to, one search over all of them,
+			// if none lies within the searches limit the first is taken
+			PathManager.NearestPath Nearest = paths.findNearestPath(IdlePawn.getMovementModality(), IdlePawn.getLocation(), Accesses.toArray(new MapCoordinate[Accesses.size()]));
+			int Chosen = Nearest != null ? Nearest.GoalIndex : 0;
+			ExcavateBlock = Excavations.get(Chosen);
+			AccsibleBlock = Accesses.get(Chosen);
+		}
+
 		if (ExcavateBlock != null) {
 			AssignedWorkers.put(IdlePawn, ExcavateBlock);
 			BitSet Assignments = AssignedExcavations.get(ExcavateBlock.Chunk);
@@ -24,8 +24,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map.Entry;
 
 /**
  * Primary MapData storage class, holds all data for describing a set of blocks
@@ -58,6 +62,11 @@ public class Chunk implements Serializable {
 	// Dirty values, set true on changes, set false by rendering
 	transient boolean DirtyTerrainRendering;
 	transient boolean DirtyPathRendering;
+	// Incremented on every change to the Terrain, identifies cached meshes
+	transient int TerrainVersion;
+	// Face to face visibility through open Blocks, rebuilt lazily after shape changes
+	transient ChunkVisibility Visibility;
+	transient boolean DirtyVisibility;
 
 	protected static final short WallSurface = DataManager.getLabelIndex("SURFACETYPE_ROUGH_WALL");
 	protected static final short FloorSurface = DataManager.getLabelIndex("SURFACETYPE_ROUGH_FLOOR_1");
@@ -102,6 +111,7 @@ public class Chunk implements Serializable {
 		AdjacentBlockShape = new BlockShape();
 		DirtyTerrainRendering = true;
 		DirtyPathRendering = true;
+		DirtyVisibility = true;
 	}
 
 	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
@@ -110,6 +120,7 @@ public class Chunk implements Serializable {
 		// fix transients
 		DirtyTerrainRendering = true;
 		DirtyPathRendering = true;
+		DirtyVisibility = true;
 	}
 
 	public void setChunkCoordinates(ChunkCoordinate Coordinates) {
@@ -149,6 +160,8 @@ public class Chunk implements Serializable {
 					setFaceShape(new FaceCoordinate(Coordinates, Direction.DIRECTION_NONE), new FaceShape(NewShape, null, Direction.DIRECTION_NONE));
 				}
 				setRenderingDirty();
+				if (Coordinates.DetailLevel == 0)
+					setVisibilityDirty();
 			}
 		}
 	}
@@ -177,7 +190,14 @@ public class Chunk implements Serializable {
 	}
 
 	public void buildFaces(int LevelofDetail) {
-		GameMap ParentMap = GameMap.getMap();
+		buildFaces(GameMap.getMap(), LevelofDetail);
+	}
+
+	/**
+	 * Builds the Faces of the detail level against the given map, for use where
+	 * no Game is running.
+	 */
+	public void buildFaces(GameMap ParentMap, int LevelofDetail) {
 		MapCoordinate AdjacentCoordinates = new MapCoordinate();
 		MapCoordinate TargetCoordinates = new MapCoordinate();
 	
@@ -234,6 +254,44 @@ public class Chunk implements Serializable {
 			}
 		}
 		setRenderingDirty();
+
+		if (LevelofDetail == 0)
+			getVisibility();
+	}
+
+	/**
+	 * Returns the face to face visibility graph of this Chunk, rebuilding it
+	 * with a flood fill of the full detail Block shapes if any shape changed.
+	 */
+	public synchronized ChunkVisibility getVisibility() {
+		if (Visibility == null || DirtyVisibility) {
+			short[] ShapeData = new short[BlockCoordinate.BLOCKS_PER_CHUNK];
+			for (int z = 0; z < BlockCoordinate.CHUNK_EDGE_SIZE; z++) {
+				if (SlabShapeInitialized[0].get(z)) {
+					short[] Slab = BlockShapeTypes[0][z];
+					for (int xy = 0; xy < Slab.length; xy++) {
+						ShapeData[(xy << 5) | z] = Slab[xy];
+					}
+				} else {
+					short SlabShape = SlabShapeTypes[0][z];
+					for (int xy = 0; xy < BlockCoordinate.CHUNK_EDGE_SIZE * BlockCoordinate.CHUNK_EDGE_SIZE; xy++) {
+						ShapeData[(xy << 5) | z] = SlabShape;
+					}
+				}
+			}
+
+			ChunkVisibility NewVisibility = new ChunkVisibility();
+			NewVisibility.build(ShapeData);
+			Visibility = NewVisibility;
+			DirtyVisibility = false;
+		}
+		return Visibility;
+	}
+
+	void setVisibilityDirty() {
+		DirtyVisibility = true;
+		if (parentSector != null)
+			parentSector.dirtyVisibility();
 	}
 
 	public void growGrass() {
@@ -332,12 +390,64 @@ public class Chunk implements Serializable {
 		return Faces[LevelofDetail];
 	}
 
+	/**
+	 * Hash of everything about the Faces at one detail level that goes into
+	 * their rendering, position within the Chunk, shape, material, surface and
+	 * sunlight. Faces are combined independent of iteration order so Chunks with
+	 * equal Faces always hash equally, even across sessions.
+	 */
+	public long getFacesHash(int LevelofDetail) {
+		long Hash = Faces[LevelofDetail].size();
+		for (Entry<FaceCoordinate, Face> entry : Faces[LevelofDetail].entrySet()) {
+			Face TargetFace = entry.getValue();
+			long FaceHash = entry.getKey().hashCode();
+			FaceHash = FaceHash * 31 + TargetFace.getFaceShapeType().getPackedData();
+			FaceHash = FaceHash * 31 + TargetFace.getFaceMaterialType();
+			FaceHash = FaceHash * 31 + TargetFace.getFaceSurfaceType();
+			FaceHash = FaceHash * 31 + (TargetFace.isSunlit() ? 1 : 0);
+			Hash += mixHash(FaceHash);
+		}
+		return mixHash(Hash);
+	}
+
+	/**
+	 * Everything getFacesHash combines, two longs per Face ordered by position,
+	 * so Chunks with equal keys always have equal Faces where equal hashes
+	 * only almost always do.
+	 */
+	public long[] getFacesKey(int LevelofDetail) {
+		ArrayList<Entry<FaceCoordinate, Face>> Entries = new ArrayList<Entry<FaceCoordinate, Face>>(Faces[LevelofDetail].entrySet());
+		Collections.sort(Entries, new Comparator<Entry<FaceCoordinate, Face>>() {
+			public int compare(Entry<FaceCoordinate, Face> First, Entry<FaceCoordinate, Face> Second) {
+				return First.getKey().hashCode() - Second.getKey().hashCode();
+			}
+		});
+
+		long[] Key = new long[Entries.size() * 2];
+		int i = 0;
+		for (Entry<FaceCoordinate, Face> entry : Entries) {
+			Face TargetFace = entry.getValue();
+			long Position = entry.getKey().hashCode();
+			Key[i++] = (Position << 17) | ((TargetFace.getFaceMaterialType() & 0xFFFF) << 1) | (TargetFace.isSunlit() ? 1 : 0);
+			Key[i++] = (TargetFace.getFaceShapeType().getPackedData() << 16) | (TargetFace.getFaceSurfaceType() & 0xFFFF);
+		}
+		return Key;
+	}
+
+	private static long mixHash(long Value) {
+		Value = (Value ^ (Value >>> 33)) * 0xff51afd7ed558ccdL;
+		Value = (Value ^ (Value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return Value ^ (Value >>> 33);
+	}
+
 	public void setRenderingDirty() {
 		setDirtyTerrainRendering(true);
 		setDirtyPathingRendering(true);
 	}
 
 	public void setDirtyTerrainRendering(boolean dirty) {
+		if (dirty)
+			TerrainVersion++;
 		DirtyTerrainRendering = dirty;
 	}
 
@@ -349,6 +459,10 @@ public class Chunk implements Serializable {
 		return DirtyTerrainRendering;
 	}
 
+	public int getTerrainVersion() {
+		return TerrainVersion;
+	}
+
 	public boolean isPathingRenderingDirty() {
 		return DirtyPathRendering;
 	}
@@ -359,7 +473,7 @@ public class Chunk implements Serializable {
 
 	public void setBlockHidden(short Coordinates, boolean NewValue) {
 		Hidden.set(Coordinates, NewValue);
-		DirtyTerrainRendering = true;
+		setDirtyTerrainRendering(true);
 	}
 
 	public boolean isBlockSubTerranean(short Coordinates) {
@@ -368,7 +482,7 @@ public class Chunk implements Serializable {
 
 	public void setBlockSubTerranean(short Coordinates, boolean NewValue) {
 		SubTerranean.set(Coordinates, NewValue);
-		DirtyTerrainRendering = true;
+		setDirtyTerrainRendering(true);
 	}
 
 	public boolean isBlockSkyView(short Coordinates) {
@@ -377,7 +491,7 @@ public class Chunk implements Serializable {
 
 	public void setBlockSkyView(short Coordinates, boolean NewValue) {
 		SkyView.set(Coordinates, NewValue);
-		DirtyTerrainRendering = true;
+		setDirtyTerrainRendering(true);
 	}
 
 	public boolean isBlockSunLit(short Coordinates) {
@@ -386,7 +500,7 @@ public class Chunk implements Serializable {
 
 	public void setBlockSunLit(short Coordinates, boolean NewValue) {
 		SunLit.set(Coordinates, NewValue);
-		DirtyTerrainRendering = true;
+		setDirtyTerrainRendering(true);
 	}
 
 	@Override
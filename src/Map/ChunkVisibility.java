@@ -0,0 +1,195 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Map;
+
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.Direction;
+
+import java.util.BitSet;
+
+/**
+ * Face to face visibility graph of a single Chunk, records which of the six
+ * faces of the Chunks cubic volume can see each other through open (non solid)
+ * Blocks. Built with a flood fill of every open region inside the Chunk, each
+ * region connects all the Chunk faces that it touches.
+ *
+ * Faces are indexed in the same order as Direction.AXIAL_DIRECTIONS, a Chunk
+ * that is completly solid has no connections and can never be seen through.
+ *
+ * @author Impaler
+ */
+public class ChunkVisibility {
+
+	public static final int FACE_COUNT = Direction.AXIAL_DIRECTIONS.length;
+
+	public static final int FACE_UP = 0;
+	public static final int FACE_DOWN = 1;
+	public static final int FACE_NORTH = 2;
+	public static final int FACE_SOUTH = 3;
+	public static final int FACE_EAST = 4;
+	public static final int FACE_WEST = 5;
+
+	public static final int ALL_FACES = (1 << FACE_COUNT) - 1;
+
+	private static final int EDGE = BlockCoordinate.CHUNK_EDGE_SIZE - 1;
+	private static final int SHIFT_X = 10;
+	private static final int SHIFT_Y = 5;
+
+	// Bit (From * FACE_COUNT + To) is set when the two faces see each other
+	private long Connections;
+	// Faces which touch any open Block at all
+	private int OpenFaces;
+
+	public ChunkVisibility() {
+		Connections = 0;
+		OpenFaces = 0;
+	}
+
+	/**
+	 * Flood fills the open Blocks of the detail level zero shape data,
+	 * ShapeData is indexed by Block index in the same packing as BlockCoordinate.
+	 */
+	void build(short[] ShapeData) {
+		Connections = 0;
+		OpenFaces = 0;
+
+		BlockShape TestShape = new BlockShape();
+		BitSet Visited = new BitSet(BlockCoordinate.BLOCKS_PER_CHUNK);
+		int[] Stack = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+
+		for (int Start = 0; Start < BlockCoordinate.BLOCKS_PER_CHUNK; Start++) {
+			if (Visited.get(Start))
+				continue;
+
+			TestShape.setData(ShapeData[Start]);
+			if (TestShape.isSolid()) {
+				Visited.set(Start);
+				continue;
+			}
+
+			int RegionFaces = 0;
+			int StackSize = 0;
+			Stack[StackSize++] = Start;
+			Visited.set(Start);
+
+			while (StackSize > 0) {
+				int Index = Stack[--StackSize];
+				int X = (Index >> SHIFT_X) & EDGE;
+				int Y = (Index >> SHIFT_Y) & EDGE;
+				int Z = Index & EDGE;
+
+				RegionFaces |= touchedFaces(X, Y, Z);
+
+				if (X > 0)
+					StackSize = push(Index - (1 << SHIFT_X), ShapeData, Visited, Stack, StackSize, TestShape);
+				if (X < EDGE)
+					StackSize = push(Index + (1 << SHIFT_X), ShapeData, Visited, Stack, StackSize, TestShape);
+				if (Y > 0)
+					StackSize = push(Index - (1 << SHIFT_Y), ShapeData, Visited, Stack, StackSize, TestShape);
+				if (Y < EDGE)
+					StackSize = push(Index + (1 << SHIFT_Y), ShapeData, Visited, Stack, StackSize, TestShape);
+				if (Z > 0)
+					StackSize = push(Index - 1, ShapeData, Visited, Stack, StackSize, TestShape);
+				if (Z < EDGE)
+					StackSize = push(Index + 1, ShapeData, Visited, Stack, StackSize, TestShape);
+			}
+
+			connectFaces(RegionFaces);
+			if (Connections == -1L >>> (64 - (FACE_COUNT * FACE_COUNT)))
+				return;  // Everything already sees everything, no need to continue
+		}
+	}
+
+	private static int push(int Index, short[] ShapeData, BitSet Visited, int[] Stack, int StackSize, BlockShape TestShape) {
+		if (!Visited.get(Index)) {
+			Visited.set(Index);
+			TestShape.setData(ShapeData[Index]);
+			if (!TestShape.isSolid()) {
+				Stack[StackSize++] = Index;
+			}
+		}
+		return StackSize;
+	}
+
+	private static int touchedFaces(int X, int Y, int Z) {
+		int Faces = 0;
+		if (Z == EDGE)
+			Faces |= 1 << FACE_UP;
+		if (Z == 0)
+			Faces |= 1 << FACE_DOWN;
+		if (Y == EDGE)
+			Faces |= 1 << FACE_NORTH;
+		if (Y == 0)
+			Faces |= 1 << FACE_SOUTH;
+		if (X == EDGE)
+			Faces |= 1 << FACE_EAST;
+		if (X == 0)
+			Faces |= 1 << FACE_WEST;
+		return Faces;
+	}
+
+	private void connectFaces(int RegionFaces) {
+		OpenFaces |= RegionFaces;
+		for (int From = 0; From < FACE_COUNT; From++) {
+			if ((RegionFaces & (1 << From)) == 0)
+				continue;
+			for (int To = 0; To < FACE_COUNT; To++) {
+				if ((RegionFaces & (1 << To)) != 0) {
+					Connections |= 1L << (From * FACE_COUNT + To);
+				}
+			}
+		}
+	}
+
+	public boolean isConnected(int FromFace, int ToFace) {
+		return (Connections & (1L << (FromFace * FACE_COUNT + ToFace))) != 0;
+	}
+
+	/**
+	 * Mask of all faces visible from any of the faces in the EntryFaces mask.
+	 */
+	public int getVisibleFaces(int EntryFaces) {
+		int Result = 0;
+		for (int From = 0; From < FACE_COUNT; From++) {
+			if ((EntryFaces & (1 << From)) != 0) {
+				Result |= (int) ((Connections >>> (From * FACE_COUNT)) & ALL_FACES);
+			}
+		}
+		return Result;
+	}
+
+	public int getOpenFaces() {
+		return OpenFaces;
+	}
+
+	public boolean isOpaque() {
+		return OpenFaces == 0;
+	}
+
+	public static int getFaceIndex(Direction DirectionType) {
+		for (int i = 0; i < FACE_COUNT; i++) {
+			if (Direction.AXIAL_DIRECTIONS[i] == DirectionType)
+				return i;
+		}
+		return -1;
+	}
+
+	public static int getOppositeFace(int Face) {
+		return Face ^ 1;  // Axial directions are listed in opposing pairs
+	}
+}
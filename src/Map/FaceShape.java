@@ -66,6 +66,13 @@ public class FaceShape implements Serializable {
 	public Direction getFaceDirection() {
 		return Direction.ANGULAR_DIRECTIONS[FaceDirection];
 	}
+
+	/**
+	 * All shape data packed together, equal shapes have equal packed data.
+	 */
+	public long getPackedData() {
+		return ((long) (SourceBlockData & 0xFFFF) << 24) | ((AdjacentBlockData & 0xFFFF) << 8) | (FaceDirection & 0xFF);
+	}
 	
 	public BlockShape getSourceBlockShape() {
 		return new BlockShape(SourceBlockData);
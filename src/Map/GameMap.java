@@ -89,6 +89,34 @@ public class GameMap implements Serializable {
 		return targetSector != null ? targetSector : initializeSector(Coordinates);
 	}
 
+	/**
+	 * Finds an existing Chunk without initializing one, null if no Chunk exists
+	 */
+	public Chunk getChunk(ChunkCoordinate Coordinates) {
+		for (Sector targetSector : Sectors.values()) {
+			Chunk TargetChunk = targetSector.Chunks.get(Coordinates);
+			if (TargetChunk != null)
+				return TargetChunk;
+		}
+		return null;
+	}
+
+	public int getChunkCount() {
+		int Count = 0;
+		for (Sector targetSector : Sectors.values()) {
+			Count += targetSector.Chunks.size();
+		}
+		return Count;
+	}
+
+	public int getVisibilityRevision() {
+		int Revision = 0;
+		for (Sector targetSector : Sectors.values()) {
+			Revision += targetSector.getVisibilityRevision();
+		}
+		return Revision;
+	}
+
 	private Sector initializeSector(SectorCoordinate Coordinates) {
 		Sector NewSector = new Sector(Seed);
 		NewSector.setSectorCoordinates(Coordinates);
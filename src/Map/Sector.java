@@ -51,6 +51,8 @@ public class Sector implements Serializable {
 
 	ChunkCoordinate TestingCooords = new ChunkCoordinate();
 	BlockShape TargetBlockShape, AboveBlockShape, BelowBlockShape, AdjacentBlockShape;
+	// Incremented whenever a Chunks visibility graph changes
+	transient volatile int VisibilityRevision;
 
 	protected Sector(int Seed) {
 		this.Seed = Seed;
@@ -144,6 +146,14 @@ public class Sector implements Serializable {
 		return TargetChunk;
 	}
 
+	void dirtyVisibility() {
+		VisibilityRevision++;
+	}
+
+	public int getVisibilityRevision() {
+		return VisibilityRevision;
+	}
+
 	public int getHighestChunk() {
 		return HighestChunk;
 	}
@@ -294,13 +304,15 @@ public class Sector implements Serializable {
 			TargetCoords.Z--;
 			Chunk BottomChunk = Chunks.get(TargetCoords);
 
-			boolean LightRemains = false;
+			boolean LightRemains = true;
 
 			for (int i = 0; i < BlockCoordinate.BLOCKS_PER_CHUNK; i++) {
 				TopChunk.setBlockSunLit((short) i, true);
 			}
 
-			do {
+			// A column may be a single Chunk, with nothing below to light
+			while (BottomChunk != null && LightRemains) {
+				LightRemains = false;
 				for (BlockCoordinate Index = new BlockCoordinate(); !Index.end(); Index.next()) {
 					TopChunk.getBlockShape(Index, TargetBlockShape);
 					if (TopChunk.isBlockSunLit(Index.getBlockIndex()) && !TargetBlockShape.hasFace(Direction.DIRECTION_NONE)) {
@@ -312,7 +324,7 @@ public class Sector implements Serializable {
 				TopChunk = BottomChunk;
 				TargetCoords.Z--;
 				BottomChunk = Chunks.get(TargetCoords);
-			} while (BottomChunk != null && LightRemains);
+			}
 		}
 	}
 
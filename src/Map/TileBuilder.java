@@ -25,11 +25,10 @@ import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.math.Vector3f;
 import com.jme3.math.Vector2f;
 
+import Renderer.BufferPool;
 import Renderer.TextureManager.TextureAtlasCoordinates;
 
 import java.util.ArrayList;
-import static com.jme3.util.BufferUtils.createFloatBuffer;
-import static com.jme3.util.BufferUtils.createIntBuffer;
 import java.io.Serializable;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -45,6 +44,10 @@ public class TileBuilder implements Serializable {
 	private static final long serialVersionUID = 1;
 
 	ConcurrentHashMap<FaceShape, MeshData> MesheDataMap;	// map tileshape to mesh for retrival
+	ConcurrentHashMap<Long, MeshData> SkirtDataMap;	// keyed by the packed FaceShape and the side
+
+	// Blocks a skirt hangs below its Face, a neighbour one detail level coarser can sit this much lower
+	static final float SKIRT_DEPTH = 2.0f;
 
 	private class MeshData {
 		ArrayList<Vector3f> Vertices; 
@@ -69,6 +72,7 @@ public class TileBuilder implements Serializable {
 
 	public TileBuilder() {
 		MesheDataMap = new ConcurrentHashMap<FaceShape, MeshData>();
+		SkirtDataMap = new ConcurrentHashMap<Long, MeshData>();
 	}
 
 	public Mesh getMesh(FaceShape Shape, TextureAtlasCoordinates AtlasCoords) {
@@ -101,13 +105,32 @@ public class TileBuilder implements Serializable {
 		}
 	}
 
+	/**
+	 * A strip hanging down from the edge of a floor or slope Face along one
+	 * cardinal Side of its Block, facing outwards. Where Chunks meshed at
+	 * different detail levels meet their surfaces need not line up, the skirt
+	 * of the higher surface covers the gap. Null for any other Face.
+	 */
+	public Mesh getSkirtMesh(FaceShape Shape, Direction Side, TextureAtlasCoordinates AtlasCoords) {
+		Long Key = Long.valueOf((Shape.getPackedData() << 5) | Side.ordinal());
+		MeshData TargetMeshData = SkirtDataMap.get(Key);
+
+		if (TargetMeshData == null) {
+			TargetMeshData = createSkirtMesh(Shape, Side);
+			if (TargetMeshData != null)
+				SkirtDataMap.put(Key, TargetMeshData);
+		}
+		return finalizeMesh(TargetMeshData, AtlasCoords);
+	}
+
 	private Mesh finalizeMesh(MeshData Data, TextureAtlasCoordinates AtlasCoords) {
 		if (Data == null || AtlasCoords == null)
 			return null;
 
 		Mesh ManualObject = new Mesh();
+		BufferPool Pool = BufferPool.getBufferPool();
 
-		FloatBuffer Vertbuff = createFloatBuffer(3 * Data.Vertices.size());
+		FloatBuffer Vertbuff = Pool.borrowFloatBuffer(3 * Data.Vertices.size());
 		for (Vector3f element : Data.Vertices) {
 			Vertbuff.put(element.x);
 			Vertbuff.put(element.y);
@@ -115,7 +138,7 @@ public class TileBuilder implements Serializable {
 		}
 		Vertbuff.flip();
 
-		FloatBuffer Normbuff = createFloatBuffer(3 * Data.Normals.size());
+		FloatBuffer Normbuff = Pool.borrowFloatBuffer(3 * Data.Normals.size());
 		for (Vector3f element : Data.Normals) {
 			Normbuff.put(element.x);
 			Normbuff.put(element.y);
@@ -124,7 +147,7 @@ public class TileBuilder implements Serializable {
 		Normbuff.flip();
 
 
-		FloatBuffer Texbuff = createFloatBuffer(2 * Data.TextureCoords.size());
+		FloatBuffer Texbuff = Pool.borrowFloatBuffer(2 * Data.TextureCoords.size());
 		for (Vector2f element : Data.TextureCoords) {
 			float X = AtlasCoords.Left + ((AtlasCoords.Right - AtlasCoords.Left) * element.x);
 			float Y = AtlasCoords.Top + ((AtlasCoords.Bottom - AtlasCoords.Top) * element.y);
@@ -134,7 +157,7 @@ public class TileBuilder implements Serializable {
 		}
 		Texbuff.flip();
 
-		IntBuffer Indxbuff = createIntBuffer(Data.Indexes.size());
+		IntBuffer Indxbuff = Pool.borrowIntBuffer(Data.Indexes.size());
 		Indxbuff.clear();
 		for (Integer element : Data.Indexes) {
 			Indxbuff.put(element.intValue());
@@ -230,6 +253,83 @@ public class TileBuilder implements Serializable {
 		}
 	}
  
+	private MeshData createSkirtMesh(FaceShape Shape, Direction Side) {
+		BlockShape Block = Shape.getSourceBlockShape();
+		boolean Slope = Shape.getFaceDirection() == Direction.DIRECTION_NONE;
+		if (!Slope && (Shape.getFaceDirection() != Direction.DIRECTION_DOWN || !Block.hasFloor()))
+			return null;
+
+		float XLeft = 0; float XRight = 0; float YLeft = 0; float YRight = 0;
+		int LeftCorner = 0; int RightCorner = 0;
+		Vector3f Normal;
+
+		switch (Side)
+		{
+			case DIRECTION_SOUTH:
+				XLeft = -BlockCoordinate.HALF_BLOCK;  YLeft = -BlockCoordinate.HALF_BLOCK;  XRight =  BlockCoordinate.HALF_BLOCK;  YRight = -BlockCoordinate.HALF_BLOCK;
+				LeftCorner = Block.getSouthWestCorner();   RightCorner = Block.getSouthEastCorner();
+				Normal = Vector3f.UNIT_Y.negate();
+				break;
+
+			case DIRECTION_NORTH:
+				XLeft =  BlockCoordinate.HALF_BLOCK;  YLeft =  BlockCoordinate.HALF_BLOCK;  XRight = -BlockCoordinate.HALF_BLOCK;  YRight =  BlockCoordinate.HALF_BLOCK;
+				LeftCorner = Block.getNorthEastCorner();  RightCorner = Block.getNorthWestCorner();
+				Normal = Vector3f.UNIT_Y;
+				break;
+
+			case DIRECTION_WEST:
+				XLeft = -BlockCoordinate.HALF_BLOCK;  YLeft =  BlockCoordinate.HALF_BLOCK;  XRight = -BlockCoordinate.HALF_BLOCK;  YRight = -BlockCoordinate.HALF_BLOCK;
+				LeftCorner = Block.getNorthWestCorner();  RightCorner = Block.getSouthWestCorner();
+				Normal = Vector3f.UNIT_X.negate();
+				break;
+
+			case DIRECTION_EAST:
+				XLeft =  BlockCoordinate.HALF_BLOCK;  YLeft = -BlockCoordinate.HALF_BLOCK;  XRight =  BlockCoordinate.HALF_BLOCK;  YRight =  BlockCoordinate.HALF_BLOCK;
+				LeftCorner = Block.getSouthEastCorner();  RightCorner = Block.getNorthEastCorner();
+				Normal = Vector3f.UNIT_X;
+				break;
+
+			default:
+				return null;
+		}
+
+		// Tops meet the edge of the Face, slopes as createSlopeFaceMesh places their corners
+		float LeftTop = -BlockCoordinate.HALF_BLOCK;
+		float RightTop = -BlockCoordinate.HALF_BLOCK;
+		if (Slope) {
+			LeftTop = (((float) LeftCorner - 1) / BlockShape.HEIGHT_FRACTIONS) - BlockCoordinate.HALF_BLOCK;
+			RightTop = (((float) RightCorner - 1) / BlockShape.HEIGHT_FRACTIONS) - BlockCoordinate.HALF_BLOCK;
+		}
+
+		MeshData Data = new MeshData();
+		Data.Vertices.add(new Vector3f(XLeft, YLeft, LeftTop - SKIRT_DEPTH));  // Left Bottom
+		Data.Normals.add(Normal);
+		Data.TextureCoords.add(new Vector2f(0.0f, 0.0f));
+
+		Data.Vertices.add(new Vector3f(XLeft, YLeft, LeftTop));  // Left Top
+		Data.Normals.add(Normal);
+		Data.TextureCoords.add(new Vector2f(0.0f, 1.0f));
+
+		Data.Vertices.add(new Vector3f(XRight, YRight, RightTop - SKIRT_DEPTH));  // Right Bottom
+		Data.Normals.add(Normal);
+		Data.TextureCoords.add(new Vector2f(1.0f, 0.0f));
+
+		Data.Vertices.add(new Vector3f(XRight, YRight, RightTop));  // Right Top
+		Data.Normals.add(Normal);
+		Data.TextureCoords.add(new Vector2f(1.0f, 1.0f));
+
+		// Same winding as createSideFaceMesh, front faces look along Normal
+		Data.Indexes.add(3);
+		Data.Indexes.add(1);
+		Data.Indexes.add(0);
+
+		Data.Indexes.add(0);
+		Data.Indexes.add(2);
+		Data.Indexes.add(3);
+
+		return Data;
+	}
+
 	private MeshData createSideFaceMesh(FaceShape Shape) {
 		
 		byte NorthEastCorner = Shape.getSourceBlockShape().getNorthEastCorner();
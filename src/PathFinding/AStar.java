@@ -19,9 +19,6 @@ package PathFinding;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.BitSet;
-import java.util.PriorityQueue;
 
 import Map.Coordinates.Direction;
 import Map.Coordinates.MapCoordinate;
@@ -30,9 +27,13 @@ import java.io.Serializable;
 import java.util.concurrent.Callable;
 
 /**
- * A simple uni-direction A* implementation, it utilizes it's own Node type
- * AStarNode which is optimized for this search methodology. The data structures
- * are highly optimized, PriorityQueue for Fringe and HashSet for visited Nodes
+ * A simple uni-direction A* implementation. Nodes are not objects but slots
+ * of a SearchArena keyed by PackedCoordinate, the arena holds the Fringe as an
+ * indexed heap so reaching an open node more cheaply lowers its cost in place.
+ * Edges are read as an int mask and the two scratch MapCoordinates are reused,
+ * so once the threads arena has grown no memory is allocated per node. For a
+ * Modality larger then one Block each Block is checked against the Grids
+ * clearance the first time it is reached.
  *
  * Pathing can be done for a limited number of nodes, or with a zero argument
  * searching will continue until their is either a complete path or the
@@ -40,38 +41,33 @@ import java.util.concurrent.Callable;
  * attempts to path should have been proceeded by a connectivity check an
  * exhaustion is probably indicative of a flaw in connectivity checking.
  *
+ * The arena is taken when searching begins and handed back once a final Path
+ * is found or the Fringe is exhausted.
+ *
  * @author Impaler
  */
-public class AStar extends PathAlgorithm implements Callable, Serializable {
+public class AStar extends PathAlgorithm<SearchArena> implements Callable<MapPath>, Serializable {
 
 	private static final long serialVersionUID = 1;
-	// Core storage sturctures of AStar
-	PriorityQueue<AStarNode> FringeHeap;
-	LinkedListDeque<AStarNode> FringeDeque;
-	HashSet<MapCoordinate> VisitedCoordinates;
+	// Core storage sturcture of AStar
+	transient SearchArena Arena;
+	long GoalKey;
+	MapCoordinate ExpandingCoordinates;
 	MapCoordinate NeiboringCoordinates;
 
 	// Values used in iteration loop
-	AStarNode CurrentNode;
-	boolean FringeExausted;
-	// Memory optimizing pool for Node supply
-	Pool<AStarNode> NodePool;
+	int CurrentNode;
+	boolean GoalReached;
+	boolean SearchLimited;  // Stopped by the arenas node limit rather then exhaustion
 
 	AStar(GridInterface TargetSearchGraph) {
-		FringeHeap = new PriorityQueue<AStarNode>(100);
-		VisitedCoordinates = new HashSet<MapCoordinate>(100);
+		ExpandingCoordinates = new MapCoordinate();
 		NeiboringCoordinates = new MapCoordinate();
 
 		SearchGraph = TargetSearchGraph;
 		FinalPath = null;
 	}
 
-	public void assignResources(Pool TargetPool, LinkedListDeque<AStarNode> List) {
-		NodePool = TargetPool;
-		FringeDeque = List;
-		NodePool.setFactory(this);
-	}
-
 	@Override
 	void setEndPoints(MapCoordinate StartCoords, MapCoordinate GoalCoords) {
 		StartCoordinates = StartCoords;
@@ -79,14 +75,24 @@ public class AStar extends PathAlgorithm implements Callable, Serializable {
 		GraphReads = ExpandedNodes = 0;
 		FinalPath = null;
 		FringeExausted = false;
+		GoalReached = false;
+		SearchLimited = false;
 
-		FringeHeap.clear();
-		VisitedCoordinates.clear();
-
-		AStarNode StartNode = NodePool.provide();
-		StartNode.set(StartCoordinates, null, Direction.DIRECTION_NONE, 0, MainHeuristic.estimate(StartCoords, GoalCoords), TieBreakerHeuristic.estimate(StartCoords, GoalCoords));
+		if (Arena != null)
+			releaseArena();
+		GoalKey = PackedCoordinate.pack(GoalCoords);
+	}
 
-		FringeDeque.insertFront(StartNode);
+	/**
+	 * Takes an arena on the thread that runs the search, which is seldom the
+	 * one that set the end points, and places the Start on its Fringe.
+	 */
+	private void beginSearch() {
+		Arena = provide();
+		int StartNode = Arena.add(PackedCoordinate.pack(StartCoordinates));
+		Arena.set(StartNode, -1, Direction.DIRECTION_NONE.ordinal(), 0, estimate(MainHeuristic, StartCoordinates), estimate(TieBreakerHeuristic, StartCoordinates));
+		Arena.push(StartNode);
+		CurrentNode = StartNode;
 	}
 
 	boolean searchPath(int NodesToExpand) {
@@ -94,134 +100,142 @@ public class AStar extends PathAlgorithm implements Callable, Serializable {
 			return false; // No more searching can be done
 		}
 
-		if (FinalPath == null) {
-			boolean GoalFound;
-			if (NodesToExpand > 0) { // Search for a limited time
-				for (int RemainingNodes = NodesToExpand; RemainingNodes > 0; RemainingNodes--) {
-					if (FringeDeque.isEmpty() && FringeHeap.isEmpty()) {
-						FringeExausted = true; // Path could not be found
-						return false;
-					}
-
-					if (expandNode()) {
-						return true; // Path found, skip to finish
-					}
+		if (FinalPath == null && !GoalReached) {
+			if (Arena == null)
+				beginSearch();
+
+			int RemainingNodes = NodesToExpand > 0 ? NodesToExpand : Integer.MAX_VALUE;
+			for (; RemainingNodes > 0; RemainingNodes--) {
+				if (Arena.isEmpty() || Arena.isFull()) {
+					SearchLimited = Arena.isFull();
+					FringeExausted = true; // Path could not be found
+					return false;
 				}
-				return false; // Path not yet found
-			} else { // Search untill Path is found or Fringe is exhausted
-				while (!FringeDeque.isEmpty()) {
-					if (expandNode()) {
-						return true;
-					}
+
+				if (expandNode()) {
+					GoalReached = true;
+					return true; // Path found, skip to finish
 				}
-				FringeExausted = true;
-				return false;
 			}
+			return false; // Path not yet found
 		}
 		return true;  // Final Path already found don't do any more searching
 	}
 
 	MapPath findPath(int NodesToExpand) {
+		if (FinalPath != null) {
+			return FinalPath;
+		}
 		if (FringeExausted) {
 			return null; // Fringe Exhastion, don't return a useless path
 		}
 
 		boolean FinalPathFound = searchPath(NodesToExpand);
 
-		if (FinalPath == null) {
-			MapPath CurrentPath = generateVectorPath();
-
-			if (FinalPathFound)
-				FinalPath = CurrentPath;
-
-			NodePool.release();	 // Nodes can be released now that a final path has been found
-			return CurrentPath;
+		if (FinalPathFound) {
+			FinalPath = generatePackedPath(CurrentNode, GoalCoordinates);
+			releaseArena();
+			return FinalPath;
+		}
+		if (FringeExausted) {
+			releaseArena();
+			return null;
 		}
-		NodePool.release();
-		FringeDeque.clear();
-		return FinalPath;
+		// Search was cut short, give the best Path so far which ends where it stopped
+		return generatePackedPath(CurrentNode, PackedCoordinate.unpack(Arena.Keys[CurrentNode]));
 	}
 
-	boolean expandNode() {
-		CurrentNode = FringeDeque.removeFirst();
-		if (CurrentNode == null)
-			CurrentNode = FringeHeap.poll();
-
-		MapCoordinate TestCoordinates = CurrentNode.LocationCoordinates;
-		Direction ParentDirection = CurrentNode.ParentDirection.invert();
+	@Override
+	void abandon() {
+		if (Arena != null)
+			releaseArena();
+	}
 
-		if (VisitedCoordinates.contains(TestCoordinates))
-			return false;
+	boolean expandNode() {
+		CurrentNode = Arena.pop();
+		long TestKey = Arena.Keys[CurrentNode];
 
-		if (TestCoordinates.equals(GoalCoordinates))
+		if (isGoal(TestKey))
 			return true;
 
-		// mark as VisitedCoordinates if not already Visited
-		VisitedCoordinates.add(TestCoordinates);
-
-		BitSet TestDirections = SearchGraph.getDirectionEdgeSet(TestCoordinates);
+		ExpandedNodes++;
+		PackedCoordinate.unpack(TestKey, ExpandingCoordinates);
+		int TestDirections = SearchGraph.getDirectionMask(ExpandingCoordinates);
+		TestDirections &= ~(1 << Direction.DIRECTION_NONE.ordinal());
+		TestDirections &= ~(1 << Direction.ANGULAR_DIRECTIONS[Arena.ParentDirection[CurrentNode]].invert().ordinal());
+		float CurrentLength = Arena.PathLength[CurrentNode];
 
 		// Check all Neibors
-		for (int i = TestDirections.nextSetBit(0); i >= 0; i = TestDirections.nextSetBit(i + 1)) {
+		while (TestDirections != 0) {
+			int i = Integer.numberOfTrailingZeros(TestDirections);
+			TestDirections &= TestDirections - 1;
+
 			Direction DirectionType = Direction.ANGULAR_DIRECTIONS[i];
-			if (DirectionType == Direction.DIRECTION_NONE || DirectionType == ParentDirection)
-				continue;
+			long NeiboringKey = PackedCoordinate.translate(TestKey, DirectionType);
+			int Neibor = Arena.find(NeiboringKey);
 
-			NeiboringCoordinates.copy(TestCoordinates);
-			NeiboringCoordinates.translate(DirectionType);
+			// If Coordinate is not already closed
+			if (Neibor >= 0 && Arena.isClosed(Neibor))
+				continue;
 
-			// If Coordinate is not already on the VisitedCoordinates list
-			if (VisitedCoordinates.contains(NeiboringCoordinates) == false) {
-				float EdgeCost = SearchGraph.getEdgeCost(TestCoordinates, DirectionType);
+			// A creature larger then one Block needs room around the Block it steps into
+			if (RequiredClearance > 1 && Neibor < 0) {
+				PackedCoordinate.unpack(NeiboringKey, NeiboringCoordinates);
 				GraphReads++;
+				if (SearchGraph.getClearance(NeiboringCoordinates) < RequiredClearance)
+					continue;
+			}
 
-				AStarNode NewNode = NodePool.provide();
-				NewNode.set(NeiboringCoordinates, CurrentNode, DirectionType, CurrentNode.PathLengthFromStart + EdgeCost, MainHeuristic.estimate(NeiboringCoordinates, GoalCoordinates), TieBreakerHeuristic.estimate(NeiboringCoordinates, GoalCoordinates));
-				FringeDeque.insertFront(NewNode);
-			} // modify existing node with new distance?
-		}
-
-		while(FringeDeque.size() > 1) {
-			FringeHeap.add(FringeDeque.removeLast());
+			float EdgeCost = SearchGraph.getDirectionCost(i);
+			GraphReads++;
+			float Length = CurrentLength + EdgeCost;
+
+			if (Neibor < 0) {
+				Neibor = Arena.add(NeiboringKey);
+				PackedCoordinate.unpack(NeiboringKey, NeiboringCoordinates);
+				Arena.set(Neibor, CurrentNode, i, Length, estimate(MainHeuristic, NeiboringCoordinates), estimate(TieBreakerHeuristic, NeiboringCoordinates));
+				Arena.push(Neibor);
+			} else if (Length < Arena.PathLength[Neibor]) {
+				Arena.decrease(Neibor, CurrentNode, i, Length);
+			}
 		}
 
 		return false; // Goal was not found
 	}
 
-	CoordinatePath generateFullPath() {
-		ExpandedNodes = VisitedCoordinates.size();
-
-		float PathLength = CurrentNode.PathLengthFromStart;
-		ArrayList<MapCoordinate> Course = new ArrayList();
-
-		while (CurrentNode != null) {
-			Course.add(CurrentNode.LocationCoordinates);
-			CurrentNode = CurrentNode.Parent;
-		}
-		Course.add(StartCoordinates);
+	/**
+	 * Whether reaching the Block with this key ends the search.
+	 */
+	boolean isGoal(long Key) {
+		return Key == GoalKey;
+	}
 
-		Collections.reverse(Course);
-		return new CoordinatePath(PathLength, Course);
+	float estimate(Heuristic Estimator, MapCoordinate FromCoordinates) {
+		return Estimator.estimate(FromCoordinates, GoalCoordinates);
 	}
 
-	VectorPath generateVectorPath() {
-		ExpandedNodes = VisitedCoordinates.size();
+	private void releaseArena() {
+		Arena.release();
+		Arena = null;
+	}
 
-		float PathLength = CurrentNode.PathLengthFromStart;
-		ArrayList<Direction> Course = new ArrayList();
+	PackedPath generatePackedPath(int EndNode, MapCoordinate EndCoordinates) {
+		float PathLength = Arena.PathLength[EndNode];
+		ArrayList<Direction> Course = new ArrayList<Direction>();
 
-		while (CurrentNode != null) {
-			Course.add(CurrentNode.ParentDirection);
-			CurrentNode = CurrentNode.Parent;
+		for (int Node = EndNode; Arena.Parent[Node] >= 0; Node = Arena.Parent[Node]) {
+			Direction Heading = Direction.ANGULAR_DIRECTIONS[Arena.ParentDirection[Node]];
+			for (int i = Arena.Steps[Node]; i > 0; i--) {
+				Course.add(Heading);
+			}
 		}
-		Course.remove(Course.size() - 1);
 
 		Collections.reverse(Course);
-		return new VectorPath(PathLength, Course, StartCoordinates, GoalCoordinates);
+		return new PackedPath(PathLength, Course, StartCoordinates, EndCoordinates);
 	}
 
-	AStarNode provide() {
-		return new AStarNode();
+	SearchArena provide() {
+		return SearchArena.acquire();
 	}
 
 	public MapPath call() {
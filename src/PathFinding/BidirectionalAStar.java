@@ -0,0 +1,265 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+/**
+ * Bidirectional A*, one search runs forward from the Start and another
+ * backward from the Goal along edges taken in reverse, each in its own
+ * SearchArena. The side with the smaller Fringe is expanded next, so a Goal at
+ * the end of a narrow tunnel is mostly searched from the Goal side rather then
+ * by flooding the open ground around the Start.
+ *
+ * Each time an edge reaches a Block the other side has reached a Path through
+ * it is known, the shortest such is kept. The search stops once that Path is
+ * no longer then the least total cost left on either Fringe, which with an
+ * admissible Heuristic means no shorter Path remains to be found.
+ *
+ * The backward search reads every edge leading into a Block, not only those
+ * leading out, so it stays correct on a Grid with one way edges even though
+ * the EdgeRules of KhazadGrid give none.
+ *
+ * @author Impaler
+ */
+public class BidirectionalAStar extends PathAlgorithm<SearchArena> implements Callable<MapPath>, Serializable {
+
+	private static final long serialVersionUID = 1;
+
+	transient SearchArena Forward, Backward;
+	long StartKey, GoalKey;
+	MapCoordinate ExpandingCoordinates, NeiboringCoordinates;
+
+	// Best Path through a Block reached from both sides
+	long MeetingKey;
+	float MeetingLength;
+
+	BidirectionalAStar(GridInterface TargetSearchGraph) {
+		ExpandingCoordinates = new MapCoordinate();
+		NeiboringCoordinates = new MapCoordinate();
+
+		SearchGraph = TargetSearchGraph;
+		FinalPath = null;
+	}
+
+	@Override
+	void setEndPoints(MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		super.setEndPoints(StartCoords, GoalCoords);
+		if (Forward != null)
+			releaseArenas();
+
+		StartKey = PackedCoordinate.pack(StartCoords);
+		GoalKey = PackedCoordinate.pack(GoalCoords);
+	}
+
+	/**
+	 * Takes both arenas on the thread that runs the search and seeds each side
+	 * with its end point.
+	 */
+	private void beginSearch() {
+		Forward = provide();
+		Backward = provide();
+		MeetingKey = PackedCoordinate.NONE;
+		MeetingLength = Float.MAX_VALUE;
+
+		int StartNode = Forward.add(StartKey);
+		Forward.set(StartNode, -1, Direction.DIRECTION_NONE.ordinal(), 0, MainHeuristic.estimate(StartCoordinates, GoalCoordinates), TieBreakerHeuristic.estimate(StartCoordinates, GoalCoordinates));
+		Forward.push(StartNode);
+
+		int GoalNode = Backward.add(GoalKey);
+		Backward.set(GoalNode, -1, Direction.DIRECTION_NONE.ordinal(), 0, MainHeuristic.estimate(GoalCoordinates, StartCoordinates), TieBreakerHeuristic.estimate(GoalCoordinates, StartCoordinates));
+		Backward.push(GoalNode);
+
+		if (StartKey == GoalKey) {
+			MeetingKey = StartKey;
+			MeetingLength = 0;
+		}
+	}
+
+	boolean searchPath(int NodesToExpand) {
+		if (FringeExausted)
+			return false;
+		if (FinalPath != null)
+			return true;
+
+		if (Forward == null)
+			beginSearch();
+
+		int RemainingNodes = NodesToExpand > 0 ? NodesToExpand : Integer.MAX_VALUE;
+		for (; RemainingNodes > 0; RemainingNodes--) {
+			if (Forward.isEmpty() || Backward.isEmpty() || Forward.isFull() || Backward.isFull()) {
+				// One side has reached all it can or its node limit, take the best meeting found
+				if (MeetingKey != PackedCoordinate.NONE)
+					return true;
+				FringeExausted = true;
+				return false;
+			}
+
+			float ForwardBound = Forward.getTotalCost(Forward.peek());
+			float BackwardBound = Backward.getTotalCost(Backward.peek());
+			if (MeetingLength <= Math.max(ForwardBound, BackwardBound))
+				return true;
+
+			if (Forward.getOpenCount() <= Backward.getOpenCount()) {
+				expandForward();
+			} else {
+				expandBackward();
+			}
+		}
+		return false;
+	}
+
+	void expandForward() {
+		int CurrentNode = Forward.pop();
+		long TestKey = Forward.Keys[CurrentNode];
+		ExpandedNodes++;
+
+		PackedCoordinate.unpack(TestKey, ExpandingCoordinates);
+		int TestDirections = SearchGraph.getDirectionMask(ExpandingCoordinates);
+		TestDirections &= ~(1 << Direction.DIRECTION_NONE.ordinal());
+		float CurrentLength = Forward.PathLength[CurrentNode];
+
+		while (TestDirections != 0) {
+			int i = Integer.numberOfTrailingZeros(TestDirections);
+			TestDirections &= TestDirections - 1;
+
+			Direction DirectionType = Direction.ANGULAR_DIRECTIONS[i];
+			float EdgeCost = SearchGraph.getDirectionCost(i);
+			GraphReads++;
+
+			long NeiboringKey = PackedCoordinate.translate(TestKey, DirectionType);
+			relax(Forward, Backward, CurrentNode, NeiboringKey, i, CurrentLength + EdgeCost, GoalCoordinates);
+		}
+	}
+
+	/**
+	 * Follows edges into the Block in reverse, the direction stored for a
+	 * backward node is the step from it toward the Goal.
+	 */
+	void expandBackward() {
+		int CurrentNode = Backward.pop();
+		long TestKey = Backward.Keys[CurrentNode];
+		ExpandedNodes++;
+		float CurrentLength = Backward.PathLength[CurrentNode];
+
+		for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+			Direction DirectionType = Direction.ANGULAR_DIRECTIONS[i];
+			long NeiboringKey = PackedCoordinate.translate(TestKey, DirectionType);
+			int Neibor = Backward.find(NeiboringKey);
+			if (Neibor >= 0 && Backward.isClosed(Neibor))
+				continue;
+
+			PackedCoordinate.unpack(NeiboringKey, NeiboringCoordinates);
+			Direction Inward = DirectionType.invert();
+			float EdgeCost = SearchGraph.getEdgeCost(NeiboringCoordinates, Inward.ordinal());
+			GraphReads++;
+			if (EdgeCost < 0)
+				continue;
+
+			relax(Backward, Forward, CurrentNode, NeiboringKey, Inward.ordinal(), CurrentLength + EdgeCost, StartCoordinates);
+		}
+	}
+
+	/**
+	 * Opens or improves a node on one side, then checks it against the other
+	 * side for a shorter meeting.
+	 */
+	private void relax(SearchArena Side, SearchArena Other, int ParentNode, long Key, int DirectionIndex, float Length, MapCoordinate Target) {
+		int Node = Side.find(Key);
+		if (Node < 0) {
+			Node = Side.add(Key);
+			PackedCoordinate.unpack(Key, NeiboringCoordinates);
+			Side.set(Node, ParentNode, DirectionIndex, Length, MainHeuristic.estimate(NeiboringCoordinates, Target), TieBreakerHeuristic.estimate(NeiboringCoordinates, Target));
+			Side.push(Node);
+		} else if (Side.isClosed(Node) || Length >= Side.PathLength[Node]) {
+			return;
+		} else {
+			Side.decrease(Node, ParentNode, DirectionIndex, Length);
+		}
+
+		int OtherNode = Other.find(Key);
+		if (OtherNode >= 0) {
+			float Through = Length + Other.PathLength[OtherNode];
+			if (Through < MeetingLength) {
+				MeetingLength = Through;
+				MeetingKey = Key;
+			}
+		}
+	}
+
+	MapPath findPath(int NodesToExpand) {
+		if (FinalPath != null)
+			return FinalPath;
+		if (FringeExausted)
+			return null;
+
+		if (searchPath(NodesToExpand)) {
+			FinalPath = generatePackedPath();
+			releaseArenas();
+			return FinalPath;
+		}
+		if (FringeExausted)
+			releaseArenas();
+		return null;  // No partial Path, the two halves have not met
+	}
+
+	@Override
+	void abandon() {
+		if (Forward != null)
+			releaseArenas();
+	}
+
+	private void releaseArenas() {
+		Forward.release();
+		Backward.release();
+		Forward = Backward = null;
+	}
+
+	/**
+	 * Joins the forward chain up to the meeting Block with the backward chain
+	 * from it to the Goal.
+	 */
+	PackedPath generatePackedPath() {
+		ArrayList<Direction> Course = new ArrayList<Direction>();
+
+		for (int Node = Forward.find(MeetingKey); Forward.Parent[Node] >= 0; Node = Forward.Parent[Node]) {
+			Course.add(Direction.ANGULAR_DIRECTIONS[Forward.ParentDirection[Node]]);
+		}
+		Collections.reverse(Course);
+
+		for (int Node = Backward.find(MeetingKey); Backward.Parent[Node] >= 0; Node = Backward.Parent[Node]) {
+			Course.add(Direction.ANGULAR_DIRECTIONS[Backward.ParentDirection[Node]]);
+		}
+
+		return new PackedPath(MeetingLength, Course, StartCoordinates, GoalCoordinates);
+	}
+
+	SearchArena provide() {
+		return SearchArena.acquire();
+	}
+
+	public MapPath call() {
+		return findPath(0);
+	}
+}
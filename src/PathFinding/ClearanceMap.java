@@ -0,0 +1,205 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.BlockShape;
+import Map.GameMap;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+import Map.Coordinates.SectorCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The clearance of every Block, the edge of the largest cube of open Blocks
+ * which has the Block as its lower south west corner, capped at
+ * MAX_CLEARANCE. A creature of size N fits wherever the clearance is at least
+ * N, so one byte per Block serves creatures of every size.
+ *
+ * The clearance of a Block is one more then the least clearance of the seven
+ * Blocks making up the rest of its two by two cube, or 0 if it is solid. An
+ * edit can therefore only change the clearance of Blocks below, south and west
+ * of it and no further then MAX_CLEARANCE away, so edits are repaired by
+ * recomputing outward from the edited Blocks until values stop changing.
+ *
+ * @author Impaler
+ */
+public class ClearanceMap implements Serializable {
+
+	private static final long serialVersionUID = 1;
+
+	public static final int MAX_CLEARANCE = 8;
+	// Shared by every Chunk with no open Blocks
+	static final byte[] EMPTY_CLEARANCE = new byte[BlockCoordinate.BLOCKS_PER_CHUNK];
+
+	// Steps to the rest of the two by two cube above the Block, and back from it
+	static final Direction[] CUBE_STEPS = {
+		Direction.DIRECTION_EAST,
+		Direction.DIRECTION_NORTH,
+		Direction.DIRECTION_UP,
+		Direction.DIRECTION_NORTHEAST,
+		Direction.DIRECTION_UP_EAST,
+		Direction.DIRECTION_UP_NORTH,
+		Direction.DIRECTION_UP_NORTHEAST
+	};
+	static final int WINDOW = BlockCoordinate.CHUNK_EDGE_SIZE + MAX_CLEARANCE - 1;
+
+	GameMap SourceMap;
+	ConcurrentHashMap<ChunkCoordinate, byte[]> Clearances;
+
+	ClearanceMap(GameMap TargetMap) {
+		SourceMap = TargetMap;
+		Clearances = new ConcurrentHashMap<ChunkCoordinate, byte[]>();
+	}
+
+	/**
+	 * Computes a whole Chunk from the Map alone, reading the Blocks up to
+	 * MAX_CLEARANCE past its upper faces, so Chunks can be built on different
+	 * threads at once and in any order.
+	 */
+	void buildChunk(ChunkCoordinate ChunkCoords, SectorCoordinate SectorCoords) {
+		MapCoordinate Coordinates = new MapCoordinate();
+		Coordinates.Sector.copy(SectorCoords);
+		BlockShape Shape = new BlockShape();
+		int BaseX = ChunkCoords.X * BlockCoordinate.CHUNK_EDGE_SIZE;
+		int BaseY = ChunkCoords.Y * BlockCoordinate.CHUNK_EDGE_SIZE;
+		int BaseZ = ChunkCoords.Z * BlockCoordinate.CHUNK_EDGE_SIZE;
+
+		// Filled from the far corner back so each cube is complete when its corner is reached
+		byte[] Window = new byte[WINDOW * WINDOW * WINDOW];
+		for (int X = WINDOW - 1; X >= 0; X--) {
+			for (int Y = WINDOW - 1; Y >= 0; Y--) {
+				for (int Z = WINDOW - 1; Z >= 0; Z--) {
+					Coordinates.set(BaseX + X, BaseY + Y, BaseZ + Z);
+					if (!isOpen(Coordinates, Shape))
+						continue;
+
+					int Least = MAX_CLEARANCE - 1;
+					if (X + 1 < WINDOW && Y + 1 < WINDOW && Z + 1 < WINDOW) {
+						Least = Math.min(Least, Window[windowIndex(X + 1, Y, Z)]);
+						Least = Math.min(Least, Window[windowIndex(X, Y + 1, Z)]);
+						Least = Math.min(Least, Window[windowIndex(X, Y, Z + 1)]);
+						Least = Math.min(Least, Window[windowIndex(X + 1, Y + 1, Z)]);
+						Least = Math.min(Least, Window[windowIndex(X + 1, Y, Z + 1)]);
+						Least = Math.min(Least, Window[windowIndex(X, Y + 1, Z + 1)]);
+						Least = Math.min(Least, Window[windowIndex(X + 1, Y + 1, Z + 1)]);
+					} else {
+						Least = 0;  // Beyond the window, only Blocks MAX_CLEARANCE inside it are kept
+					}
+					Window[windowIndex(X, Y, Z)] = (byte) (Least + 1);
+				}
+			}
+		}
+
+		byte[] ChunkClearance = null;
+		for (int X = 0; X < BlockCoordinate.CHUNK_EDGE_SIZE; X++) {
+			for (int Y = 0; Y < BlockCoordinate.CHUNK_EDGE_SIZE; Y++) {
+				for (int Z = 0; Z < BlockCoordinate.CHUNK_EDGE_SIZE; Z++) {
+					byte Value = Window[windowIndex(X, Y, Z)];
+					if (Value == 0)
+						continue;
+					if (ChunkClearance == null)
+						ChunkClearance = new byte[BlockCoordinate.BLOCKS_PER_CHUNK];
+					ChunkClearance[EntranceGraph.blockIndex(X, Y, Z)] = Value;
+				}
+			}
+		}
+		Clearances.put(ChunkCoords, ChunkClearance != null ? ChunkClearance : EMPTY_CLEARANCE);
+	}
+
+	private static int windowIndex(int X, int Y, int Z) {
+		return (X * WINDOW + Y) * WINDOW + Z;
+	}
+
+	/**
+	 * Blocks outside the loaded Chunks are never open, so nothing is thought
+	 * to fit over the edge of the Map.
+	 */
+	private boolean isOpen(MapCoordinate Coordinates, BlockShape Shape) {
+		if (!SourceMap.isBlockInitialized(Coordinates))
+			return false;
+		SourceMap.getBlockShape(Coordinates, Shape);
+		return !Shape.isSolid();
+	}
+
+	/**
+	 * Brings the clearances in line with edits to the Blocks given, only
+	 * Blocks whose cubes reach an edited Block are visited.
+	 */
+	void update(MapCoordinate[] EditedCoords) {
+		ArrayDeque<MapCoordinate> Pending = new ArrayDeque<MapCoordinate>();
+		for (MapCoordinate Edited : EditedCoords) {
+			Pending.add(Edited.clone());
+		}
+
+		BlockShape Shape = new BlockShape();
+		MapCoordinate Corner = new MapCoordinate();
+		while (!Pending.isEmpty()) {
+			MapCoordinate Target = Pending.poll();
+			int NewValue = computeClearance(Target, Shape, Corner);
+			if (NewValue == getClearance(Target))
+				continue;
+
+			setClearance(Target, NewValue);
+			for (Direction Step : CUBE_STEPS) {
+				MapCoordinate Dependent = Target.clone();
+				Dependent.translate(Step.invert());
+				if (SourceMap.isBlockInitialized(Dependent))
+					Pending.add(Dependent);
+			}
+		}
+	}
+
+	private int computeClearance(MapCoordinate Target, BlockShape Shape, MapCoordinate Corner) {
+		if (!isOpen(Target, Shape))
+			return 0;
+
+		int Least = MAX_CLEARANCE - 1;
+		for (Direction Step : CUBE_STEPS) {
+			Corner.copy(Target);
+			Corner.translate(Step);
+			Least = Math.min(Least, getClearance(Corner));
+		}
+		return Least + 1;
+	}
+
+	private void setClearance(MapCoordinate Target, int Value) {
+		byte[] ChunkClearance = Clearances.get(Target.Chunk);
+		if (ChunkClearance == null || ChunkClearance == EMPTY_CLEARANCE) {
+			if (Value == 0)
+				return;
+			ChunkClearance = new byte[BlockCoordinate.BLOCKS_PER_CHUNK];
+			Clearances.put(Target.Chunk.clone(), ChunkClearance);
+		}
+		ChunkClearance[Target.Block.getBlockIndex()] = (byte) Value;
+	}
+
+	/**
+	 * The clearance of a Block, 0 when it is solid or outside the Map.
+	 */
+	int getClearance(MapCoordinate Target) {
+		byte[] ChunkClearance = Clearances.get(Target.Chunk);
+		if (ChunkClearance == null)
+			return 0;
+		return ChunkClearance[Target.Block.getBlockIndex()];
+	}
+}
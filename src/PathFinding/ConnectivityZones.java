@@ -0,0 +1,394 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Axis;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Connectivity zones of a KhazadGrid kept on two levels. Within each Chunk the
+ * Blocks joined by edges that stay inside it are numbered into local zones by
+ * a union-find over the Blocks. Each Chunk also keeps the list of its local
+ * zones that have an edge into a local zone of a neighboring Chunk. The zones
+ * of the whole Map are then a union-find over every local zone joined by those
+ * links, flattened into one array so a zone is found by two array reads.
+ *
+ * Edges are treated as joining both ways, as every EdgeRule gives symmetric
+ * edges. An edit relabels only the Chunks whose edges it changed and
+ * relinks those and their neighbors, then the Map wide union-find is rebuilt
+ * from the links, which are far fewer then the Blocks. A wall or collapse that
+ * cuts a region in two therefore splits its zone, as well as a new opening
+ * joining two.
+ *
+ * Searches read zones on other threads while an edit is refreshed, so labels
+ * are never rewritten in place. A Chunk is labeled into a new array, and the
+ * labels, bases and roots of a rebuild are published together as one ZoneTable
+ * which readers take once per lookup.
+ *
+ * @author Impaler
+ */
+public class ConnectivityZones implements Serializable {
+
+	private static final long serialVersionUID = 1;
+
+	// Block index offset of each Direction when the step stays inside a Chunk
+	static final int[] X_OFFSET = new int[Direction.values().length];
+	static final int[] Y_OFFSET = new int[Direction.values().length];
+	static final int[] Z_OFFSET = new int[Direction.values().length];
+	// Shifting a Block position one step outside a Chunk by this gives the Chunk step
+	static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(BlockCoordinate.CHUNK_EDGE_SIZE);
+
+	static {
+		for (Direction Heading : Direction.ANGULAR_DIRECTIONS) {
+			X_OFFSET[Heading.ordinal()] = Heading.getValueonAxis(Axis.AXIS_X);
+			Y_OFFSET[Heading.ordinal()] = Heading.getValueonAxis(Axis.AXIS_Y);
+			Z_OFFSET[Heading.ordinal()] = Heading.getValueonAxis(Axis.AXIS_Z);
+		}
+	}
+
+	/**
+	 * The zones of the Map as of one rebuild, never changed once published.
+	 */
+	static class ZoneTable implements Serializable {
+
+		private static final long serialVersionUID = 1;
+		final int[][] Labels;  // Local zone of each Block, by Chunk Slot
+		final int[] Bases;     // Offset of each Chunks local zones in Roots, by Slot
+		final int[] Roots;     // Map wide zone of each local zone
+		final int Count;
+
+		ZoneTable(int[][] ChunkLabels, int[] ChunkBases, int[] ZoneRoots, int ZoneCount) {
+			Labels = ChunkLabels;
+			Bases = ChunkBases;
+			Roots = ZoneRoots;
+			Count = ZoneCount;
+		}
+	}
+
+	KhazadGrid Grid;
+	ArrayList<KhazadGrid.GridChunk> Chunks;
+	LinkedHashSet<ChunkCoordinate> DirtyChunks;
+
+	volatile ZoneTable Published;
+	transient int[] BlockParents;
+
+	ConnectivityZones(KhazadGrid SourceGrid) {
+		Grid = SourceGrid;
+		Chunks = new ArrayList<KhazadGrid.GridChunk>();
+		DirtyChunks = new LinkedHashSet<ChunkCoordinate>();
+		Published = new ZoneTable(new int[0][], new int[0], new int[1], 0);
+	}
+
+	/**
+	 * Registers a new Chunk, it is labeled on the next refresh.
+	 */
+	void addChunk(KhazadGrid.GridChunk NewChunk) {
+		NewChunk.Slot = Chunks.size();
+		Chunks.add(NewChunk);
+		DirtyChunks.add(NewChunk.getChunkCoordinates());
+	}
+
+	/**
+	 * Called by the Grid for every Chunk whose edges it changes.
+	 */
+	void dirtyChunk(ChunkCoordinate Coordinates) {
+		if (Grid.getChunk(Coordinates) != null)
+			DirtyChunks.add(Coordinates.clone());
+	}
+
+	/**
+	 * Relabels the dirty Chunks, relinks them and their neighbors and rebuilds
+	 * the Map wide zones.
+	 */
+	void refresh() {
+		if (DirtyChunks.isEmpty())
+			return;
+
+		HashSet<ChunkCoordinate> Relink = new HashSet<ChunkCoordinate>();
+		for (ChunkCoordinate Coordinates : DirtyChunks) {
+			KhazadGrid.GridChunk Chunk = Grid.getChunk(Coordinates);
+			if (Chunk == null)
+				continue;
+
+			if (BlockParents == null)
+				BlockParents = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+			labelChunk(Chunk, BlockParents);
+			Relink.add(Coordinates);
+			for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+				ChunkCoordinate Neighbor = EntranceGraph.offsetChunk(Coordinates, Direction.ANGULAR_DIRECTIONS[i]);
+				if (Grid.getChunk(Neighbor) != null)
+					Relink.add(Neighbor);
+			}
+		}
+		DirtyChunks.clear();
+
+		for (ChunkCoordinate Coordinates : Relink) {
+			linkChunk(Grid.getChunk(Coordinates));
+		}
+		rebuildRoots();
+	}
+
+	/**
+	 * Labels and links every Chunk from scratch, one task per Chunk on the
+	 * Pool for each phase, then stitches the zones across Chunk borders. Used
+	 * when the whole Grid is built, edits go through refresh.
+	 */
+	void build(ExecutorService Pool) {
+		ArrayList<Callable<Object>> LabelTasks = new ArrayList<Callable<Object>>();
+		ArrayList<Callable<Object>> LinkTasks = new ArrayList<Callable<Object>>();
+		for (final KhazadGrid.GridChunk Chunk : Chunks) {
+			LabelTasks.add(new Callable<Object>() {
+				public Object call() {
+					labelChunk(Chunk, new int[BlockCoordinate.BLOCKS_PER_CHUNK]);
+					return null;
+				}
+			});
+			LinkTasks.add(new Callable<Object>() {
+				public Object call() {
+					linkChunk(Chunk);
+					return null;
+				}
+			});
+		}
+
+		// Links read the labels of neighbors so every Chunk is labeled first
+		KhazadGrid.runTasks(Pool, LabelTasks);
+		KhazadGrid.runTasks(Pool, LinkTasks);
+		DirtyChunks.clear();
+		rebuildRoots();
+	}
+
+	private static int find(int[] Parents, int Node) {
+		int Root = Node;
+		while (Parents[Root] != Root) {
+			Root = Parents[Root];
+		}
+		while (Parents[Node] != Root) {  // Compress the path behind
+			int Next = Parents[Node];
+			Parents[Node] = Root;
+			Node = Next;
+		}
+		return Root;
+	}
+
+	private static void union(int[] Parents, int First, int Second) {
+		int FirstRoot = find(Parents, First);
+		int SecondRoot = find(Parents, Second);
+		if (FirstRoot != SecondRoot) {  // Lower root wins so labels follow Block order
+			if (FirstRoot < SecondRoot) {
+				Parents[SecondRoot] = FirstRoot;
+			} else {
+				Parents[FirstRoot] = SecondRoot;
+			}
+		}
+	}
+
+	/**
+	 * Numbers the local zones of a Chunk from 1, 0 marks a Block with no
+	 * edges. Parents is scratch of one entry per Block. The labels go into a
+	 * new array, the one they replace may still be published.
+	 */
+	void labelChunk(KhazadGrid.GridChunk Chunk, int[] Parents) {
+		boolean Empty = true;
+		for (int Index = 0; Index < BlockCoordinate.BLOCKS_PER_CHUNK && Empty; Index++) {
+			Empty = (Chunk.getBlockDirectionMask((short) Index) & ~(1 << Direction.DIRECTION_NONE.ordinal())) == 0;
+		}
+		if (Empty) {  // Most Chunks are solid rock or open sky, they share one array of zeros
+			Chunk.ConnectivityZone = KhazadGrid.EMPTY_ZONES;
+			Chunk.ZoneCount = 0;
+			return;
+		}
+
+		int[] Zones = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+		for (int Index = 0; Index < BlockCoordinate.BLOCKS_PER_CHUNK; Index++) {
+			Parents[Index] = Index;
+		}
+
+		// Blocks with an edge, or reached by one, are marked -1 until numbered
+		for (int Index = 0; Index < BlockCoordinate.BLOCKS_PER_CHUNK; Index++) {
+			int Mask = Chunk.getBlockDirectionMask((short) Index) & ~(1 << Direction.DIRECTION_NONE.ordinal());
+			if (Mask == 0)
+				continue;
+			Zones[Index] = -1;
+
+			int X = (Index >> EntranceGraph.X_SHIFT) & BlockCoordinate.BLOCK_BITMASK;
+			int Y = (Index >> EntranceGraph.Y_SHIFT) & BlockCoordinate.BLOCK_BITMASK;
+			int Z = (Index >> EntranceGraph.Z_SHIFT) & BlockCoordinate.BLOCK_BITMASK;
+			while (Mask != 0) {
+				int i = Integer.numberOfTrailingZeros(Mask);
+				Mask &= Mask - 1;
+
+				int TargetX = X + X_OFFSET[i];
+				int TargetY = Y + Y_OFFSET[i];
+				int TargetZ = Z + Z_OFFSET[i];
+				if (((TargetX | TargetY | TargetZ) & ~BlockCoordinate.BLOCK_BITMASK) == 0) {
+					int Target = EntranceGraph.blockIndex(TargetX, TargetY, TargetZ);
+					Zones[Target] = -1;
+					union(Parents, Index, Target);
+				}
+			}
+		}
+
+		// Roots are the lowest Block of their set so are numbered first
+		int LocalCount = 0;
+		for (int Index = 0; Index < BlockCoordinate.BLOCKS_PER_CHUNK; Index++) {
+			if (Zones[Index] == 0)
+				continue;
+
+			int Root = find(Parents, Index);
+			if (Root == Index) {
+				LocalCount++;
+				Zones[Index] = LocalCount;
+			} else {
+				Zones[Index] = Zones[Root];
+			}
+		}
+		Chunk.ConnectivityZone = Zones;
+		Chunk.ZoneCount = LocalCount;
+	}
+
+	/**
+	 * Collects, once each, the pairs of a local zone of the Chunk and a local
+	 * zone of a neighbor joined by an edge leaving the Chunk. Only Blocks on
+	 * the faces of the Chunk are read.
+	 */
+	void linkChunk(KhazadGrid.GridChunk Chunk) {
+		HashSet<Long> Pairs = new HashSet<Long>();
+		ArrayList<Long> Links = new ArrayList<Long>();
+		ChunkCoordinate Coordinates = Chunk.getChunkCoordinates();
+		ChunkCoordinate NeighborCoordinates = new ChunkCoordinate();
+		int Last = BlockCoordinate.CHUNK_EDGE_SIZE - 1;
+
+		for (int X = 0; X <= Last; X++) {
+			for (int Y = 0; Y <= Last; Y++) {
+				boolean Side = X == 0 || X == Last || Y == 0 || Y == Last;
+				for (int Z = 0; Z <= Last; Z += (Side ? 1 : Last)) {
+					int Index = EntranceGraph.blockIndex(X, Y, Z);
+					int LocalZone = Chunk.ConnectivityZone[Index];
+					if (LocalZone == 0)
+						continue;
+
+					int Mask = Chunk.getBlockDirectionMask((short) Index);
+					while (Mask != 0) {
+						int i = Integer.numberOfTrailingZeros(Mask);
+						Mask &= Mask - 1;
+
+						int TargetX = X + X_OFFSET[i];
+						int TargetY = Y + Y_OFFSET[i];
+						int TargetZ = Z + Z_OFFSET[i];
+						if (((TargetX | TargetY | TargetZ) & ~BlockCoordinate.BLOCK_BITMASK) == 0)
+							continue;  // Stays inside the Chunk
+
+						// A diagonal step may leave the Chunk along only some of its axes
+						NeighborCoordinates.X = (short) (Coordinates.X + (TargetX >> CHUNK_SHIFT));
+						NeighborCoordinates.Y = (short) (Coordinates.Y + (TargetY >> CHUNK_SHIFT));
+						NeighborCoordinates.Z = (short) (Coordinates.Z + (TargetZ >> CHUNK_SHIFT));
+						KhazadGrid.GridChunk Neighbor = Grid.getChunk(NeighborCoordinates);
+						if (Neighbor == null)
+							continue;
+
+						int Target = EntranceGraph.blockIndex(TargetX & BlockCoordinate.BLOCK_BITMASK, TargetY & BlockCoordinate.BLOCK_BITMASK, TargetZ & BlockCoordinate.BLOCK_BITMASK);
+						int NeighborZone = Neighbor.ConnectivityZone[Target];
+						if (NeighborZone == 0)
+							continue;
+
+						long Pair = ((long) LocalZone << 40) | ((long) Neighbor.Slot << 16) | NeighborZone;
+						if (Pairs.add(Pair))
+							Links.add(Pair);
+					}
+				}
+			}
+		}
+
+		long[] NewLinks = new long[Links.size()];
+		for (int i = 0; i < NewLinks.length; i++) {
+			NewLinks[i] = Links.get(i);
+		}
+		Chunk.ZoneLinks = NewLinks;
+	}
+
+	/**
+	 * Numbers every local zone of the Map, joins them along the links of
+	 * every Chunk and flattens the result so each points straight at its
+	 * root, then publishes it. Zone 0 stays the zone of Blocks with no edges.
+	 */
+	void rebuildRoots() {
+		int[][] Labels = new int[Chunks.size()][];
+		int[] Bases = new int[Chunks.size()];
+		int Total = 1;
+		for (int i = 0; i < Chunks.size(); i++) {
+			KhazadGrid.GridChunk Chunk = Chunks.get(i);
+			Labels[i] = Chunk.ConnectivityZone;
+			Bases[i] = Total - 1;
+			Total += Chunk.ZoneCount;
+		}
+
+		int[] Parents = new int[Total];
+		for (int i = 0; i < Total; i++) {
+			Parents[i] = i;
+		}
+
+		for (int i = 0; i < Chunks.size(); i++) {
+			KhazadGrid.GridChunk Chunk = Chunks.get(i);
+			for (long Pair : Chunk.ZoneLinks) {
+				int LocalZone = (int) (Pair >>> 40);
+				int NeighborSlot = (int) ((Pair >>> 16) & 0xFFFFFF);
+				int NeighborZone = (int) (Pair & 0xFFFF);
+				union(Parents, Bases[i] + LocalZone, Bases[NeighborSlot] + NeighborZone);
+			}
+		}
+
+		int Roots = 0;
+		for (int i = 1; i < Total; i++) {
+			Parents[i] = find(Parents, i);
+			if (Parents[i] == i)
+				Roots++;
+		}
+		Published = new ZoneTable(Labels, Bases, Parents, Roots);
+	}
+
+	/**
+	 * The Map wide zone of a Location, 0 if it has no edges or lies outside
+	 * the Grid. Two Locations are connected exactly when their zones match.
+	 */
+	int getZone(MapCoordinate Coordinates) {
+		ZoneTable Table = Published;
+		KhazadGrid.GridChunk Chunk = Grid.getChunk(Coordinates.Chunk);
+		if (Chunk == null || Chunk.Slot >= Table.Labels.length)
+			return 0;  // Not yet labeled
+
+		int LocalZone = Table.Labels[Chunk.Slot][Coordinates.Block.getBlockIndex()];
+		if (LocalZone == 0)
+			return 0;
+		return Table.Roots[Table.Bases[Chunk.Slot] + LocalZone];
+	}
+
+	public int getZoneCount() {
+		return Published.Count;
+	}
+}
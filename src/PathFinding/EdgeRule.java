@@ -0,0 +1,221 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.BlockShape;
+import Map.GameMap;
+import Map.Coordinates.Axis;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+import java.io.Serializable;
+
+/**
+ * Derives the edges out of a Block for one kind of movement from the shapes of
+ * the Blocks around it. A KhazadGrid holds the result of one rule, a rule only
+ * reads the Map and the scratch objects it is handed so a single rule can be
+ * used by many threads at once.
+ *
+ * Rules must give symmetric edges, an edge from A to B only if there is one
+ * from B to A, as the connectivity zones join Blocks along every edge both
+ * ways. A rule may read only the Block itself and its 26 neighbors, an edit
+ * is applied by rebuilding every Block within one step of it.
+ *
+ * @author Impaler
+ */
+public interface EdgeRule {
+
+	/**
+	 * The edges out of TargetCoords as bits of Direction ordinals, Shape and
+	 * AdjacentCoords are overwritten.
+	 */
+	public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords);
+
+	/**
+	 * Walking over floors and up slopes, the original Grid rules. A step up
+	 * needs the Block above the lower end open, and so does the step back
+	 * down, keeping the edges symmetric.
+	 */
+	public class Walk implements EdgeRule, Serializable {
+
+		private static final long serialVersionUID = 1;
+
+		public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords) {
+			SourceMap.getBlockShape(TargetCoords, Shape);
+			if (Shape.isSky() || Shape.hasCeiling())
+				return 0;
+
+			AdjacentCoords.copy(TargetCoords);
+			AdjacentCoords.translate(Direction.DIRECTION_UP);
+			SourceMap.getBlockShape(AdjacentCoords, Shape);
+			boolean OverheadPassable = !Shape.isSolid();
+
+			int Mask = 0;
+			for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
+				AdjacentCoords.copy(TargetCoords);
+				AdjacentCoords.translate(dir);
+				SourceMap.getBlockShape(AdjacentCoords, Shape);
+
+				if (!Shape.isSky() && !Shape.hasCeiling()) {
+					//If no vertical direction, we only care that this tile is passable
+					int Rise = dir.getValueonAxis(Axis.AXIS_Z);
+					if (Rise == 1 && !OverheadPassable)
+						continue;
+					if (Rise == -1) {
+						// Dropping down is refused where climbing back up would be
+						AdjacentCoords.translate(Direction.DIRECTION_UP);
+						SourceMap.getBlockShape(AdjacentCoords, Shape);
+						if (Shape.isSolid())
+							continue;
+					}
+					Mask |= 1 << dir.ordinal();
+				}
+			}
+			return Mask;
+		}
+	}
+
+	/**
+	 * Walking, and also straight up or down through open Blocks beside a
+	 * solid wall to hold on to.
+	 */
+	public class Climb implements EdgeRule, Serializable {
+
+		private static final long serialVersionUID = 1;
+		static final Direction[] WALLS = {Direction.DIRECTION_NORTH, Direction.DIRECTION_SOUTH, Direction.DIRECTION_EAST, Direction.DIRECTION_WEST};
+
+		Walk Ground = new Walk();
+
+		public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords) {
+			int Mask = Ground.buildDirectionMask(SourceMap, TargetCoords, Shape, AdjacentCoords);
+
+			SourceMap.getBlockShape(TargetCoords, Shape);
+			if (Shape.isSolid())
+				return Mask;
+
+			// Climbing from a Block to the one above needs both open and a wall beside the lower
+			AdjacentCoords.copy(TargetCoords);
+			if (canClimbUp(SourceMap, AdjacentCoords, Shape))
+				Mask |= 1 << Direction.DIRECTION_UP.ordinal();
+
+			AdjacentCoords.copy(TargetCoords);
+			AdjacentCoords.translate(Direction.DIRECTION_DOWN);
+			if (canClimbUp(SourceMap, AdjacentCoords, Shape))
+				Mask |= 1 << Direction.DIRECTION_DOWN.ordinal();
+
+			if (Mask != 0)
+				Mask |= 1 << Direction.DIRECTION_NONE.ordinal();
+			return Mask;
+		}
+
+		/**
+		 * Whether the Block at LowerCoords can be climbed out of upward,
+		 * LowerCoords is left where it started.
+		 */
+		private boolean canClimbUp(GameMap SourceMap, MapCoordinate LowerCoords, BlockShape Shape) {
+			if (!SourceMap.isBlockInitialized(LowerCoords))
+				return false;
+			SourceMap.getBlockShape(LowerCoords, Shape);
+			if (Shape.isSolid())
+				return false;
+
+			LowerCoords.translate(Direction.DIRECTION_UP);
+			boolean Open = SourceMap.isBlockInitialized(LowerCoords);
+			if (Open) {
+				SourceMap.getBlockShape(LowerCoords, Shape);
+				Open = !Shape.isSolid();
+			}
+			LowerCoords.translate(Direction.DIRECTION_DOWN);
+			if (!Open)
+				return false;
+
+			for (Direction Wall : WALLS) {
+				LowerCoords.translate(Wall);
+				SourceMap.getBlockShape(LowerCoords, Shape);
+				LowerCoords.translate(Wall.invert());
+				if (Shape.isSolid())
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Flying from any open Block to any open neighbor, in every Direction.
+	 * Blocks outside the loaded Chunks are never entered.
+	 */
+	public class Fly implements EdgeRule, Serializable {
+
+		private static final long serialVersionUID = 1;
+
+		public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords) {
+			SourceMap.getBlockShape(TargetCoords, Shape);
+			if (Shape.isSolid())
+				return 0;
+
+			int Mask = 0;
+			for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
+				AdjacentCoords.copy(TargetCoords);
+				AdjacentCoords.translate(dir);
+				if (!SourceMap.isBlockInitialized(AdjacentCoords))
+					continue;
+
+				SourceMap.getBlockShape(AdjacentCoords, Shape);
+				if (!Shape.isSolid())
+					Mask |= 1 << dir.ordinal();
+			}
+			return Mask;
+		}
+	}
+
+	/**
+	 * Swimming through liquid. The Map keeps no liquid yet so there is
+	 * nothing to swim through, every Chunk of a swimming Grid is empty and
+	 * shares the one empty mask array.
+	 */
+	public class Swim implements EdgeRule, Serializable {
+
+		private static final long serialVersionUID = 1;
+
+		public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords) {
+			return 0;
+		}
+	}
+
+	/**
+	 * The edges of a creature with several kinds of movement, any one of
+	 * which may be used for each step.
+	 */
+	public class Combined implements EdgeRule, Serializable {
+
+		private static final long serialVersionUID = 1;
+
+		EdgeRule[] Rules;
+
+		public Combined(EdgeRule[] CombinedRules) {
+			Rules = CombinedRules;
+		}
+
+		public int buildDirectionMask(GameMap SourceMap, MapCoordinate TargetCoords, BlockShape Shape, MapCoordinate AdjacentCoords) {
+			int Mask = 0;
+			for (EdgeRule Rule : Rules) {
+				Mask |= Rule.buildDirectionMask(SourceMap, TargetCoords, Shape, AdjacentCoords);
+			}
+			return Mask;
+		}
+	}
+}
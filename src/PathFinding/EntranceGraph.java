@@ -0,0 +1,548 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Axis;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Chunk level abstraction of a KhazadGrid used by HierarchicalAStar. Every
+ * Chunk is a Cluster whose nodes are the entrances on its borders, the Border
+ * between two Chunks keeps one Crossing for each window of the shared face and
+ * each pair of locally connected areas that meet in it. The travel cost between
+ * every pair of entrances within a Cluster is found once and cached.
+ *
+ * Edits to the Grid only mark the touched Chunks stale, their Borders and
+ * Clusters are rebuilt when a search next reaches them. A neighboring Cluster
+ * keeps its cached costs if its entrances come out unchanged.
+ *
+ * @author Impaler
+ */
+public class EntranceGraph implements Serializable {
+
+	private static final long serialVersionUID = 1;
+
+	// Edge length in Blocks of the windows each Chunk face is divided into
+	static final int WINDOW_SIZE = 8;
+	static final int WINDOWS_PER_EDGE = BlockCoordinate.CHUNK_EDGE_SIZE / WINDOW_SIZE;
+
+	// Bit positions of the axes in a full detail Block index
+	static final int X_SHIFT = (BlockCoordinate.CHUNK_DETAIL_LEVELS - 1) * BlockCoordinate.BLOCK_BITSHIFT_X;
+	static final int Y_SHIFT = (BlockCoordinate.CHUNK_DETAIL_LEVELS - 1) * BlockCoordinate.BLOCK_BITSHIFT_Y;
+	static final int Z_SHIFT = (BlockCoordinate.CHUNK_DETAIL_LEVELS - 1) * BlockCoordinate.BLOCK_BITSHIFT_Z;
+
+	/**
+	 * One edge between Blocks of two Chunks, First lies in the Chunk that
+	 * sorts lower. A cost is -1 where the edge only runs the other way.
+	 */
+	static class Crossing implements Serializable {
+
+		private static final long serialVersionUID = 1;
+		MapCoordinate First, Second;
+		Direction Heading;  // From First to Second
+		float ForwardCost, BackwardCost;
+
+		Crossing(MapCoordinate FirstCoords, MapCoordinate SecondCoords, Direction FirstToSecond, float Forward, float Backward) {
+			First = FirstCoords;
+			Second = SecondCoords;
+			Heading = FirstToSecond;
+			ForwardCost = Forward;
+			BackwardCost = Backward;
+		}
+	}
+
+	static class Border implements Serializable {
+
+		private static final long serialVersionUID = 1;
+		ArrayList<Crossing> Crossings = new ArrayList<Crossing>();
+	}
+
+	/**
+	 * An edge out of a Cluster to an entrance of a neighboring Cluster
+	 */
+	static class Link implements Serializable {
+
+		private static final long serialVersionUID = 1;
+		MapCoordinate Target;
+		Direction Heading;
+		float Cost;
+
+		Link(MapCoordinate TargetCoords, Direction LinkDirection, float LinkCost) {
+			Target = TargetCoords;
+			Heading = LinkDirection;
+			Cost = LinkCost;
+		}
+	}
+
+	/**
+	 * The entrances of one Chunk, their Links out of it and the cached costs
+	 * between them, Costs are -1 where one can not reach the other within the
+	 * Chunk. Nothing is changed once built, a stale Cluster is replaced.
+	 */
+	static class Cluster implements Serializable {
+
+		private static final long serialVersionUID = 1;
+		ChunkCoordinate Coordinates;
+		ArrayList<MapCoordinate> Nodes;
+		HashMap<MapCoordinate, Integer> NodeIndexes;
+		ArrayList<ArrayList<Link>> Links;
+		float[][] Costs;
+		boolean NodesValid, CostsValid;
+
+		Cluster(ChunkCoordinate ClusterCoordinates) {
+			Coordinates = ClusterCoordinates;
+			Nodes = new ArrayList<MapCoordinate>();
+			NodeIndexes = new HashMap<MapCoordinate, Integer>();
+			Links = new ArrayList<ArrayList<Link>>();
+			Costs = new float[0][0];
+		}
+
+		int addNode(MapCoordinate Location) {
+			Integer Existing = NodeIndexes.get(Location);
+			if (Existing != null)
+				return Existing.intValue();
+
+			NodeIndexes.put(Location, Nodes.size());
+			Nodes.add(Location);
+			Links.add(new ArrayList<Link>());
+			return Nodes.size() - 1;
+		}
+
+		int getNodeIndex(MapCoordinate Location) {
+			Integer Index = NodeIndexes.get(Location);
+			return Index != null ? Index.intValue() : -1;
+		}
+	}
+
+	/**
+	 * Dijkstra search confined to a single Chunk, kept per thread and reused.
+	 * A reverse search follows edges backwards so it finds the cost of
+	 * reaching the Source rather then of leaving it. Expanded counts every
+	 * Block taken off the Fringe or the labeling Queue on this thread.
+	 */
+	static class ChunkSearch {
+
+		float[] Distance = new float[BlockCoordinate.BLOCKS_PER_CHUNK];
+		byte[] Arrival = new byte[BlockCoordinate.BLOCKS_PER_CHUNK];
+		int[] Marks = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+		int[] Queue = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+		PriorityQueue<Long> Fringe = new PriorityQueue<Long>();
+		int Mark;
+		int Expanded;
+
+		void search(KhazadGrid Grid, KhazadGrid.GridChunk Chunk, int Source, int Target, boolean Reverse) {
+			nextMark();
+			Fringe.clear();
+
+			Marks[Source] = Mark;
+			Distance[Source] = 0;
+			Arrival[Source] = 0;
+			Fringe.add(pack(0, Source));
+
+			while (!Fringe.isEmpty()) {
+				long Entry = Fringe.poll();
+				int Index = (int) (Entry & 0xFFFF);
+				float Cost = Float.intBitsToFloat((int) (Entry >>> 32));
+				if (Cost > Distance[Index])
+					continue;  // Superseded by a cheaper entry
+				if (Index == Target)
+					return;
+				Expanded++;
+
+				for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+					Direction Heading = Direction.ANGULAR_DIRECTIONS[i];
+					int Neighbor = neighborIndex(Index, Reverse ? Heading.invert() : Heading);
+					if (Neighbor < 0)
+						continue;
+					if (!Chunk.getBlockDirection((short) (Reverse ? Neighbor : Index), Heading))
+						continue;
+
+					float NewCost = Cost + Grid.getDirectionCost(Heading);
+					if (Marks[Neighbor] != Mark || NewCost < Distance[Neighbor]) {
+						Marks[Neighbor] = Mark;
+						Distance[Neighbor] = NewCost;
+						Arrival[Neighbor] = (byte) i;
+						Fringe.add(pack(NewCost, Neighbor));
+					}
+				}
+			}
+		}
+
+		float getDistance(int Index) {
+			return Marks[Index] == Mark ? Distance[Index] : -1;
+		}
+
+		void nextMark() {
+			Mark++;
+			if (Mark == 0) {
+				Arrays.fill(Marks, 0);
+				Mark = 1;
+			}
+		}
+
+		/**
+		 * Positive floats order the same as their bits, so the cost can lead
+		 * the packed entry
+		 */
+		static long pack(float Cost, int Index) {
+			return ((long) Float.floatToIntBits(Cost) << 32) | Index;
+		}
+	}
+
+	private static final ThreadLocal<ChunkSearch> Searches = new ThreadLocal<ChunkSearch>() {
+
+		@Override
+		protected ChunkSearch initialValue() {
+			return new ChunkSearch();
+		}
+	};
+
+	KhazadGrid Grid;
+	HashMap<ChunkCoordinate, Cluster> Clusters;
+	HashMap<Long, Border> Borders;
+
+	EntranceGraph(KhazadGrid SourceGrid) {
+		Grid = SourceGrid;
+		Clusters = new HashMap<ChunkCoordinate, Cluster>();
+		Borders = new HashMap<Long, Border>();
+	}
+
+	/**
+	 * Blocks expanded so far by Chunk searches and labeling on the calling
+	 * thread, including those spent rebuilding Clusters and Borders. A caller
+	 * takes the difference across its own work to learn what that cost.
+	 */
+	static int getThreadExpansions() {
+		return Searches.get().Expanded;
+	}
+
+	/**
+	 * Called by the Grid for every Chunk whose edges it changes.
+	 */
+	public synchronized void dirtyChunk(ChunkCoordinate Coordinates) {
+		Cluster Target = Clusters.get(Coordinates);
+		if (Target != null) {
+			Target.NodesValid = false;
+			Target.CostsValid = false;
+		}
+
+		for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+			Direction Offset = Direction.ANGULAR_DIRECTIONS[i];
+			ChunkCoordinate Neighbor = offsetChunk(Coordinates, Offset);
+
+			if (isFirst(Coordinates, Neighbor)) {
+				Borders.remove(borderKey(Coordinates, Offset));
+			} else {
+				Borders.remove(borderKey(Neighbor, Offset.invert()));
+			}
+
+			Cluster Adjacent = Clusters.get(Neighbor);
+			if (Adjacent != null)
+				Adjacent.NodesValid = false;
+		}
+	}
+
+	synchronized Cluster getCluster(ChunkCoordinate Coordinates) {
+		Cluster Target = Clusters.get(Coordinates);
+		if (Target == null || !Target.NodesValid || !Target.CostsValid) {
+			Target = buildCluster(Coordinates.clone(), Target);
+			Clusters.put(Target.Coordinates, Target);
+		}
+		return Target;
+	}
+
+	private Cluster buildCluster(ChunkCoordinate Coordinates, Cluster Previous) {
+		Cluster NewCluster = new Cluster(Coordinates);
+		KhazadGrid.GridChunk Chunk = Grid.getChunk(Coordinates);
+		if (Chunk == null)
+			return NewCluster;
+
+		HashMap<ChunkCoordinate, int[]> Labels = new HashMap<ChunkCoordinate, int[]>();
+		for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+			Direction Offset = Direction.ANGULAR_DIRECTIONS[i];
+			ChunkCoordinate Neighbor = offsetChunk(Coordinates, Offset);
+			if (Grid.getChunk(Neighbor) == null)
+				continue;
+
+			boolean First = isFirst(Coordinates, Neighbor);
+			Border SharedBorder = First ? getBorder(Coordinates, Offset, Neighbor, Labels) : getBorder(Neighbor, Offset.invert(), Coordinates, Labels);
+
+			for (Crossing Edge : SharedBorder.Crossings) {
+				MapCoordinate Local = First ? Edge.First : Edge.Second;
+				MapCoordinate Remote = First ? Edge.Second : Edge.First;
+				Direction Heading = First ? Edge.Heading : Edge.Heading.invert();
+				float Cost = First ? Edge.ForwardCost : Edge.BackwardCost;
+
+				int Node = NewCluster.addNode(Local);
+				if (Cost >= 0)
+					NewCluster.Links.get(Node).add(new Link(Remote, Heading, Cost));
+			}
+		}
+
+		if (Previous != null && Previous.CostsValid && Previous.Nodes.equals(NewCluster.Nodes)) {
+			NewCluster.Costs = Previous.Costs;
+		} else {
+			NewCluster.Costs = findClusterCosts(NewCluster, Chunk);
+		}
+		NewCluster.NodesValid = true;
+		NewCluster.CostsValid = true;
+		return NewCluster;
+	}
+
+	private float[][] findClusterCosts(Cluster Target, KhazadGrid.GridChunk Chunk) {
+		ChunkSearch Search = Searches.get();
+		int Count = Target.Nodes.size();
+		float[][] Costs = new float[Count][Count];
+
+		for (int i = 0; i < Count; i++) {
+			Search.search(Grid, Chunk, Target.Nodes.get(i).Block.getBlockIndex(), -1, false);
+			for (int j = 0; j < Count; j++) {
+				Costs[i][j] = Search.getDistance(Target.Nodes.get(j).Block.getBlockIndex());
+			}
+		}
+		return Costs;
+	}
+
+	private Border getBorder(ChunkCoordinate First, Direction Offset, ChunkCoordinate Second, HashMap<ChunkCoordinate, int[]> Labels) {
+		long Key = borderKey(First, Offset);
+		Border Target = Borders.get(Key);
+		if (Target == null) {
+			Target = buildBorder(First, Offset, Second, Labels);
+			Borders.put(Key, Target);
+		}
+		return Target;
+	}
+
+	/**
+	 * Collects the edges from the First Chunk into the Second, keeping one per
+	 * window and pair of connected areas. Two way edges are preferred.
+	 */
+	private Border buildBorder(ChunkCoordinate First, Direction Offset, ChunkCoordinate Second, HashMap<ChunkCoordinate, int[]> Labels) {
+		Border NewBorder = new Border();
+		KhazadGrid.GridChunk FirstChunk = Grid.getChunk(First);
+		KhazadGrid.GridChunk SecondChunk = Grid.getChunk(Second);
+		int[] FirstLabels = getLabels(First, FirstChunk, Labels);
+		int[] SecondLabels = getLabels(Second, SecondChunk, Labels);
+
+		int OffsetX = Offset.getValueonAxis(Axis.AXIS_X);
+		int OffsetY = Offset.getValueonAxis(Axis.AXIS_Y);
+		int OffsetZ = Offset.getValueonAxis(Axis.AXIS_Z);
+		int Last = BlockCoordinate.CHUNK_EDGE_SIZE - 1;
+
+		LinkedHashMap<Long, Crossing> Windows = new LinkedHashMap<Long, Crossing>();
+		for (int x = (OffsetX > 0 ? Last : 0); x <= (OffsetX < 0 ? 0 : Last); x++) {
+			for (int y = (OffsetY > 0 ? Last : 0); y <= (OffsetY < 0 ? 0 : Last); y++) {
+				for (int z = (OffsetZ > 0 ? Last : 0); z <= (OffsetZ < 0 ? 0 : Last); z++) {
+					int Index = blockIndex(x, y, z);
+					if (FirstLabels[Index] == 0)
+						continue;
+
+					for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+						Direction Heading = Direction.ANGULAR_DIRECTIONS[i];
+						int TargetX = x + Heading.getValueonAxis(Axis.AXIS_X);
+						int TargetY = y + Heading.getValueonAxis(Axis.AXIS_Y);
+						int TargetZ = z + Heading.getValueonAxis(Axis.AXIS_Z);
+						if (chunkStep(TargetX) != OffsetX || chunkStep(TargetY) != OffsetY || chunkStep(TargetZ) != OffsetZ)
+							continue;
+						if (!FirstChunk.getBlockDirection((short) Index, Heading))
+							continue;
+
+						int Target = blockIndex(TargetX & BlockCoordinate.BLOCK_BITMASK, TargetY & BlockCoordinate.BLOCK_BITMASK, TargetZ & BlockCoordinate.BLOCK_BITMASK);
+						int Window = (((x / WINDOW_SIZE) * WINDOWS_PER_EDGE) + (y / WINDOW_SIZE)) * WINDOWS_PER_EDGE + (z / WINDOW_SIZE);
+						long Key = ((long) Window << 40) | ((long) FirstLabels[Index] << 20) | SecondLabels[Target];
+
+						float Forward = Grid.getDirectionCost(Heading);
+						float Backward = SecondChunk.getBlockDirection((short) Target, Heading.invert()) ? Grid.getDirectionCost(Heading) : -1;
+
+						Crossing Existing = Windows.get(Key);
+						if (Existing == null || (Existing.BackwardCost < 0 && Backward >= 0)) {
+							MapCoordinate FirstCoords = new MapCoordinate(First, new BlockCoordinate((byte) 0, (short) Index));
+							MapCoordinate SecondCoords = new MapCoordinate(Second, new BlockCoordinate((byte) 0, (short) Target));
+							Windows.put(Key, new Crossing(FirstCoords, SecondCoords, Heading, Forward, Backward));
+						}
+					}
+				}
+			}
+		}
+
+		NewBorder.Crossings.addAll(Windows.values());
+		return NewBorder;
+	}
+
+	private int[] getLabels(ChunkCoordinate Coordinates, KhazadGrid.GridChunk Chunk, HashMap<ChunkCoordinate, int[]> Labels) {
+		int[] Target = Labels.get(Coordinates);
+		if (Target == null) {
+			Target = labelAreas(Chunk);
+			Labels.put(Coordinates, Target);
+		}
+		return Target;
+	}
+
+	/**
+	 * Numbers the areas of a Chunk that connect without leaving it, 0 marks a
+	 * Block with no edges.
+	 */
+	private int[] labelAreas(KhazadGrid.GridChunk Chunk) {
+		int[] Labels = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+		ChunkSearch Search = Searches.get();
+		int[] Queue = Search.Queue;
+		int AreaCount = 0;
+
+		for (int Seed = 0; Seed < BlockCoordinate.BLOCKS_PER_CHUNK; Seed++) {
+			if (Labels[Seed] != 0 || !Chunk.hasBlockDirections((short) Seed))
+				continue;
+
+			AreaCount++;
+			Labels[Seed] = AreaCount;
+			int Head = 0, Tail = 0;
+			Queue[Tail++] = Seed;
+
+			while (Head < Tail) {
+				int Index = Queue[Head++];
+				Search.Expanded++;
+				for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+					Direction Heading = Direction.ANGULAR_DIRECTIONS[i];
+					int Neighbor = neighborIndex(Index, Heading);
+					if (Neighbor >= 0 && Labels[Neighbor] == 0 && Chunk.getBlockDirection((short) Index, Heading)) {
+						Labels[Neighbor] = AreaCount;
+						Queue[Tail++] = Neighbor;
+					}
+				}
+			}
+		}
+		return Labels;
+	}
+
+	/**
+	 * Costs from a Location to each entrance of its Cluster, or with Reverse
+	 * from each entrance to the Location, -1 where there is no way within the
+	 * Chunk.
+	 */
+	float[] findEntranceCosts(Cluster Target, MapCoordinate Location, boolean Reverse) {
+		float[] Costs = new float[Target.Nodes.size()];
+		KhazadGrid.GridChunk Chunk = Grid.getChunk(Location.Chunk);
+		if (Chunk == null) {
+			Arrays.fill(Costs, -1);
+			return Costs;
+		}
+
+		ChunkSearch Search = Searches.get();
+		Search.search(Grid, Chunk, Location.Block.getBlockIndex(), -1, Reverse);
+		for (int i = 0; i < Costs.length; i++) {
+			Costs[i] = Search.getDistance(Target.Nodes.get(i).Block.getBlockIndex());
+		}
+		return Costs;
+	}
+
+	/**
+	 * Cost between two Locations of the same Chunk without leaving it, -1 if
+	 * there is no such way.
+	 */
+	float findLocalCost(MapCoordinate From, MapCoordinate To) {
+		KhazadGrid.GridChunk Chunk = Grid.getChunk(From.Chunk);
+		if (Chunk == null || !From.Chunk.equals(To.Chunk))
+			return -1;
+
+		ChunkSearch Search = Searches.get();
+		Search.search(Grid, Chunk, From.Block.getBlockIndex(), To.Block.getBlockIndex(), false);
+		return Search.getDistance(To.Block.getBlockIndex());
+	}
+
+	/**
+	 * Appends the steps of the cheapest way between two Locations of the same
+	 * Chunk to the Course, false if the Chunk no longer connects them.
+	 */
+	boolean refine(MapCoordinate From, MapCoordinate To, ArrayList<Direction> Course) {
+		KhazadGrid.GridChunk Chunk = Grid.getChunk(From.Chunk);
+		if (Chunk == null || !From.Chunk.equals(To.Chunk))
+			return false;
+
+		int Source = From.Block.getBlockIndex();
+		int Target = To.Block.getBlockIndex();
+		ChunkSearch Search = Searches.get();
+		Search.search(Grid, Chunk, Source, Target, false);
+		if (Search.getDistance(Target) < 0)
+			return false;
+
+		int Start = Course.size();
+		for (int Index = Target; Index != Source;) {
+			Direction Heading = Direction.ANGULAR_DIRECTIONS[Search.Arrival[Index]];
+			Course.add(Heading);
+			Index = neighborIndex(Index, Heading.invert());
+		}
+		Collections.reverse(Course.subList(Start, Course.size()));
+		return true;
+	}
+
+	static int blockIndex(int X, int Y, int Z) {
+		return (X << X_SHIFT) | (Y << Y_SHIFT) | (Z << Z_SHIFT);
+	}
+
+	/**
+	 * Index of the adjacent Block in the Direction, -1 if it lies outside the
+	 * Chunk.
+	 */
+	static int neighborIndex(int BlockIndex, Direction Heading) {
+		int X = ((BlockIndex >> X_SHIFT) & BlockCoordinate.BLOCK_BITMASK) + Heading.getValueonAxis(Axis.AXIS_X);
+		int Y = ((BlockIndex >> Y_SHIFT) & BlockCoordinate.BLOCK_BITMASK) + Heading.getValueonAxis(Axis.AXIS_Y);
+		int Z = ((BlockIndex >> Z_SHIFT) & BlockCoordinate.BLOCK_BITMASK) + Heading.getValueonAxis(Axis.AXIS_Z);
+
+		if (chunkStep(X) != 0 || chunkStep(Y) != 0 || chunkStep(Z) != 0)
+			return -1;
+		return blockIndex(X, Y, Z);
+	}
+
+	private static int chunkStep(int Value) {
+		if (Value < 0)
+			return -1;
+		if (Value >= BlockCoordinate.CHUNK_EDGE_SIZE)
+			return 1;
+		return 0;
+	}
+
+	static ChunkCoordinate offsetChunk(ChunkCoordinate Coordinates, Direction Offset) {
+		return new ChunkCoordinate(Coordinates.X + Offset.getValueonAxis(Axis.AXIS_X), Coordinates.Y + Offset.getValueonAxis(Axis.AXIS_Y), Coordinates.Z + Offset.getValueonAxis(Axis.AXIS_Z));
+	}
+
+	/**
+	 * Orders the two Chunks of a Border so it is only stored once
+	 */
+	static boolean isFirst(ChunkCoordinate Coordinates, ChunkCoordinate Other) {
+		if (Coordinates.X != Other.X)
+			return Coordinates.X < Other.X;
+		if (Coordinates.Y != Other.Y)
+			return Coordinates.Y < Other.Y;
+		return Coordinates.Z < Other.Z;
+	}
+
+	private static long borderKey(ChunkCoordinate First, Direction Offset) {
+		long Key = ((long) (First.X & 0xFFFF) << 32) | ((long) (First.Y & 0xFFFF) << 16) | (First.Z & 0xFFFF);
+		return (Key << 5) | Offset.ordinal();
+	}
+}
@@ -0,0 +1,169 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The first step of a shortest Path to the nearest of a set of Destinations
+ * from every Block around them, found by one Dijkstra search run backward
+ * from all the Destinations at once. Any number of Navigators heading to the
+ * same place can then read their next step in constant time instead of each
+ * searching.
+ *
+ * Steps are kept as one byte per Block in an array per Chunk. The search stops
+ * after MAX_FIELD_BLOCKS Blocks so a field only covers the ground nearest its
+ * Destinations, Blocks outside it have no step and must be searched for. A
+ * field is never changed once built, an edit to a Chunk it covers makes it
+ * invalid and it is dropped rather then repaired.
+ *
+ * @author Impaler
+ */
+public class FlowField {
+
+	static final int MAX_FIELD_BLOCKS = 1 << 17;
+	static final byte UNREACHED = -1;
+
+	MovementModality Modality;
+	MapCoordinate[] Destinations;
+	HashMap<ChunkCoordinate, byte[]> Headings;
+	int BlockCount;
+	volatile boolean Valid;
+
+	FlowField(MovementModality MovementType, MapCoordinate[] Targets) {
+		Modality = MovementType;
+		Destinations = new MapCoordinate[Targets.length];
+		for (int i = 0; i < Targets.length; i++) {
+			Destinations[i] = Targets[i].clone();
+		}
+		Headings = new HashMap<ChunkCoordinate, byte[]>();
+		Valid = true;
+	}
+
+	/**
+	 * Runs the backward Dijkstra over Grid, reading every edge into a Block so
+	 * one way edges would be honored, though KhazadGrid has none. The stored
+	 * step of a Block is the reverse of the edge it was reached along. Blocks
+	 * with less clearance then the Modality needs are never entered, as in
+	 * AStar, so larger creatures are not led through gaps they do not fit.
+	 */
+	void build(GridInterface Grid) {
+		SearchArena Arena = SearchArena.acquire();
+		int RequiredClearance = Modality != null ? Modality.getLargestSize() : 1;
+		MapCoordinate Expanding = new MapCoordinate();
+		MapCoordinate Neibor = new MapCoordinate();
+
+		for (MapCoordinate Destination : Destinations) {
+			long Key = PackedCoordinate.pack(Destination);
+			if (Arena.find(Key) < 0) {
+				int Node = Arena.add(Key);
+				Arena.set(Node, -1, Direction.DIRECTION_DESTINATION.ordinal(), 0, 0, 0);
+				Arena.push(Node);
+			}
+		}
+
+		while (!Arena.isEmpty() && !Arena.isFull() && BlockCount < MAX_FIELD_BLOCKS) {
+			int CurrentNode = Arena.pop();
+			long CurrentKey = Arena.Keys[CurrentNode];
+			PackedCoordinate.unpack(CurrentKey, Expanding);
+			record(Expanding, Arena.ParentDirection[CurrentNode]);
+			float CurrentLength = Arena.PathLength[CurrentNode];
+
+			for (int i = 1; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
+				Direction DirectionType = Direction.ANGULAR_DIRECTIONS[i];
+				long NeiborKey = PackedCoordinate.translate(CurrentKey, DirectionType);
+				int NeiborNode = Arena.find(NeiborKey);
+				if (NeiborNode >= 0 && Arena.isClosed(NeiborNode))
+					continue;
+
+				PackedCoordinate.unpack(NeiborKey, Neibor);
+				if (Grid.getClearance(Neibor) < RequiredClearance)
+					continue;
+
+				Direction Inward = DirectionType.invert();
+				float EdgeCost = Grid.getEdgeCost(Neibor, Inward.ordinal());
+				if (EdgeCost < 0)
+					continue;
+
+				float Length = CurrentLength + EdgeCost;
+				if (NeiborNode < 0) {
+					NeiborNode = Arena.add(NeiborKey);
+					Arena.set(NeiborNode, CurrentNode, Inward.ordinal(), Length, 0, 0);
+					Arena.push(NeiborNode);
+				} else if (Length < Arena.PathLength[NeiborNode]) {
+					Arena.decrease(NeiborNode, CurrentNode, Inward.ordinal(), Length);
+				}
+			}
+		}
+		Arena.release();
+	}
+
+	private void record(MapCoordinate Location, byte Heading) {
+		byte[] ChunkHeadings = Headings.get(Location.Chunk);
+		if (ChunkHeadings == null) {
+			ChunkHeadings = new byte[BlockCoordinate.BLOCKS_PER_CHUNK];
+			Arrays.fill(ChunkHeadings, UNREACHED);
+			Headings.put(Location.Chunk.clone(), ChunkHeadings);
+		}
+		ChunkHeadings[Location.Block.getBlockIndex()] = Heading;
+		BlockCount++;
+	}
+
+	/**
+	 * The step toward the nearest Destination, DIRECTION_DESTINATION once
+	 * there, or null if the Location is outside the field.
+	 */
+	public Direction getDirection(MapCoordinate Location) {
+		byte[] ChunkHeadings = Headings.get(Location.Chunk);
+		if (ChunkHeadings == null)
+			return null;
+
+		byte Heading = ChunkHeadings[Location.Block.getBlockIndex()];
+		if (Heading == UNREACHED)
+			return null;
+		if (Heading == Direction.DIRECTION_DESTINATION.ordinal())
+			return Direction.DIRECTION_DESTINATION;
+		return Direction.ANGULAR_DIRECTIONS[Heading];
+	}
+
+	public boolean covers(ChunkCoordinate Chunk) {
+		return Headings.containsKey(Chunk);
+	}
+
+	public boolean isValid() {
+		return Valid;
+	}
+
+	void invalidate() {
+		Valid = false;
+	}
+
+	public MovementModality getModality() {
+		return Modality;
+	}
+
+	public int getBlockCount() {
+		return BlockCount;
+	}
+}
@@ -0,0 +1,204 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.MapCoordinate;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the FlowFields of popular Destinations. Each Path request is counted
+ * against its Destination, once a Destination has been asked for often enough
+ * a field is built for it and later requests can follow that instead of
+ * searching. Fields for areas made on request are held as well so edits reach
+ * them.
+ *
+ * An edit drops every field covering a Chunk the edit touched, fields
+ * elsewhere on the Map are kept.
+ *
+ * @author Impaler
+ */
+public class FlowFieldCache {
+
+	public static final int DEFAULT_CAPACITY = 16;
+	// Requests for one Destination before a field is built for it
+	public static final int POPULAR_REQUESTS = 8;
+	static final int TRACKED_DESTINATIONS = 256;
+
+	LinkedHashMap<PathCache.Key, FlowField> Fields;
+	LinkedHashMap<FlowField, Boolean> AreaFields;
+	LinkedHashMap<PathCache.Key, Integer> RequestCounts;
+	HashSet<PathCache.Key> Building;
+	int Capacity;
+	int Generation;
+	int Built, Invalidations;
+
+	public FlowFieldCache(int MaximumFields) {
+		Capacity = MaximumFields;
+		Fields = new LinkedHashMap<PathCache.Key, FlowField>(16, 0.75f, true);
+		AreaFields = new LinkedHashMap<FlowField, Boolean>();
+		RequestCounts = new LinkedHashMap<PathCache.Key, Integer>(16, 0.75f, true);
+		Building = new HashSet<PathCache.Key>();
+	}
+
+	private static PathCache.Key key(MovementModality Modality, MapCoordinate Destination) {
+		return new PathCache.Key(Modality, null, Destination);
+	}
+
+	/**
+	 * Changes with each edit, a field built across a change of Generation is
+	 * refused by store.
+	 */
+	public synchronized int getGeneration() {
+		return Generation;
+	}
+
+	public synchronized FlowField find(MovementModality Modality, MapCoordinate Destination) {
+		return Fields.get(key(Modality, Destination));
+	}
+
+	/**
+	 * Counts a request, true when the Destination has just become popular and
+	 * the caller should build its field.
+	 */
+	synchronized boolean noteRequest(MovementModality Modality, MapCoordinate Destination) {
+		PathCache.Key RequestKey = key(Modality, Destination);
+		if (Fields.containsKey(RequestKey) || Building.contains(RequestKey))
+			return false;
+
+		Integer Count = RequestCounts.get(RequestKey);
+		int NewCount = Count == null ? 1 : Count.intValue() + 1;
+		if (NewCount >= POPULAR_REQUESTS) {
+			RequestCounts.remove(RequestKey);
+			Building.add(new PathCache.Key(Modality, null, Destination.clone()));
+			return true;
+		}
+
+		if (Count == null) {
+			RequestCounts.put(new PathCache.Key(Modality, null, Destination.clone()), NewCount);
+			if (RequestCounts.size() > TRACKED_DESTINATIONS) {
+				Iterator<PathCache.Key> Eldest = RequestCounts.keySet().iterator();
+				Eldest.next();
+				Eldest.remove();
+			}
+		} else {
+			RequestCounts.put(RequestKey, NewCount);
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a field built for a single Destination unless an edit has been
+	 * made since Generation was read.
+	 */
+	synchronized void store(FlowField Field, int BuildGeneration) {
+		PathCache.Key FieldKey = key(Field.Modality, Field.Destinations[0]);
+		Building.remove(FieldKey);
+		if (BuildGeneration != Generation) {
+			Field.invalidate();
+			return;
+		}
+
+		Built++;
+		Fields.put(new PathCache.Key(Field.Modality, null, Field.Destinations[0]), Field);
+		while (Fields.size() > Capacity) {
+			Iterator<Map.Entry<PathCache.Key, FlowField>> Eldest = Fields.entrySet().iterator();
+			Eldest.next().getValue().invalidate();
+			Eldest.remove();
+		}
+	}
+
+	synchronized void storeArea(FlowField Field, int BuildGeneration) {
+		if (BuildGeneration != Generation) {
+			Field.invalidate();
+			return;
+		}
+
+		Built++;
+		AreaFields.put(Field, Boolean.TRUE);
+		while (AreaFields.size() > Capacity) {
+			Iterator<FlowField> Eldest = AreaFields.keySet().iterator();
+			Eldest.next().invalidate();
+			Eldest.remove();
+		}
+	}
+
+	/**
+	 * Fields are marked invalid before they are dropped, so Navigators
+	 * following one notice and search instead.
+	 */
+	public synchronized void invalidate(MapCoordinate[] EditedCoords) {
+		Generation++;
+		if (Fields.isEmpty() && AreaFields.isEmpty())
+			return;
+
+		HashSet<ChunkCoordinate> Touched = PathCache.getTouchedChunks(EditedCoords);
+		Iterator<FlowField> FieldIterator = Fields.values().iterator();
+		while (FieldIterator.hasNext()) {
+			if (dropIfTouched(FieldIterator.next(), Touched))
+				FieldIterator.remove();
+		}
+
+		FieldIterator = AreaFields.keySet().iterator();
+		while (FieldIterator.hasNext()) {
+			if (dropIfTouched(FieldIterator.next(), Touched))
+				FieldIterator.remove();
+		}
+	}
+
+	private boolean dropIfTouched(FlowField Field, HashSet<ChunkCoordinate> Touched) {
+		for (ChunkCoordinate Chunk : Touched) {
+			if (Field.covers(Chunk)) {
+				Field.invalidate();
+				Invalidations++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized void clear() {
+		Generation++;
+		for (FlowField Field : Fields.values()) {
+			Field.invalidate();
+		}
+		for (FlowField Field : AreaFields.keySet()) {
+			Field.invalidate();
+		}
+		Fields.clear();
+		AreaFields.clear();
+		RequestCounts.clear();
+		Building.clear();
+	}
+
+	public synchronized int getBuilt() {
+		return Built;
+	}
+
+	public synchronized int getInvalidations() {
+		return Invalidations;
+	}
+
+	public synchronized int size() {
+		return Fields.size() + AreaFields.size();
+	}
+}
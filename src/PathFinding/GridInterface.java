@@ -37,7 +37,14 @@ import Map.Coordinates.Direction;
  * The BitSet returned by getDirectionEdgeSet is sized to correspond to the
  * Direction Enum with true bits indicationg that a valid edge exists from
  * that Coordinate towards the neibhor in that direction, this helps eliminate
- * many checks for edge costs when no edge exists.
+ * many checks for edge costs when no edge exists. getDirectionMask gives the
+ * same edges as the bits of an int indexed by Direction ordinal, so searches
+ * can read them without creating a BitSet. Costs can likewise be read by
+ * Direction ordinal, getDirectionCost gives the cost of an edge already known
+ * from the mask to exist without looking it up again.
+ *
+ * getClearance gives the edge of the largest open cube cornered at a Block,
+ * creatures larger then one Block only enter Blocks with room enough for them.
  *
  * @author Impaler
  */
@@ -45,12 +52,20 @@ public interface GridInterface {
 
 	float getEdgeCost(MapCoordinate TestCoords, Direction DirectionType);
 
+	float getEdgeCost(MapCoordinate TestCoords, int DirectionIndex);
+
+	float getDirectionCost(int DirectionIndex);
+
 	BitSet getDirectionEdgeSet(MapCoordinate TargetCoords);
 
+	int getDirectionMask(MapCoordinate TargetCoords);
+
 	MovementModality getModality();
 
 	public int getConnectivityZone(MapCoordinate TargetCoords);
 
+	int getClearance(MapCoordinate TargetCoords);
+
 	boolean isPathPossible(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords);
 
 	abstract void dirtyMapCoordinate(MapCoordinate[] TargetCoords);
@@ -95,13 +95,18 @@ public interface Heuristic {
 		}
 	}
 
+	/**
+	 * Never overestimates on a KhazadGrid, where a step up or down costs 2
+	 * and may also move one Block along X and Y, so the planar distance left
+	 * after the vertical steps is costed as octile moves.
+	 */
 	public class Octile implements Heuristic, Serializable {
 		final float DiagonalFactor = ((float) Math.sqrt(2)) -1;
 
 		public float estimate(MapCoordinate StartCoord, MapCoordinate GoalCoord) {
-			float DiagonalsX = Math.abs(StartCoord.getX() - GoalCoord.getX());
-			float DiagonalsY = Math.abs(StartCoord.getY() - GoalCoord.getY());
 			float ZDifference = Math.abs(StartCoord.getZ() - GoalCoord.getZ());
+			float DiagonalsX = Math.max(0, Math.abs(StartCoord.getX() - GoalCoord.getX()) - ZDifference);
+			float DiagonalsY = Math.max(0, Math.abs(StartCoord.getY() - GoalCoord.getY()) - ZDifference);
 
 			float estimate = Math.max(DiagonalsX, DiagonalsY) + (DiagonalFactor * Math.min(DiagonalsX, DiagonalsY)) + (ZDifference * 2);
 			return estimate;
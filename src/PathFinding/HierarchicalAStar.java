@@ -0,0 +1,462 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Hierarchical A* for long Paths, the search runs over the entrances of an
+ * EntranceGraph rather then over every Block. The Start and Goal are joined to
+ * the entrances of their own Chunks, and the chain of entrances found is then
+ * refined into Block steps one Chunk at a time.
+ *
+ * The refined Path bends through the entrances chosen for each Chunk border,
+ * so it is smoothed afterwards by searching windows of it again with a
+ * bounded AStar, twice with the windows offset by half, splicing in any
+ * shorter way found. Paths come out close to but not always as short as those
+ * of AStar. If the abstraction finds no way, or a Chunk has changed so a leg
+ * can not be refined, a plain AStar search is run instead so no reachable
+ * Goal is missed.
+ *
+ * Like AStar the search can be run for a limited number of nodes at a time,
+ * the Fringe, the legs refined so far and any fallback search are kept between
+ * calls. Blocks expanded by the EntranceGraph on the searching thread, to
+ * rebuild stale Clusters or refine legs, are counted as expanded nodes of this
+ * search so they are charged against the same budget.
+ *
+ * @author Impaler
+ */
+public class HierarchicalAStar extends PathAlgorithm<HierarchicalAStar.AbstractNode> implements Callable<MapPath>, Serializable {
+
+	private static final long serialVersionUID = 1;
+	// Steps of the refined Path searched again at a time when smoothing
+	static final int SMOOTHING_WINDOW = 64;
+	// Most Blocks the search of one smoothing window may expand
+	static final int SMOOTHING_NODE_LIMIT = 4096;
+	// Windows are searched for their shortest way, which needs an admissible Heuristic
+	static final Heuristic SMOOTHING_HEURISTIC = new Heuristic.Octile();
+
+	/**
+	 * An entrance reached during the abstract search, the Goal has no Owner.
+	 * Step is set when the node was reached by crossing from its Parent.
+	 */
+	static class AbstractNode implements Comparable<AbstractNode>, Serializable {
+
+		private static final long serialVersionUID = 1;
+		MapCoordinate LocationCoordinates;
+		EntranceGraph.Cluster Owner;
+		int NodeIndex;
+		float PathLengthFromStart;
+		float TotalCost;
+		AbstractNode Parent;
+		Direction Step;
+
+		void set(MapCoordinate Location, EntranceGraph.Cluster OwnerCluster, int Index, AbstractNode ParentNode, Direction CrossingStep, float DistanceFromStart, float MinimumCost) {
+			LocationCoordinates = Location;
+			Owner = OwnerCluster;
+			NodeIndex = Index;
+			Parent = ParentNode;
+			Step = CrossingStep;
+			PathLengthFromStart = DistanceFromStart;
+			TotalCost = DistanceFromStart + MinimumCost;
+		}
+
+		public int compareTo(AbstractNode TargetNode) {
+			if (TotalCost < TargetNode.TotalCost)
+				return -1;
+			if (TotalCost > TargetNode.TotalCost)
+				return 1;
+			return 0;
+		}
+	}
+
+	EntranceGraph Graph;
+
+	PriorityQueue<AbstractNode> FringeHeap;
+	HashMap<MapCoordinate, Float> BestLengths;
+	HashSet<MapCoordinate> VisitedCoordinates;
+	EntranceGraph.Cluster GoalCluster;
+	float[] GoalCosts;
+	float GoalLength;
+	AbstractNode GoalNode;
+	boolean SearchBegun;
+
+	// Refinement of the chain of entrances, carried on across calls
+	ArrayList<AbstractNode> Chain;
+	int ChainIndex;
+	ArrayList<Direction> Course;
+	MapCoordinate RefinedCoordinates;
+	PackedPath RefinedPath;
+
+	// Smoothing of the refined Course, a pass at a time into Smoothed
+	ArrayList<Direction> Smoothed;
+	int SmoothingPass;
+	int CourseIndex;
+	MapCoordinate SmoothedCoordinates;
+	float SmoothedLength;
+
+	AStar Fallback;
+	int GraphExpansions;  // The threads EntranceGraph count last added to ExpandedNodes
+
+	HierarchicalAStar(GridInterface TargetSearchGraph, EntranceGraph Abstraction) {
+		FringeHeap = new PriorityQueue<AbstractNode>(100);
+		BestLengths = new HashMap<MapCoordinate, Float>();
+		VisitedCoordinates = new HashSet<MapCoordinate>();
+
+		SearchGraph = TargetSearchGraph;
+		Graph = Abstraction;
+		FinalPath = null;
+	}
+
+	@Override
+	void setEndPoints(MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		abandon();
+		super.setEndPoints(StartCoords, GoalCoords);
+		GoalNode = null;
+		SearchBegun = false;
+		Chain = null;
+		Course = null;
+		Smoothed = null;
+		RefinedPath = null;
+		Fallback = null;
+	}
+
+	/**
+	 * Joins the Start and Goal to the entrances of their Chunks and places the
+	 * Start entrances on the Fringe.
+	 */
+	private void beginSearch() {
+		FringeHeap.clear();
+		BestLengths.clear();
+		VisitedCoordinates.clear();
+		GoalLength = Float.MAX_VALUE;
+		SearchBegun = true;
+
+		EntranceGraph.Cluster StartCluster = Graph.getCluster(StartCoordinates.Chunk);
+		GoalCluster = Graph.getCluster(GoalCoordinates.Chunk);
+		float[] StartCosts = Graph.findEntranceCosts(StartCluster, StartCoordinates, false);
+		GoalCosts = Graph.findEntranceCosts(GoalCluster, GoalCoordinates, true);
+
+		if (StartCoordinates.Chunk.equals(GoalCoordinates.Chunk)) {
+			float DirectCost = Graph.findLocalCost(StartCoordinates, GoalCoordinates);
+			if (DirectCost >= 0)
+				reach(GoalCoordinates, null, -1, null, null, DirectCost);
+		}
+
+		for (int i = 0; i < StartCosts.length; i++) {
+			if (StartCosts[i] >= 0)
+				reach(StartCluster.Nodes.get(i), StartCluster, i, null, null, StartCosts[i]);
+		}
+	}
+
+	/**
+	 * Searches the abstraction and then refines the chain found, stopping once
+	 * NodesToExpand nodes have been expanded, a zero argument runs until a Path
+	 * is complete or none can be found.
+	 */
+	boolean searchPath(int NodesToExpand) {
+		if (RefinedPath != null)
+			return true;
+		if (FringeExausted)
+			return false;
+
+		GraphExpansions = EntranceGraph.getThreadExpansions();
+		int Limit = NodesToExpand > 0 ? ExpandedNodes + NodesToExpand : Integer.MAX_VALUE;
+		if (Fallback != null)
+			return searchFallback(Limit);
+
+		if (!SearchBegun) {
+			beginSearch();
+			countGraphExpansions();
+		}
+
+		while (GoalNode == null) {
+			if (FringeHeap.isEmpty())
+				return beginFallback(Limit);
+			if (ExpandedNodes >= Limit)
+				return false;
+
+			AbstractNode CurrentNode = FringeHeap.poll();
+			if (CurrentNode.Owner == null) {
+				GoalNode = CurrentNode;
+				beginRefinement();
+				break;
+			}
+
+			if (VisitedCoordinates.contains(CurrentNode.LocationCoordinates))
+				continue;
+			VisitedCoordinates.add(CurrentNode.LocationCoordinates);
+			ExpandedNodes++;
+			expandNode(CurrentNode);
+			countGraphExpansions();
+		}
+
+		while (ChainIndex < Chain.size()) {
+			if (ExpandedNodes >= Limit)
+				return false;
+
+			boolean Refined = refineNext();
+			countGraphExpansions();
+			if (!Refined)
+				return beginFallback(Limit);
+		}
+
+		if (Smoothed == null)
+			beginSmoothingPass(0);
+		while (CourseIndex < Course.size()) {
+			if (ExpandedNodes >= Limit)
+				return false;
+
+			smoothNext();
+			if (CourseIndex == Course.size() && SmoothingPass == 0 && Course.size() > SMOOTHING_WINDOW / 2) {
+				Course = Smoothed;
+				beginSmoothingPass(1);
+			}
+		}
+
+		RefinedPath = new PackedPath(SmoothedLength, Smoothed, StartCoordinates, GoalCoordinates);
+		Course = null;
+		Smoothed = null;
+		FringeHeap.clear();
+		BestLengths.clear();
+		VisitedCoordinates.clear();
+		return true;
+	}
+
+	/**
+	 * Adds the Blocks the EntranceGraph expanded on this thread since last
+	 * counted to the expanded nodes.
+	 */
+	private void countGraphExpansions() {
+		int Expansions = EntranceGraph.getThreadExpansions();
+		ExpandedNodes += Expansions - GraphExpansions;
+		GraphExpansions = Expansions;
+	}
+
+	void expandNode(AbstractNode CurrentNode) {
+		EntranceGraph.Cluster Owner = CurrentNode.Owner;
+		int Index = CurrentNode.NodeIndex;
+		float Length = CurrentNode.PathLengthFromStart;
+
+		if (Owner.Coordinates.equals(GoalCluster.Coordinates)) {
+			int GoalIndex = GoalCluster.getNodeIndex(CurrentNode.LocationCoordinates);
+			if (GoalIndex >= 0 && GoalCosts[GoalIndex] >= 0)
+				reach(GoalCoordinates, null, -1, CurrentNode, null, Length + GoalCosts[GoalIndex]);
+		}
+
+		float[] Costs = Owner.Costs[Index];
+		for (int i = 0; i < Costs.length; i++) {
+			GraphReads++;
+			if (i != Index && Costs[i] >= 0)
+				reach(Owner.Nodes.get(i), Owner, i, CurrentNode, null, Length + Costs[i]);
+		}
+
+		for (EntranceGraph.Link Crossing : Owner.Links.get(Index)) {
+			GraphReads++;
+			EntranceGraph.Cluster Remote = Graph.getCluster(Crossing.Target.Chunk);
+			int RemoteIndex = Remote.getNodeIndex(Crossing.Target);
+			if (RemoteIndex >= 0)
+				reach(Crossing.Target, Remote, RemoteIndex, CurrentNode, Crossing.Heading, Length + Crossing.Cost);
+		}
+	}
+
+	/**
+	 * Adds a node to the Fringe unless it has been reached more cheaply, the
+	 * Goal is tracked apart as it may share its Location with an entrance.
+	 */
+	private void reach(MapCoordinate Location, EntranceGraph.Cluster Owner, int Index, AbstractNode Parent, Direction Step, float Length) {
+		if (Owner == null) {
+			if (Length >= GoalLength)
+				return;
+			GoalLength = Length;
+		} else {
+			if (VisitedCoordinates.contains(Location))
+				return;
+
+			Float Best = BestLengths.get(Location);
+			if (Best != null && Best.floatValue() <= Length)
+				return;
+			BestLengths.put(Location, Length);
+		}
+
+		AbstractNode NewNode = provide();
+		NewNode.set(Location, Owner, Index, Parent, Step, Length, MainHeuristic.estimate(Location, GoalCoordinates));
+		FringeHeap.add(NewNode);
+	}
+
+	MapPath findPath(int NodesToExpand) {
+		if (FinalPath != null)
+			return FinalPath;
+
+		if (searchPath(NodesToExpand))
+			FinalPath = Fallback != null ? Fallback.findPath(0) : RefinedPath;
+
+		return FinalPath;
+	}
+
+	/**
+	 * Lists the chain of entrances from the Start to the Goal, to be refined
+	 * into Block steps a leg at a time.
+	 */
+	private void beginRefinement() {
+		Chain = new ArrayList<AbstractNode>();
+		for (AbstractNode Node = GoalNode; Node != null; Node = Node.Parent) {
+			Chain.add(Node);
+		}
+		Collections.reverse(Chain);
+
+		ChainIndex = 0;
+		Course = new ArrayList<Direction>();
+		RefinedCoordinates = StartCoordinates;
+	}
+
+	/**
+	 * Refines the next leg of the chain into Block steps, false if a Chunk
+	 * along it has changed since the abstraction was read.
+	 */
+	private boolean refineNext() {
+		AbstractNode Node = Chain.get(ChainIndex++);
+		if (Node.Step != null) {
+			Course.add(Node.Step);
+		} else if (!Node.LocationCoordinates.equals(RefinedCoordinates)) {
+			if (!Graph.refine(RefinedCoordinates, Node.LocationCoordinates, Course))
+				return false;
+		}
+		RefinedCoordinates = Node.LocationCoordinates;
+		return true;
+	}
+
+	private void beginSmoothingPass(int Pass) {
+		SmoothingPass = Pass;
+		Smoothed = new ArrayList<Direction>(Course.size());
+		CourseIndex = 0;
+		SmoothedCoordinates = StartCoordinates.clone();
+		SmoothedLength = 0;
+	}
+
+	/**
+	 * Searches the next window of the Course again, appending the shorter of
+	 * the way found and the steps already there. The first window of the
+	 * second pass is half as long so its windows span the joins of the first.
+	 */
+	private void smoothNext() {
+		int Window = (SmoothingPass == 1 && CourseIndex == 0) ? SMOOTHING_WINDOW / 2 : SMOOTHING_WINDOW;
+		int WindowEnd = Math.min(CourseIndex + Window, Course.size());
+
+		MapCoordinate EndCoordinates = SmoothedCoordinates.clone();
+		float WindowLength = 0;
+		for (int i = CourseIndex; i < WindowEnd; i++) {
+			Direction Step = Course.get(i);
+			WindowLength += SearchGraph.getDirectionCost(Step.ordinal());
+			EndCoordinates.translate(Step);
+		}
+
+		MapPath Shortcut = null;
+		if (WindowEnd - CourseIndex > 1)
+			Shortcut = searchShortcut(SmoothedCoordinates, EndCoordinates);
+
+		if (Shortcut != null && Shortcut.Length < WindowLength) {
+			PathWalker Walker = Shortcut.getPathWalker();
+			for (Direction Step = Walker.nextDirection(); Step != Direction.DIRECTION_DESTINATION; Step = Walker.nextDirection()) {
+				Smoothed.add(Step);
+			}
+			SmoothedLength += Shortcut.Length;
+		} else {
+			Smoothed.addAll(Course.subList(CourseIndex, WindowEnd));
+			SmoothedLength += WindowLength;
+		}
+		SmoothedCoordinates = EndCoordinates;
+		CourseIndex = WindowEnd;
+	}
+
+	/**
+	 * The shortest way between two Blocks of the Course found within
+	 * SMOOTHING_NODE_LIMIT Blocks, null if none was.
+	 */
+	private MapPath searchShortcut(MapCoordinate FromCoordinates, MapCoordinate ToCoordinates) {
+		AStar Shortcut = new AStar(SearchGraph);
+		Shortcut.setModality(Modality);
+		Shortcut.setHeuristics(SMOOTHING_HEURISTIC, TieBreakerHeuristic);
+		Shortcut.setEndPoints(FromCoordinates.clone(), ToCoordinates.clone());
+
+		boolean Found = Shortcut.searchPath(SMOOTHING_NODE_LIMIT);
+		ExpandedNodes += Shortcut.getExpandedNodes();
+		GraphReads += Shortcut.getGraphReads();
+		if (!Found) {
+			Shortcut.abandon();
+			return null;
+		}
+		return Shortcut.findPath(0);
+	}
+
+	/**
+	 * Drops the abstract search and starts a plain AStar in its place, which
+	 * is then searched within what is left of the Limit.
+	 */
+	private boolean beginFallback(int Limit) {
+		FringeHeap.clear();
+		BestLengths.clear();
+		VisitedCoordinates.clear();
+		Chain = null;
+		Course = null;
+
+		Fallback = new AStar(SearchGraph);
+		Fallback.setModality(Modality);
+		Fallback.setHeuristics(MainHeuristic, TieBreakerHeuristic);
+		Fallback.setEndPoints(StartCoordinates, GoalCoordinates);
+		return searchFallback(Limit);
+	}
+
+	private boolean searchFallback(int Limit) {
+		if (ExpandedNodes >= Limit)
+			return false;
+
+		int Expanded = Fallback.getExpandedNodes();
+		int Reads = Fallback.getGraphReads();
+		boolean Found = Fallback.searchPath(Limit == Integer.MAX_VALUE ? 0 : Limit - ExpandedNodes);
+		ExpandedNodes += Fallback.getExpandedNodes() - Expanded;
+		GraphReads += Fallback.getGraphReads() - Reads;
+
+		if (Fallback.isExhausted())
+			FringeExausted = true;
+		return Found;
+	}
+
+	@Override
+	void abandon() {
+		if (Fallback != null)
+			Fallback.abandon();
+	}
+
+	AbstractNode provide() {
+		return new AbstractNode();
+	}
+
+	public MapPath call() {
+		return findPath(0);
+	}
+}
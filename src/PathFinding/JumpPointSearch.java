@@ -0,0 +1,202 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Axis;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+/**
+ * Jump Point Search, an AStar that skips the many equal length Paths across
+ * open ground. A Block is flat when it has an edge in all eight compass
+ * Directions and none up or down, and open when it and all eight of its
+ * compass neighbors are flat. Across open Blocks the costs of a Grid whose
+ * edge cost depends only on Direction are the same everywhere, so an open
+ * Block only passes the search on to its natural neighbors, and straight
+ * moves become jumps that only stop at the Goal or where the ground stops
+ * being open.
+ *
+ * Blocks that are not open, such as those by walls, slopes, ramps and
+ * stairs, are expanded along all their edges like AStar, so the search is
+ * exact wherever uniformity breaks. If the jumps somehow miss a reachable Goal
+ * a plain AStar search is run so no Path is lost.
+ *
+ * @author Impaler
+ */
+public class JumpPointSearch extends AStar {
+
+	private static final long serialVersionUID = 1;
+
+	static final int COMPASS_MASK;
+	static final int VERTICAL_MASK;
+
+	// The East/West and North/South parts of each compass diagonal, by ordinal
+	static final Direction[] X_COMPONENT = new Direction[Direction.values().length];
+	static final Direction[] Y_COMPONENT = new Direction[Direction.values().length];
+
+	static {
+		int Compass = 0;
+		for (Direction Heading : Direction.COMPASS_DIRECTIONS) {
+			Compass |= 1 << Heading.ordinal();
+		}
+		COMPASS_MASK = Compass;
+
+		int Vertical = 0;
+		for (Direction Heading : Direction.ANGULAR_DIRECTIONS) {
+			if (Heading.getValueonAxis(Axis.AXIS_Z) != 0)
+				Vertical |= 1 << Heading.ordinal();
+		}
+		VERTICAL_MASK = Vertical;
+
+		for (Direction Diagonal : Direction.COMPASS_DIRECTIONS) {
+			int X = Diagonal.getValueonAxis(Axis.AXIS_X);
+			int Y = Diagonal.getValueonAxis(Axis.AXIS_Y);
+			if (X == 0 || Y == 0)
+				continue;
+
+			for (Direction Straight : Direction.CARDINAL_DIRECTIONS) {
+				if (Straight.getValueonAxis(Axis.AXIS_X) == X && Straight.getValueonAxis(Axis.AXIS_Y) == 0)
+					X_COMPONENT[Diagonal.ordinal()] = Straight;
+				if (Straight.getValueonAxis(Axis.AXIS_Y) == Y && Straight.getValueonAxis(Axis.AXIS_X) == 0)
+					Y_COMPONENT[Diagonal.ordinal()] = Straight;
+			}
+		}
+	}
+
+	MapCoordinate ProbeCoordinates;
+	// Blocks moved by the last jump
+	int JumpLength;
+
+	JumpPointSearch(GridInterface TargetSearchGraph) {
+		super(TargetSearchGraph);
+		ProbeCoordinates = new MapCoordinate();
+	}
+
+	@Override
+	MapPath findPath(int NodesToExpand) {
+		MapPath FoundPath = super.findPath(NodesToExpand);
+		if (FoundPath == null && FringeExausted && !SearchLimited)
+			FoundPath = findFallbackPath();
+		return FoundPath;
+	}
+
+	MapPath findFallbackPath() {
+		AStar Fallback = new AStar(SearchGraph);
+		Fallback.setModality(Modality);
+		Fallback.setHeuristics(MainHeuristic, TieBreakerHeuristic);
+		Fallback.setEndPoints(StartCoordinates, GoalCoordinates);
+
+		FinalPath = Fallback.findPath(0);
+		GraphReads += Fallback.getGraphReads();
+		ExpandedNodes += Fallback.getExpandedNodes();
+		return FinalPath;
+	}
+
+	@Override
+	boolean expandNode() {
+		CurrentNode = Arena.pop();
+		long TestKey = Arena.Keys[CurrentNode];
+
+		if (TestKey == GoalKey)
+			return true;
+
+		ExpandedNodes++;
+		PackedCoordinate.unpack(TestKey, ExpandingCoordinates);
+		int TestDirections = SearchGraph.getDirectionMask(ExpandingCoordinates);
+		GraphReads++;
+		Direction Arrival = Direction.ANGULAR_DIRECTIONS[Arena.ParentDirection[CurrentNode]];
+
+		if ((COMPASS_MASK & (1 << Arrival.ordinal())) != 0 && isOpen(TestKey)) {
+			// Only the natural neighbors of a move across open ground
+			TestDirections = 1 << Arrival.ordinal();
+			if (X_COMPONENT[Arrival.ordinal()] != null) {
+				TestDirections |= 1 << X_COMPONENT[Arrival.ordinal()].ordinal();
+				TestDirections |= 1 << Y_COMPONENT[Arrival.ordinal()].ordinal();
+			}
+		} else {
+			TestDirections &= ~(1 << Direction.DIRECTION_NONE.ordinal());
+			TestDirections &= ~(1 << Arrival.invert().ordinal());
+		}
+		float CurrentLength = Arena.PathLength[CurrentNode];
+
+		while (TestDirections != 0) {
+			int i = Integer.numberOfTrailingZeros(TestDirections);
+			TestDirections &= TestDirections - 1;
+
+			Direction DirectionType = Direction.ANGULAR_DIRECTIONS[i];
+			long JumpKey = jump(TestKey, DirectionType);
+			int JumpNode = Arena.find(JumpKey);
+			if (JumpNode >= 0 && Arena.isClosed(JumpNode))
+				continue;
+
+			float Length = CurrentLength + (SearchGraph.getDirectionCost(i) * JumpLength);
+			GraphReads++;
+
+			if (JumpNode < 0) {
+				JumpNode = Arena.add(JumpKey);
+				PackedCoordinate.unpack(JumpKey, NeiboringCoordinates);
+				Arena.set(JumpNode, CurrentNode, i, Length, MainHeuristic.estimate(NeiboringCoordinates, GoalCoordinates), TieBreakerHeuristic.estimate(NeiboringCoordinates, GoalCoordinates));
+				Arena.Steps[JumpNode] = JumpLength;
+				Arena.push(JumpNode);
+			} else if (Length < Arena.PathLength[JumpNode]) {
+				Arena.decrease(JumpNode, CurrentNode, i, Length);
+				Arena.Steps[JumpNode] = JumpLength;
+			}
+		}
+
+		return false; // Goal was not found
+	}
+
+	/**
+	 * Moves from a Block along an edge it has, and on for as long as the
+	 * ground is open, returning the Block where the jump stopped and setting
+	 * JumpLength. Climbs and diagonals are single steps, a straight run along
+	 * either part of a diagonal always meets the edge of the open ground so
+	 * every Block on a diagonal is itself a jump point.
+	 */
+	long jump(long StartKey, Direction Heading) {
+		long Key = PackedCoordinate.translate(StartKey, Heading);
+		JumpLength = 1;
+		if ((VERTICAL_MASK & (1 << Heading.ordinal())) != 0 || X_COMPONENT[Heading.ordinal()] != null)
+			return Key;
+
+		while (Key != GoalKey && isOpen(Key)) {
+			Key = PackedCoordinate.translate(Key, Heading);
+			JumpLength++;
+		}
+		return Key;
+	}
+
+	private boolean isFlat(long Key) {
+		PackedCoordinate.unpack(Key, ProbeCoordinates);
+		int Mask = SearchGraph.getDirectionMask(ProbeCoordinates);
+		GraphReads++;
+		return (Mask & COMPASS_MASK) == COMPASS_MASK && (Mask & VERTICAL_MASK) == 0;
+	}
+
+	private boolean isOpen(long Key) {
+		if (!isFlat(Key))
+			return false;
+
+		for (Direction Heading : Direction.COMPASS_DIRECTIONS) {
+			if (!isFlat(PackedCoordinate.translate(Key, Heading)))
+				return false;
+		}
+		return true;
+	}
+}
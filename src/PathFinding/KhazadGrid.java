@@ -20,9 +20,15 @@ package PathFinding;
 import Map.Chunk;
 import java.util.BitSet;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import Map.GameMap;
 import Map.Coordinates.*;
@@ -33,14 +39,18 @@ import java.io.Serializable;
 /**
  * The primary implementation of Grid for Khazad pathfinding, it uses a GridChunk
  * class the spacially corresponds to the MapChunk class for interchangability of
- * Coordinates, but the GridChunk holds a single large BitSet of ~7000 bits that
- * corresponds to every Coordinates possible edge to neibhors. Also it records
- * a connectivity zone for each coordinate.
+ * Coordinates, but the GridChunk holds an int mask for every Block with a bit
+ * for each Direction ordinal in which it has an edge to a neibhor. Also it
+ * records a connectivity zone for each coordinate. Edge costs depend only on
+ * Direction and are read from a table built once per Grid. Which edges exist
+ * is decided by the EdgeRule of the Grids Modality, Chunks with no edges at all
+ * or the same edges as in another Grid share one mask array.
  *
  * The Grid class then stores a HashMap of these GridChunks, again mirroring the
- * structure used in GameMap, as well as a double HashMap and List which are
- * built in a single read pass on the Game Map, this allows for a constant time
- * connection query but is not dynamic.
+ * structure used in GameMap. Connectivity is kept by ConnectivityZones, each
+ * GridChunk holding the local zone of its Blocks and the links between those
+ * and its neighbors, so connection queries are constant time and stay exact
+ * as edits join and split areas.
  *
  * @author Impaler
  */
@@ -50,160 +60,261 @@ public class KhazadGrid implements GridInterface, Serializable {
 
 	protected class GridChunk {
 
-		private BitSet DirectionMatrix;
-		int[] ConnectivityZone;
+		private int[] DirectionMasks;
+		// DirectionMasks may be EMPTY_MASKS or the array of another Grids Chunk, copied before any change
+		boolean MasksShared;
+		int[] ConnectivityZone;  // Local zone within this Chunk, see ConnectivityZones
+		int ZoneCount;
+		long[] ZoneLinks;
+		int Slot;
 		private ChunkCoordinate thisChunkCoodinates;
 
 		GridChunk(ChunkCoordinate Coordinates) {
 			thisChunkCoodinates = Coordinates;
-			DirectionMatrix = new BitSet(BlockCoordinate.BLOCKS_PER_CHUNK * Direction.ANGULAR_DIRECTIONS.length);
-			ConnectivityZone = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+			DirectionMasks = EMPTY_MASKS;
+			MasksShared = true;
+			ConnectivityZone = EMPTY_ZONES;
+			ZoneLinks = new long[0];
 		}
 
 		public int getConnectivityZone(short BlockIndex) {
 			return ConnectivityZone[BlockIndex];
 		}
 
-		public void setConnectivityZone(short BlockIndex, int Zone) {
-			ConnectivityZone[BlockIndex] = Zone;
-		}
-
 		public BitSet getBlockDirections(short BlockIndex) {
-			return DirectionMatrix.get(BlockIndex * Direction.ANGULAR_DIRECTIONS.length, ((BlockIndex + 1) * Direction.ANGULAR_DIRECTIONS.length));
+			return BitSet.valueOf(new long[] {DirectionMasks[BlockIndex]});
 		}
 
 		public void setBlockDirection(short BlockIndex, Direction TargetDirection, boolean newValue) {
-			DirectionMatrix.set((BlockIndex * Direction.ANGULAR_DIRECTIONS.length) + TargetDirection.ordinal(), newValue);
+			unshareMasks();
+			if (newValue) {
+				DirectionMasks[BlockIndex] |= 1 << TargetDirection.ordinal();
+			} else {
+				DirectionMasks[BlockIndex] &= ~(1 << TargetDirection.ordinal());
+			}
+		}
+
+		boolean getBlockDirection(short BlockIndex, Direction TargetDirection) {
+			return (DirectionMasks[BlockIndex] & (1 << TargetDirection.ordinal())) != 0;
+		}
+
+		boolean hasBlockDirections(short BlockIndex) {
+			return DirectionMasks[BlockIndex] != 0;
+		}
+
+		/**
+		 * The edges of a Block as an int with the bit of each Direction ordinal
+		 */
+		int getBlockDirectionMask(short BlockIndex) {
+			return DirectionMasks[BlockIndex];
+		}
+
+		void setBlockDirectionMask(short BlockIndex, int Mask) {
+			unshareMasks();
+			DirectionMasks[BlockIndex] = Mask;
 		}
 
 		void setBlockDirections(short BlockIndex, BitSet ArgumentSet) {
-			for (int i = 0; i < Direction.ANGULAR_DIRECTIONS.length; i++) {
-				DirectionMatrix.set((BlockIndex * Direction.ANGULAR_DIRECTIONS.length) + i, ArgumentSet.get(i));
-			}
+			unshareMasks();
+			DirectionMasks[BlockIndex] = ArgumentSet.isEmpty() ? 0 : (int) ArgumentSet.toLongArray()[0];
 		}
 
 		ChunkCoordinate getChunkCoordinates() {
 			return thisChunkCoodinates;
 		}
+
+		private void unshareMasks() {
+			if (MasksShared) {
+				DirectionMasks = DirectionMasks.clone();
+				MasksShared = false;
+			}
+		}
+
+		/**
+		 * Takes freshly built masks, keeping instead the empty array or the
+		 * matching array of the BaseChunk when the masks are the same.
+		 */
+		void setMasks(int[] NewMasks, GridChunk BaseChunk) {
+			boolean Empty = true;
+			for (int Mask : NewMasks) {
+				if (Mask != 0) {
+					Empty = false;
+					break;
+				}
+			}
+
+			if (Empty) {
+				DirectionMasks = EMPTY_MASKS;
+				MasksShared = true;
+			} else if (BaseChunk != null && Arrays.equals(NewMasks, BaseChunk.DirectionMasks)) {
+				DirectionMasks = BaseChunk.DirectionMasks;
+				MasksShared = true;
+				BaseChunk.MasksShared = true;
+			} else {
+				DirectionMasks = NewMasks;
+				MasksShared = false;
+			}
+		}
 	}
 
+	// Shared by every Chunk without edges, in any Grid
+	static final int[] EMPTY_MASKS = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+	static final int[] EMPTY_ZONES = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+
 	ConcurrentHashMap<ChunkCoordinate, GridChunk> GridChunks;
 	ConcurrentLinkedDeque<MapCoordinate> DirtyLocations;
 	// Connections between groups of Coordinates
-	BlockShape TargetBlockShape, AboveBlockShape, AdjacentBlockShape;
-	ArrayList<Integer> ConnectivityCache;
-	ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Integer>> ConnectivityMap;
+	BlockShape TargetBlockShape;
+	ConnectivityZones Zones;
 	MapCoordinate TestCoordinates;
 	// The unique mix of movements this Grid is modeling
 	MovementModality GridModality;
+	EdgeRule Rules;
+	// Cost of a step in each Direction by ordinal
+	float[] DirectionCosts;
 	GameMap SourceMap;
+	// Chunk level abstraction for long searches, kept current through dirtyMapCoordinate
+	EntranceGraph Entrances;
+	// Room around each Block for creatures larger then one Block, shared with derived Grids
+	ClearanceMap Clearances;
+	boolean OwnsClearances;
 
 	public KhazadGrid(GameMap TargetMap, MovementModality Modality) {
+		this(TargetMap, Modality, null);
+	}
+
+	/**
+	 * Builds in two phases, the edges of every Chunk and then the connectivity
+	 * zones, each spread over the Pool one Chunk per task. Without a Pool the
+	 * same tasks are run in turn on the calling thread.
+	 */
+	public KhazadGrid(GameMap TargetMap, MovementModality Modality, ExecutorService Pool) {
+		this(TargetMap, Modality, Pool, null);
+	}
+
+	/**
+	 * A Grid for another Modality built alongside BaseGrid, each of its Chunks
+	 * whose edges come out the same as the BaseGrids shares the mask array
+	 * rather then holding a copy.
+	 */
+	public KhazadGrid(GameMap TargetMap, MovementModality Modality, ExecutorService Pool, final KhazadGrid BaseGrid) {
 		GridChunks = new ConcurrentHashMap<ChunkCoordinate, GridChunk>();
-		ConnectivityMap = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Integer>>();
-		ConnectivityCache = new ArrayList<Integer>();
+		Zones = new ConnectivityZones(this);
 		DirtyLocations = new ConcurrentLinkedDeque<MapCoordinate>();
 		TestCoordinates = new MapCoordinate();
 		GridModality = Modality;
+		Rules = createEdgeRule(Modality.getEdgeRuleKey());
 		SourceMap = TargetMap;
+		DirectionCosts = buildDirectionCosts();
 
 		TargetBlockShape = new BlockShape(); 
-		AboveBlockShape = new BlockShape(); 
-		AdjacentBlockShape = new BlockShape();
 
+		// Chunks are registered in order first, only their edges are built concurrently
+		ArrayList<Callable<Object>> EdgeTasks = new ArrayList<Callable<Object>>();
 		for (Sector targetSector : TargetMap.getSectorCollection()) {
-			TestCoordinates.Sector.copy(targetSector.getSectorCoordinates());
+			final SectorCoordinate SectorCoords = targetSector.getSectorCoordinates();
 			for (Chunk TargetChunk : targetSector.getChunkCollection()) {
-				TestCoordinates.Chunk.copy(TargetChunk.getChunkCoordinates());
-				ChunkCoordinate ChunkCoords = TargetChunk.getChunkCoordinates();
-				GridChunk NewGridChunk = addChunk(ChunkCoords);
-
-				for (BlockCoordinate Index = new BlockCoordinate(); !Index.end(); Index.next()) {
-					TestCoordinates.Block.copy(Index);
-					BitSet Flags = buildConnectivitySet(TestCoordinates);
-					NewGridChunk.setBlockDirections(Index.getBlockIndex(), Flags);
-				} 
+				final GridChunk NewGridChunk = addChunk(TargetChunk.getChunkCoordinates());
+				EdgeTasks.add(new Callable<Object>() {
+					public Object call() {
+						GridChunk BaseChunk = BaseGrid != null ? BaseGrid.getChunk(NewGridChunk.getChunkCoordinates()) : null;
+						buildChunkEdges(NewGridChunk, SectorCoords, BaseChunk);
+						return null;
+					}
+				});
 			}
 		}
+		runTasks(Pool, EdgeTasks);
 
-		buildConnectivityZones();
-	}
-
-	final void buildConnectivityZones() {
-		int ZoneCounter = 0;
-
-		// Loop to do connectivity
-		for (GridChunk TargetChunk : GridChunks.values()) {
-			if (TargetChunk != null) {
-				ChunkCoordinate ChunkCoords = TargetChunk.getChunkCoordinates();
-				TestCoordinates.setChunkCoordinate(ChunkCoords);
-
-				for (BlockCoordinate Index = new BlockCoordinate(); !Index.end(); Index.next()) {
-					TestCoordinates.setBlockCoordinate(Index);
-					BitSet Flags = getDirectionEdgeSet(TestCoordinates);
-
-					if (Flags.cardinality() > 0) {
-						if (TargetChunk.ConnectivityZone[Index.getBlockIndex()] == 0) { // Start a new zone if not connected to another zone
-							ZoneCounter++; // First zone will be 1, 0 will indicate un-ititialized
-							TargetChunk.ConnectivityZone[Index.getBlockIndex()] = ZoneCounter;
-						}
-						// Push this current zone onto the adjacent area
-						int CurrentZoneIndex = TargetChunk.ConnectivityZone[Index.getBlockIndex()];
-
-						for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
-							if (Flags.get(dir.ordinal())) {
-								// Find the Zone that the adjcent Tile has
-								MapCoordinate AdjacentTileCoords = new MapCoordinate(ChunkCoords, Index);
-								AdjacentTileCoords.translate(dir);
-								int AdjacentZoneIndex = getConnectivityZone(AdjacentTileCoords);
-
-								if (AdjacentZoneIndex == 0) {// The other location is unititialized
-									setConnectivityZone(AdjacentTileCoords, CurrentZoneIndex); // Push this current zone onto the adjacent area
-								} else {
-									if (AdjacentZoneIndex != CurrentZoneIndex) { // A different zone update the Connectivity Map
-										changeConnectivityMap(CurrentZoneIndex, AdjacentZoneIndex, 1);  // Add one connection between zones
-									}
-								}
-							}
+		// Clearance depends only on the Map so a derived Grid reads that of its BaseGrid
+		if (BaseGrid != null) {
+			Clearances = BaseGrid.Clearances;
+		} else {
+			Clearances = new ClearanceMap(TargetMap);
+			OwnsClearances = true;
+			ArrayList<Callable<Object>> ClearanceTasks = new ArrayList<Callable<Object>>();
+			for (Sector targetSector : TargetMap.getSectorCollection()) {
+				final SectorCoordinate SectorCoords = targetSector.getSectorCoordinates();
+				for (Chunk TargetChunk : targetSector.getChunkCollection()) {
+					final ChunkCoordinate ChunkCoords = TargetChunk.getChunkCoordinates();
+					ClearanceTasks.add(new Callable<Object>() {
+						public Object call() {
+							Clearances.buildChunk(ChunkCoords, SectorCoords);
+							return null;
 						}
-					} else {
-						TargetChunk.ConnectivityZone[Index.getBlockIndex()] = 0;
-					}
+					});
 				}
 			}
+			runTasks(Pool, ClearanceTasks);
 		}
 
-		RebuildConnectivityCache(ZoneCounter);
+		Zones.build(Pool);
+		Entrances = new EntranceGraph(this);
 	}
 
-	private BitSet buildConnectivitySet(MapCoordinate TargetCoords) {
-		BitSet Flags = new BitSet(BlockCoordinate.BLOCKS_PER_CHUNK);
-		SourceMap.getBlockShape(TargetCoords, TargetBlockShape);
-
-		if (!TargetBlockShape.isSky() && !TargetBlockShape.hasCeiling()) {
-			MapCoordinate OverheadTileCoords = TargetCoords.clone();
-			OverheadTileCoords.translate(Direction.DIRECTION_UP);
-			SourceMap.getBlockShape(OverheadTileCoords, AboveBlockShape);
-			boolean OverheadPassable = !AboveBlockShape.isSolid();
-
-			for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
-				MapCoordinate AdjacentTileCoords = TargetCoords.clone();
-				AdjacentTileCoords.translate(dir);
-				SourceMap.getBlockShape(AdjacentTileCoords, AdjacentBlockShape);
-
-				if (!AdjacentBlockShape.isSky() && !AdjacentBlockShape.hasCeiling()) {
-					if (dir.getValueonAxis(Axis.AXIS_Z) == 1) {
-						if (OverheadPassable) {
-							Flags.set(dir.ordinal());
-						}
-					} else {
-						//If no vertical direction, we only care that this tile is passable
-						Flags.set(dir.ordinal());
-					}
+	/**
+	 * Runs every task to completion, on the Pool when one is given.
+	 */
+	static void runTasks(ExecutorService Pool, List<Callable<Object>> Tasks) {
+		try {
+			if (Pool == null) {
+				for (Callable<Object> Task : Tasks) {
+					Task.call();
 				}
+				return;
+			}
+			for (Future<Object> Result : Pool.invokeAll(Tasks)) {
+				Result.get();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building Grid", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Grid build failed", e.getCause());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Grid build failed", e);
 		}
-		return Flags;
+	}
+
+	/**
+	 * Fills the edges of every Block in a Chunk, each call uses only its own
+	 * scratch objects so Chunks can be built on different threads at once.
+	 */
+	private void buildChunkEdges(GridChunk TargetChunk, SectorCoordinate SectorCoords, GridChunk BaseChunk) {
+		MapCoordinate Coordinates = new MapCoordinate();
+		MapCoordinate AdjacentCoordinates = new MapCoordinate();
+		BlockShape Shape = new BlockShape();
+		int[] Masks = new int[BlockCoordinate.BLOCKS_PER_CHUNK];
+		Coordinates.Sector.copy(SectorCoords);
+		Coordinates.Chunk.copy(TargetChunk.getChunkCoordinates());
+
+		for (BlockCoordinate Index = new BlockCoordinate(); !Index.end(); Index.next()) {
+			Coordinates.Block.copy(Index);
+			Masks[Index.getBlockIndex()] = Rules.buildDirectionMask(SourceMap, Coordinates, Shape, AdjacentCoordinates);
+		}
+		TargetChunk.setMasks(Masks, BaseChunk);
+	}
+
+	/**
+	 * The EdgeRule for a key from MovementModality.getEdgeRuleKey, several
+	 * kinds of movement are combined so any may be used for each step.
+	 */
+	static EdgeRule createEdgeRule(int RuleKey) {
+		ArrayList<EdgeRule> Parts = new ArrayList<EdgeRule>();
+		if ((RuleKey & (1 << MovementModality.MovementType.MOVEMENT_TYPE_WALK.ordinal())) != 0)
+			Parts.add(new EdgeRule.Walk());
+		if ((RuleKey & (1 << MovementModality.MovementType.MOVEMENT_TYPE_CLIMB.ordinal())) != 0)
+			Parts.add(new EdgeRule.Climb());
+		if ((RuleKey & (1 << MovementModality.MovementType.MOVEMENT_TYPE_SWIM.ordinal())) != 0)
+			Parts.add(new EdgeRule.Swim());
+		if ((RuleKey & (1 << MovementModality.MovementType.MOVEMENT_TYPE_FLY.ordinal())) != 0)
+			Parts.add(new EdgeRule.Fly());
+
+		if (Parts.size() == 1)
+			return Parts.get(0);
+		return new EdgeRule.Combined(Parts.toArray(new EdgeRule[Parts.size()]));
 	}
 
 	public BitSet getDirectionEdgeSet(MapCoordinate TargetCoords) {
@@ -214,32 +325,48 @@ public class KhazadGrid implements GridInterface, Serializable {
 		return new BitSet();  // No connectivity because Chunk is invalid
 	}
 
+	public int getDirectionMask(MapCoordinate TargetCoords) {
+		GridChunk TargetChunk = getChunk(TargetCoords.Chunk);
+		if (TargetChunk != null) {
+			return TargetChunk.getBlockDirectionMask(TargetCoords.Block.getBlockIndex());
+		}
+		return 0;  // No connectivity because Chunk is invalid
+	}
+
 	public MovementModality getModality() {
 		return GridModality;
 	}
 
+	/**
+	 * Modalities with the same key move by the same rules and can share this
+	 * Grid.
+	 */
+	int getEdgeRuleKey() {
+		return GridModality.getEdgeRuleKey();
+	}
+
 	public boolean isEdge(MapCoordinate TargetCoords, Direction DirectionType) {
+		return isEdge(TargetCoords, DirectionType.ordinal());
+	}
+
+	boolean isEdge(MapCoordinate TargetCoords, int DirectionIndex) {
 		GridChunk TargetChunk = getChunk(TargetCoords.Chunk);
 		if (TargetChunk != null) {
-			int Positition = ((TargetCoords.Block.getBlockIndex()) * Direction.ANGULAR_DIRECTIONS.length) + DirectionType.ordinal();
-			return TargetChunk.DirectionMatrix.get(Positition);
+			return (TargetChunk.DirectionMasks[TargetCoords.Block.getBlockIndex()] & (1 << DirectionIndex)) != 0;
 		}
 		return false;
 	}
 
+	/**
+	 * The Map wide zone of the Location, 0 if it has no edges or its Chunk is
+	 * not in the Grid.
+	 */
 	public int getConnectivityZone(MapCoordinate TargetCoords) {
-		GridChunk TargetChunk = getChunk(TargetCoords.Chunk);
-		if (TargetChunk != null) {
-			return TargetChunk.ConnectivityZone[TargetCoords.Block.getBlockIndex()];
-		}
-		return 0;  // No connectivity zone because Chunk is invalid
+		return Zones.getZone(TargetCoords);
 	}
 
-	void setConnectivityZone(MapCoordinate TargetCoords, int NewZone) {
-		GridChunk TargetChunk = getChunk(TargetCoords.Chunk);
-		if (TargetChunk != null) {
-			TargetChunk.ConnectivityZone[TargetCoords.Block.getBlockIndex()] = NewZone;
-		}
+	public int getClearance(MapCoordinate TargetCoords) {
+		return Clearances.getClearance(TargetCoords);
 	}
 
 	void setDirectionFlags(MapCoordinate TargetCoords, BitSet Flags) {
@@ -250,36 +377,6 @@ public class KhazadGrid implements GridInterface, Serializable {
 		TargetChunk.setBlockDirections(TargetCoords.Block.getBlockIndex(), Flags);
 	}
 
-	ConcurrentHashMap<Integer, Integer> getConnectivtySubMap(int Zone) {
-		ConcurrentHashMap<Integer, Integer> SubMap = ConnectivityMap.get(Zone);
-
-		if (SubMap == null) {
-			SubMap = new ConcurrentHashMap<Integer, Integer>();
-			ConnectivityMap.put(Zone, SubMap);
-			return SubMap;
-		}
-		return SubMap;
-	}
-
-	void changeConnectivityMap(int FirstZone, int SecondZone, int connectionChange) {
-		if (FirstZone == SecondZone) {
-			return;  // Cannot connect to self
-		}
-
-		ConcurrentHashMap<Integer, Integer> TargetMap = getConnectivtySubMap(FirstZone);
-		Integer it = TargetMap.get(SecondZone);
-
-		if (it == null) {
-			if (connectionChange > 0) { // Do not allow negative connection counts
-				TargetMap.put(SecondZone, connectionChange);
-			}
-		} else {
-			if ((it.intValue() + connectionChange) <= 0) {
-				TargetMap.remove(it); // Remove the connection entirely
-			}
-		}
-	}
-
 	public boolean contains(MapCoordinate TestCoords) {
 		return getChunk(TestCoords.Chunk) != null;
 	}
@@ -292,6 +389,7 @@ public class KhazadGrid implements GridInterface, Serializable {
 		GridChunk TargetChunk = getChunk(TargetCoords);
 		if (TargetChunk == null) {
 			GridChunk NewGridChunk = new GridChunk(TargetCoords);
+			Zones.addChunk(NewGridChunk);  // Given its Slot before readers can find it
 			GridChunks.put(TargetCoords, NewGridChunk);
 			return NewGridChunk;
 		}
@@ -299,109 +397,115 @@ public class KhazadGrid implements GridInterface, Serializable {
 	}
 
 	public float getEdgeCost(MapCoordinate TestCoords, Direction DirectionType) {
-		if (isEdge(TestCoords, DirectionType)) {
-			if (DirectionType.getValueonAxis(Axis.AXIS_Z) != 0) // True for Up and Down
-				return 2;
-
-			boolean X = DirectionType.getValueonAxis(Axis.AXIS_X) != 0;
-			boolean Y = DirectionType.getValueonAxis(Axis.AXIS_Y) != 0;
-			final float root2 = (float) Math.sqrt(2);
-
-			if (X ^ Y) // N, S, E, W
-				return 1;
-			if (X & Y) {
-				return root2;
-			}
+		return getEdgeCost(TestCoords, DirectionType.ordinal());
+	}
 
-			if (DirectionType == Direction.DIRECTION_NONE)
-				return 0;
-			return 2;  // All other z axis diagonals
+	public float getEdgeCost(MapCoordinate TestCoords, int DirectionIndex) {
+		if (isEdge(TestCoords, DirectionIndex)) {
+			return DirectionCosts[DirectionIndex];
 		}
 		return -1;  // No Edge exists
 	}
 
-	public boolean isPathPossible(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
-		return getZoneEquivilency(StartCoords) == getZoneEquivilency(GoalCoords);
+	/**
+	 * The cost of an edge in the Direction, whether or not any such edge exists
+	 */
+	float getDirectionCost(Direction DirectionType) {
+		return DirectionCosts[DirectionType.ordinal()];
 	}
 
-	public void dirtyMapCoordinate(MapCoordinate[] DirtyCoords) {
-		Collections.addAll(DirtyLocations, DirtyCoords);
-
-		do {
-			MapCoordinate TargetCoords = DirtyLocations.poll();
-			BitSet NewConnectivitySet = buildConnectivitySet(TargetCoords);
-
-			ChunkCoordinate TargetChunk = TargetCoords.Chunk;
-			GridChunk TargetGridChunk = getChunk(TargetChunk);
-			BitSet CurrentConnectivity = getDirectionEdgeSet(TargetCoords);
-			int SourceZone = getConnectivityZone(TargetCoords);
+	public float getDirectionCost(int DirectionIndex) {
+		return DirectionCosts[DirectionIndex];
+	}
 
-			for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
-				boolean NewConnectionValue = NewConnectivitySet.get(dir.ordinal());
-				MapCoordinate AdjacentTileCoords = TargetCoords.clone();
-				AdjacentTileCoords.translate(dir);
-				ChunkCoordinate AdjacentChunk = AdjacentTileCoords.Chunk;
-				GridChunk AdjacentGridChunk = getChunk(AdjacentChunk);
-				int AdjacentZone = getConnectivityZone(AdjacentTileCoords);
-
-				if (NewConnectionValue != CurrentConnectivity.get(dir.ordinal())) {
-
-					if (NewConnectionValue) { // Connection created
-						if (SourceZone == 0 && AdjacentZone != 0) {  // Match the zone any adjacent connected zone
-							TargetGridChunk.setConnectivityZone(TargetCoords.Block.getBlockIndex(), AdjacentZone);
-						}
+	private static float[] buildDirectionCosts() {
+		final float root2 = (float) Math.sqrt(2);
+		float[] Costs = new float[Direction.values().length];
 
-						if (AdjacentZone == 0 && SourceZone != 0) {  // Alternativly push the existing zone into unitialized space
-							TargetGridChunk.setConnectivityZone(AdjacentTileCoords.Block.getBlockIndex(), SourceZone);
-						}
-					}
+		for (Direction DirectionType : Direction.ANGULAR_DIRECTIONS) {
+			float Cost;
+			boolean X = DirectionType.getValueonAxis(Axis.AXIS_X) != 0;
+			boolean Y = DirectionType.getValueonAxis(Axis.AXIS_Y) != 0;
 
-					if (SourceZone != AdjacentZone) {
-						if (NewConnectionValue) {
-							changeConnectivityMap(SourceZone, AdjacentZone, 1);
-						} else {
-							changeConnectivityMap(SourceZone, AdjacentZone, -1);
-						}
-					}
-					AdjacentGridChunk.setBlockDirection(AdjacentTileCoords.Block.getBlockIndex(), dir.invert(), NewConnectionValue);
-					Sector AdjacentSector = SourceMap.getSector(AdjacentTileCoords.Sector);
-					AdjacentSector.getChunk(AdjacentChunk).setDirtyPathingRendering(true);
-				}
+			if (DirectionType.getValueonAxis(Axis.AXIS_Z) != 0) { // True for Up and Down
+				Cost = 2;
+			} else if (X ^ Y) { // N, S, E, W
+				Cost = 1;
+			} else if (X & Y) {
+				Cost = root2;
+			} else {
+				Cost = 0;  // DIRECTION_NONE
 			}
-			TargetGridChunk.setBlockDirections(TargetCoords.Block.getBlockIndex(), NewConnectivitySet);
-			Sector AdjacentSector = SourceMap.getSector(TargetCoords.Sector);
-			AdjacentSector.getChunk(TargetCoords.Chunk).setDirtyPathingRendering(true);
-
-		} while (!DirtyLocations.isEmpty());
+			Costs[DirectionType.ordinal()] = Cost;
+		}
+		return Costs;
 	}
 
-	int getZoneEquivilency(MapCoordinate TargetCoords) {
-		return ConnectivityCache.get(getConnectivityZone(TargetCoords));
+	public EntranceGraph getEntranceGraph() {
+		return Entrances;
 	}
 
-	int getZoneEquivilency(int Zone) {
-		return ConnectivityCache.get(Zone);
+	public boolean isPathPossible(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		if (StartCoords.equals(GoalCoords))
+			return true;
+		int StartZone = Zones.getZone(StartCoords);
+		return StartZone != 0 && StartZone == Zones.getZone(GoalCoords);
 	}
 
-	void updateConnectivityCache(int Zone, int ZoneEquivilency) {
-		ConnectivityCache.set(Zone, ZoneEquivilency);
+	/**
+	 * Rebuilds the mask of every Block an edit could have changed. A rule reads
+	 * only a Block and its neighbors, so each edited Block and the 26 around
+	 * it are rebuilt whole. Copying the edited Blocks new edges onto its
+	 * neighbors instead would miss edges that do not end at the edited Block,
+	 * such as a climb held by a wall beside it.
+	 */
+	public void dirtyMapCoordinate(MapCoordinate[] DirtyCoords) {
+		if (OwnsClearances)
+			Clearances.update(DirtyCoords);
 
-		ConcurrentHashMap<Integer, Integer> TargetMap = getConnectivtySubMap(Zone);
-		for (Integer i : TargetMap.keySet()) {
-			if (ConnectivityCache.get(i.intValue()) == 0) {
-				updateConnectivityCache(i, ZoneEquivilency);
+		HashSet<MapCoordinate> Affected = new HashSet<MapCoordinate>();
+		for (MapCoordinate Edited : DirtyCoords) {
+			for (Direction dir : Direction.ANGULAR_DIRECTIONS) {
+				MapCoordinate NeighborCoords = Edited.clone();
+				NeighborCoords.translate(dir);
+				if (getChunk(NeighborCoords.Chunk) != null)
+					Affected.add(NeighborCoords);
 			}
 		}
-	}
-
-	void RebuildConnectivityCache(int ZoneCount) {
-		ConnectivityCache = new ArrayList<Integer>(Collections.nCopies(ZoneCount + 1, 0));
+		DirtyLocations.addAll(Affected);
 
-		for (int i : ConnectivityCache) {  // Skip zero, no such zone		
-			if (ConnectivityCache.get(i) == 0) {
-				updateConnectivityCache(i, i);
+		MapCoordinate AdjacentTileCoords = new MapCoordinate();
+		while (!DirtyLocations.isEmpty()) {
+			MapCoordinate TargetCoords = DirtyLocations.poll();
+			ChunkCoordinate TargetChunk = TargetCoords.Chunk;
+			GridChunk TargetGridChunk = getChunk(TargetChunk);
+			short BlockIndex = TargetCoords.Block.getBlockIndex();
+
+			int NewMask = Rules.buildDirectionMask(SourceMap, TargetCoords, TargetBlockShape, TestCoordinates);
+			int ChangedMask = NewMask ^ TargetGridChunk.getBlockDirectionMask(BlockIndex);
+			if (ChangedMask == 0)
+				continue;
+
+			TargetGridChunk.setBlockDirectionMask(BlockIndex, NewMask);
+			// Any change may join or split zones, the Chunks are relabeled once all edits are in
+			Zones.dirtyChunk(TargetChunk);
+			Entrances.dirtyChunk(TargetChunk);
+			SourceMap.getSector(TargetCoords.Sector).getChunk(TargetChunk).setDirtyPathingRendering(true);
+
+			// Edges gained or lost across the Chunk border change the links of the Chunk beyond
+			while (ChangedMask != 0) {
+				int i = Integer.numberOfTrailingZeros(ChangedMask);
+				ChangedMask &= ChangedMask - 1;
+
+				AdjacentTileCoords.copy(TargetCoords);
+				AdjacentTileCoords.translate(Direction.ANGULAR_DIRECTIONS[i]);
+				if (!AdjacentTileCoords.Chunk.equals(TargetChunk) && getChunk(AdjacentTileCoords.Chunk) != null) {
+					Zones.dirtyChunk(AdjacentTileCoords.Chunk);
+					Entrances.dirtyChunk(AdjacentTileCoords.Chunk);
+				}
 			}
 		}
+		Zones.refresh();
 	}
 
 	public ArrayList<MapCoordinate> getPassableCoordinates() {
@@ -25,7 +25,7 @@ import java.io.Serializable;
  * corresponding PathWalker class that they will return and which will read
  * from only that type of Path.
  *
- * Implementations: CoordinatePath, VectorPath
+ * Implementations: CoordinatePath, VectorPath, PackedPath
  *
  * @author Impaler
  */
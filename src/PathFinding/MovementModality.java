@@ -18,6 +18,7 @@
 package PathFinding;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Encompases all the unique properties of a Pawns mode of movement that
@@ -62,7 +63,39 @@ public class MovementModality implements Serializable {
 	}
 
 	public void setModalitySize(MovementType MovementType, int Size) {
-		MovementTypeSpeed[MovementType.ordinal()] = Size;
+		MovementTypeSize[MovementType.ordinal()] = Size;
+	}
+
+	/**
+	 * The largest size among the kinds of movement this Modality is capable
+	 * of, the clearance a search for it must keep to.
+	 */
+	public int getLargestSize() {
+		int Largest = 1;
+		for (MovementType Type : MovementType.values()) {
+			if (MovementTypeCapable[Type.ordinal()])
+				Largest = Math.max(Largest, MovementTypeSize[Type.ordinal()]);
+		}
+		return Largest;
+	}
+
+	/**
+	 * The kinds of movement whose edges a Grid for this Modality must hold,
+	 * as bits of MovementType ordinals. Wheels follow the walking edges and
+	 * climbing includes walking, so those fold together and Modalities with
+	 * equal keys can share a Grid.
+	 */
+	public int getEdgeRuleKey() {
+		int Key = 0;
+		for (MovementType Type : MovementType.values()) {
+			if (MovementTypeCapable[Type.ordinal()]) {
+				MovementType RuleType = Type == MovementType.MOVEMENT_TYPE_WHEEL ? MovementType.MOVEMENT_TYPE_WALK : Type;
+				Key |= 1 << RuleType.ordinal();
+			}
+		}
+		if (MovementTypeCapable[MovementType.MOVEMENT_TYPE_CLIMB.ordinal()])
+			Key &= ~(1 << MovementType.MOVEMENT_TYPE_WALK.ordinal());
+		return Key;
 	}
 
 	@Override
@@ -96,12 +129,7 @@ public class MovementModality implements Serializable {
 
 	@Override
 	public int hashCode() {
-		int hash = 3;
-
-
-		//hash += 17 * MovementTypeCapable.hashCode();
-		//hash += 37 * MovementTypeSize.hashCode();
-		//hash += 5 * MovementTypeSpeed.hashCode();
-		return hash;
+		// Speed is left out as equals ignores it
+		return 17 * Arrays.hashCode(MovementTypeCapable) + Arrays.hashCode(MovementTypeSize);
 	}
-}
+}
\ No newline at end of file
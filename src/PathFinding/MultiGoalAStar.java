@@ -0,0 +1,117 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.MapCoordinate;
+
+import java.util.Arrays;
+
+/**
+ * AStar toward whichever of several Goals is nearest, the search ends at the
+ * first Goal taken off the Fringe so one search finds both the nearest Goal
+ * and the Path to it.
+ *
+ * The estimate of a Block is the least estimate to any of the Goals, so the
+ * Goal found is only the nearest if the Heuristic never overestimates. With
+ * more then MAX_ESTIMATED_GOALS Goals that would cost too much per node, the
+ * Chebyshev distance to the box around all the Goals is used instead, which
+ * is never more then the cost to the nearest.
+ *
+ * @author Impaler
+ */
+public class MultiGoalAStar extends AStar {
+
+	private static final long serialVersionUID = 1;
+	static final int MAX_ESTIMATED_GOALS = 32;
+
+	MapCoordinate[] Goals;
+	long[] SortedGoalKeys;
+	int GoalIndex;
+	int MinX, MinY, MinZ, MaxX, MaxY, MaxZ;
+
+	MultiGoalAStar(GridInterface TargetSearchGraph) {
+		super(TargetSearchGraph);
+	}
+
+	void setGoals(MapCoordinate StartCoords, MapCoordinate[] GoalCoords) {
+		setEndPoints(StartCoords, GoalCoords[0]);
+		Goals = GoalCoords;
+		GoalIndex = -1;
+
+		SortedGoalKeys = new long[Goals.length];
+		MinX = MinY = MinZ = Integer.MAX_VALUE;
+		MaxX = MaxY = MaxZ = Integer.MIN_VALUE;
+		for (int i = 0; i < Goals.length; i++) {
+			MapCoordinate Goal = Goals[i];
+			SortedGoalKeys[i] = PackedCoordinate.pack(Goal);
+			MinX = Math.min(MinX, Goal.getX());
+			MinY = Math.min(MinY, Goal.getY());
+			MinZ = Math.min(MinZ, Goal.getZ());
+			MaxX = Math.max(MaxX, Goal.getX());
+			MaxY = Math.max(MaxY, Goal.getY());
+			MaxZ = Math.max(MaxZ, Goal.getZ());
+		}
+		Arrays.sort(SortedGoalKeys);
+	}
+
+	/**
+	 * Also records which Goal was reached, the Path is then built to it.
+	 */
+	@Override
+	boolean isGoal(long Key) {
+		if (Arrays.binarySearch(SortedGoalKeys, Key) < 0)
+			return false;
+
+		for (int i = 0; i < Goals.length; i++) {
+			if (PackedCoordinate.pack(Goals[i]) == Key) {
+				GoalIndex = i;
+				GoalCoordinates = Goals[i];
+				break;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	float estimate(Heuristic Estimator, MapCoordinate FromCoordinates) {
+		if (Goals.length > MAX_ESTIMATED_GOALS)
+			return boxDistance(FromCoordinates);
+
+		float Least = Float.MAX_VALUE;
+		for (MapCoordinate Goal : Goals) {
+			Least = Math.min(Least, Estimator.estimate(FromCoordinates, Goal));
+		}
+		return Least;
+	}
+
+	private float boxDistance(MapCoordinate FromCoordinates) {
+		int X = FromCoordinates.getX(), Y = FromCoordinates.getY(), Z = FromCoordinates.getZ();
+		int DistanceX = Math.max(0, Math.max(MinX - X, X - MaxX));
+		int DistanceY = Math.max(0, Math.max(MinY - Y, Y - MaxY));
+		int DistanceZ = Math.max(0, Math.max(MinZ - Z, Z - MaxZ));
+		return Math.max(DistanceX, Math.max(DistanceY, DistanceZ));
+	}
+
+	/**
+	 * The index in the Goals given of the one reached, -1 until a Path is
+	 * found.
+	 */
+	int getGoalIndex() {
+		return GoalIndex;
+	}
+}
@@ -18,9 +18,10 @@
 package PathFinding;
 
 import java.util.ArrayList;
-import java.util.BitSet;
+import java.util.HashSet;
 import java.util.concurrent.Future;
 
+import Map.Coordinates.ChunkCoordinate;
 import Map.Coordinates.MapCoordinate;
 import Map.Coordinates.Direction;
 import Core.Dice;
@@ -36,11 +37,17 @@ import java.io.Serializable;
  * Engine to find the path and will then instantiate a PathWalker which will be
  * querried for Directions to provide to the Pawn.
  *
+ * While following a Path the Navigator watches the Chunks it passes through,
+ * an edit to one of them has the Path checked before the next step and only
+ * the broken stretch searched again, see repairPath.
+ *
  * @author Impaler
  */
 public class Navigator implements Serializable {
 
 	private static final long serialVersionUID = 1;
+	// Broken stretches of Path longer then this are not mended, the whole Path is searched again
+	static final int MAX_REPAIR_STEPS = 32;
 
 	public enum MovementBehavior {
 
@@ -65,9 +72,14 @@ public class Navigator implements Serializable {
 	MapCoordinate CurrentLocation;
 	MapCoordinate Destination;
 
-	transient Future PathFuture = null;
+	PathScheduler.Priority PathPriority = PathScheduler.Priority.PRIORITY_JOB;
+	transient Future<MapPath> PathFuture = null;
+	transient FlowField CurrentField = null;
 	MapPath CurrentPath = null;
 	PathWalker CurrentPathWalker = null;
+	transient HashSet<ChunkCoordinate> WatchedChunks = null;
+	transient volatile boolean PathEdited = false;
+	transient int RequestEditCount;
 
 	public Navigator(MapCoordinate SpawnLocation, MovementModality MovementType) {
 		ParentManager = PathManager.getSingleton();
@@ -86,7 +98,10 @@ public class Navigator implements Serializable {
 		ois.defaultReadObject();
 		// fix transients
 		ParentManager = PathManager.getSingleton();
-		PathFuture = ParentManager.findFuturePath(Modality, CurrentLocation, Destination);
+		if (PathPriority == null)
+			PathPriority = PathScheduler.Priority.PRIORITY_JOB;
+		PathEdited = CurrentPath != null;  // Checked against the loaded Map and watched again
+		PathFuture = requestPath();
 	}
 
 	public Direction getNextStep() { // Next movement step for the Agent
@@ -99,16 +114,15 @@ public class Navigator implements Serializable {
 
 			case PATH_BEHAVIOR_WANDER_AIMLESSLY:	// Agent wanders but will not try to path through walls
 
-				BitSet DirectionFlags = ParentManager.getDirectionFlags(CurrentLocation, Modality);
-				ArrayList<Integer> ValidDirections = new ArrayList<Integer>();
-
-				for (int i = DirectionFlags.nextSetBit(0); i >= 0; i = DirectionFlags.nextSetBit(i + 1)) {
-					ValidDirections.add(i);
-				}
+				int DirectionFlags = ParentManager.getDirectionMask(CurrentLocation, ModalityGridIndex);
+				int ValidDirections = Integer.bitCount(DirectionFlags);
 
-				if (ValidDirections.size() > 0) {
-					int Index = ValidDirections.get(DirectionDice.roll(0, ValidDirections.size() - 1));
-					return Direction.ANGULAR_DIRECTIONS[Index];
+				if (ValidDirections > 0) {
+					// Drop the lower edges until the chosen one is lowest
+					for (int Skip = DirectionDice.roll(0, ValidDirections - 1); Skip > 0; Skip--) {
+						DirectionFlags &= DirectionFlags - 1;
+					}
+					return Direction.ANGULAR_DIRECTIONS[Integer.numberOfTrailingZeros(DirectionFlags)];
 				}
 
 				return Direction.DIRECTION_NONE;
@@ -126,14 +140,30 @@ public class Navigator implements Serializable {
 				return Direction.DIRECTION_NONE;
 
 			case PATH_BEHAVIOR_ROUTE_TO_LOCATION: // Agent follows a path to a specific location
+				if (CurrentField != null) {
+					Direction FieldStep = getFieldStep();
+					if (FieldStep != null)
+						return FieldStep;
+
+					// Off the field or it was invalidated, search the rest of the way
+					CurrentField = null;
+					PathFuture = requestPath();
+					return Direction.DIRECTION_NONE;
+				}
 				if (CurrentPathWalker != null) {
-					return CurrentPathWalker.nextDirection();
+					if (PathEdited)
+						repairPath();
+					if (CurrentPathWalker != null)
+						return CurrentPathWalker.nextDirection();
+					return Direction.DIRECTION_NONE;  // Broken beyond repair, searching again
 				} else {
 					try {
 						if (PathFuture.isDone()) {
-							CurrentPath = (MapPath) PathFuture.get();
-							CurrentPathWalker = CurrentPath.getPathWalker();
-							return CurrentPathWalker.nextDirection();
+							followPath(PathFuture.get());
+							if (RequestEditCount != ParentManager.getPathWatchers().getEditCount())
+								repairPath();  // The Map was edited during the search
+							if (CurrentPathWalker != null)
+								return CurrentPathWalker.nextDirection();
 						} else if (PathFuture.isCancelled()) {
 							//Set future to null. Maybe we succeed next time...
 							PathFuture = null;
@@ -145,6 +175,11 @@ public class Navigator implements Serializable {
 				}
 
 			case PATH_BEHAVIOR_ROUTE_TO_AREA:	  // Agent follows a path to the closest location in an area
+				if (CurrentField != null) {
+					Direction FieldStep = getFieldStep();
+					if (FieldStep != null)
+						return FieldStep;
+				}
 				return Direction.DIRECTION_NONE;
 
 			case PATH_BEHAVIOR_TRAPPED:		// Agent is Trapped unable to reach a desired area
@@ -153,7 +188,169 @@ public class Navigator implements Serializable {
 		return Direction.DIRECTION_NONE;
 	}
 
+	/**
+	 * Queues a search from here to the Destination at this Navigators
+	 * Priority, dropping any search still running for an older Destination.
+	 */
+	Future<MapPath> requestPath() {
+		cancelSearch();
+		RequestEditCount = ParentManager.getPathWatchers().getEditCount();
+		return ParentManager.findFuturePath(Modality, CurrentLocation, Destination, PathManager.SearchMethod.SEARCH_AUTOMATIC, PathPriority);
+	}
+
+	void cancelSearch() {
+		if (PathFuture != null) {
+			PathFuture.cancel(false);
+			PathFuture = null;
+		}
+	}
+
+	/**
+	 * The step the current FlowField gives from here, null if the field has
+	 * been invalidated or does not reach this Location.
+	 */
+	Direction getFieldStep() {
+		if (!CurrentField.isValid())
+			return null;
+		return CurrentField.getDirection(CurrentLocation);
+	}
+
+	/**
+	 * Starts following a new Path from its beginning, watching the Chunks it
+	 * passes through in place of those of the old Path.
+	 */
+	void followPath(MapPath NewPath) {
+		unwatchPath();
+		CurrentPath = NewPath;
+		CurrentPathWalker = NewPath.getPathWalker();
+		watchPath();
+	}
+
+	void watchPath() {
+		WatchedChunks = new HashSet<ChunkCoordinate>();
+		WatchedChunks.add(CurrentLocation.Chunk.clone());
+		PathWalker Reader = CurrentPath.getPathWalker();
+		for (int i = 0; i < CurrentPath.StepCount; i++) {
+			MapCoordinate Step = Reader.nextCoordinate();
+			if (!WatchedChunks.contains(Step.Chunk))
+				WatchedChunks.add(Step.Chunk.clone());
+		}
+		ParentManager.getPathWatchers().watch(this, WatchedChunks);
+	}
+
+	void unwatchPath() {
+		if (WatchedChunks != null) {
+			ParentManager.getPathWatchers().unwatch(this, WatchedChunks);
+			WatchedChunks = null;
+		}
+	}
+
+	/**
+	 * Called by PathWatchers from the editing thread, the Path is checked on
+	 * the next step.
+	 */
+	void notePathEdited() {
+		PathEdited = true;
+	}
+
+	/**
+	 * Checks the rest of the Path against the Grid and mends it where edits
+	 * have broken it. The stretch from the Block before the first broken step
+	 * to the Block after the last is replaced by a detour searched between
+	 * those two Blocks, the steps either side are kept as they were. The Path
+	 * is searched again whole if the stretch is longer then MAX_REPAIR_STEPS or
+	 * no short detour exists.
+	 *
+	 * A step is broken if the Grid has lost its edge or the Block it enters
+	 * is now too small for the Modality.
+	 */
+	void repairPath() {
+		PathEdited = false;
+		GridInterface TargetGrid = ParentManager.getModalityGrid(Modality);
+		if (TargetGrid == null)
+			return;
+
+		int RequiredClearance = Modality.getLargestSize();
+		ArrayList<Direction> Remaining = getRemainingSteps();
+		MapCoordinate Walking = CurrentLocation.clone();
+		MapCoordinate Next = new MapCoordinate();
+		MapCoordinate BreakCoords = null, RejoinCoords = null;
+		int FirstBroken = -1, LastBroken = -1;
+
+		for (int i = 0; i < Remaining.size(); i++) {
+			Direction Step = Remaining.get(i);
+			Next.copy(Walking);
+			Next.translate(Step);
+			if (TargetGrid.getEdgeCost(Walking, Step) < 0 || TargetGrid.getClearance(Next) < RequiredClearance) {
+				if (FirstBroken < 0) {
+					FirstBroken = i;
+					BreakCoords = Walking.clone();
+				}
+				LastBroken = i;
+				RejoinCoords = Next.clone();
+			}
+			Walking.copy(Next);
+		}
+
+		if (FirstBroken < 0) {
+			if (WatchedChunks == null)
+				watchPath();
+			return;
+		}
+
+		MapPath Detour = null;
+		if (LastBroken - FirstBroken < MAX_REPAIR_STEPS)
+			Detour = ParentManager.findDetour(Modality, BreakCoords, RejoinCoords);
+		if (Detour == null) {
+			unwatchPath();
+			CurrentPath = null;
+			CurrentPathWalker = null;
+			PathFuture = requestPath();
+			return;
+		}
+
+		ArrayList<Direction> Mended = new ArrayList<Direction>(Remaining.subList(0, FirstBroken));
+		PathWalker DetourWalker = Detour.getPathWalker();
+		for (int i = 0; i < Detour.StepCount; i++) {
+			Mended.add(DetourWalker.nextDirection());
+		}
+		Mended.addAll(Remaining.subList(LastBroken + 1, Remaining.size()));
+
+		float MendedLength = 0;
+		for (Direction Step : Mended) {
+			MendedLength += TargetGrid.getDirectionCost(Step.ordinal());
+		}
+		followPath(new PackedPath(MendedLength, Mended, CurrentLocation, CurrentPath.GoalCoordinates));
+	}
+
+	/**
+	 * The steps of the current Path not yet handed out, read with a fresh
+	 * PathWalker so the one being followed is left where it is.
+	 */
+	private ArrayList<Direction> getRemainingSteps() {
+		int Taken = CurrentPathWalker.getCurrentStep();
+		PathWalker Reader = CurrentPath.getPathWalker();
+		for (int i = 0; i < Taken; i++) {
+			Reader.nextDirection();
+		}
+
+		ArrayList<Direction> Remaining = new ArrayList<Direction>(CurrentPath.StepCount - Taken);
+		for (int i = Taken; i < CurrentPath.StepCount; i++) {
+			Remaining.add(Reader.nextDirection());
+		}
+		return Remaining;
+	}
+
 	public void lastStepInvalid() {	 // Tell the Controller the last step order was invalid
+		if (CurrentPathWalker != null && CurrentPathWalker.getCurrentStep() > 0) {
+			// Back up to the step the Pawn could not take and check the Path from there
+			PathWalker Rewound = CurrentPath.getPathWalker();
+			for (int i = CurrentPathWalker.getCurrentStep() - 1; i > 0; i--) {
+				Rewound.nextDirection();
+			}
+			CurrentPathWalker = Rewound;
+			PathEdited = true;
+		}
 	}
 
 	public void setBehaviorMode(MovementBehavior NewBehavior) {
@@ -164,15 +361,47 @@ public class Navigator implements Serializable {
 	public boolean changeDestination(MapCoordinate NewDestination) {
 		if (NewDestination != Destination) {
 			Destination = NewDestination;
-
-			PathFuture = ParentManager.findFuturePath(Modality, CurrentLocation, Destination);
+			unwatchPath();
 			CurrentPathWalker = null;
 			CurrentPath = null;
+
+			// A popular Destination may already have a field to follow
+			CurrentField = ParentManager.getFlowField(Modality, Destination);
+			if (CurrentField != null && getFieldStep() != null) {
+				cancelSearch();
+			} else {
+				CurrentField = null;
+				PathFuture = requestPath();
+			}
 			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Heads for the nearest Block of an area by following its FlowField, see
+	 * PathManager.createAreaFlowField. A field built for a smaller Modality
+	 * may lead through gaps this one does not fit and is not followed.
+	 */
+	public void routeToArea(FlowField AreaField) {
+		setBehaviorMode(MovementBehavior.PATH_BEHAVIOR_ROUTE_TO_AREA);
+		MovementModality FieldModality = AreaField.getModality();
+		boolean Fits = FieldModality == null || FieldModality.getLargestSize() >= Modality.getLargestSize();
+		CurrentField = Fits ? AreaField : null;
+		cancelSearch();
+		unwatchPath();
+		CurrentPathWalker = null;
+		CurrentPath = null;
+	}
+
+	/**
+	 * The Priority searches for this Navigator are queued at, taking effect
+	 * from the next search.
+	 */
+	public void setPathPriority(PathScheduler.Priority NewPriority) {
+		PathPriority = NewPriority;
+	}
+
 	public MapCoordinate getDestination() {
 		return Destination;
 	}
@@ -198,7 +427,10 @@ public class Navigator implements Serializable {
 	}
 
 	public void wipePath() {
+		cancelSearch();
 		Destination = null;
+		CurrentField = null;
+		unwatchPath();
 		CurrentPath = null;
 		CurrentPathWalker = null;
 	}
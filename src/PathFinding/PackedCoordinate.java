@@ -0,0 +1,101 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Axis;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+/**
+ * Packs the world position of a MapCoordinate into a single long so searches
+ * can key, compare and step locations without creating objects. Each axis
+ * takes 21 bits offset to be positive, a step in any Direction is then the
+ * addition of a constant.
+ *
+ * @author Impaler
+ */
+public final class PackedCoordinate {
+
+	static final int AXIS_BITS = 21;
+	static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+	static final int AXIS_OFFSET = 1 << (AXIS_BITS - 1);
+
+	// Key of no location, every packed location is positive
+	public static final long NONE = -1;
+
+	// Amount added to a key to step in each Direction, indexed by ordinal
+	static final long[] DIRECTION_OFFSETS = new long[Direction.values().length];
+
+	static {
+		for (Direction Heading : Direction.values()) {
+			long X = Heading.getValueonAxis(Axis.AXIS_X);
+			long Y = Heading.getValueonAxis(Axis.AXIS_Y);
+			long Z = Heading.getValueonAxis(Axis.AXIS_Z);
+			DIRECTION_OFFSETS[Heading.ordinal()] = (X << (AXIS_BITS * 2)) + (Y << AXIS_BITS) + Z;
+		}
+	}
+
+	private PackedCoordinate() {
+	}
+
+	public static long pack(int X, int Y, int Z) {
+		return ((long) (X + AXIS_OFFSET) << (AXIS_BITS * 2)) | ((long) (Y + AXIS_OFFSET) << AXIS_BITS) | (Z + AXIS_OFFSET);
+	}
+
+	public static long pack(MapCoordinate Coordinates) {
+		return pack(Coordinates.getX(), Coordinates.getY(), Coordinates.getZ());
+	}
+
+	public static int getX(long Key) {
+		return (int) ((Key >>> (AXIS_BITS * 2)) & AXIS_MASK) - AXIS_OFFSET;
+	}
+
+	public static int getY(long Key) {
+		return (int) ((Key >>> AXIS_BITS) & AXIS_MASK) - AXIS_OFFSET;
+	}
+
+	public static int getZ(long Key) {
+		return (int) (Key & AXIS_MASK) - AXIS_OFFSET;
+	}
+
+	public static long translate(long Key, Direction Heading) {
+		return Key + DIRECTION_OFFSETS[Heading.ordinal()];
+	}
+
+	/**
+	 * Spreads a key over the bits of an int for open addressing tables, mask
+	 * off as many low bits as the table needs.
+	 */
+	static int hash(long Key) {
+		long Mixed = Key * 0x9E3779B97F4A7C15L;
+		return (int) (Mixed >>> 32);
+	}
+
+	/**
+	 * Sets an existing MapCoordinate to the packed location
+	 */
+	public static void unpack(long Key, MapCoordinate Target) {
+		Target.set(getX(Key), getY(Key), getZ(Key));
+	}
+
+	public static MapCoordinate unpack(long Key) {
+		MapCoordinate NewCoordinates = new MapCoordinate();
+		unpack(Key, NewCoordinates);
+		return NewCoordinates;
+	}
+}
@@ -0,0 +1,136 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The legs of a Path packed into a byte array. The first byte of a leg holds
+ * the Direction ordinal in its low five bits and the low two bits of the
+ * Magnitude less one above that, the top bit is set if the rest of the
+ * Magnitude follows as a varint of seven bits per byte. Legs of up to four
+ * steps take a single byte and there is no limit on the length of a leg.
+ *
+ * A PackedPath is never altered once made, so one Path is handed to every
+ * Navigator going the same way and each reads it with its own walker. The
+ * tail of a Path shares the bytes of the whole, see suffix.
+ *
+ * @author Impaler
+ */
+public class PackedPath extends MapPath implements Serializable {
+
+	private static final long serialVersionUID = 1;
+	static final int DIRECTION_BITS = 0x1F;
+	static final int MAGNITUDE_SHIFT = 5;
+	static final int MAGNITUDE_BITS = 0x3;
+	static final int MORE_BYTES = 0x80;
+
+	final byte[] Legs;
+	final int FirstLeg;       // Offset of the leg the Path starts in
+	final int FirstLegSkip;   // Steps of that leg before the Start
+
+	PackedPath(float PathLength, ArrayList<Direction> RawDirections, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		Length = PathLength;
+		StartCoordinates = StartCoords.clone();  // Searches are handed the requesters own Coordinates, which may later move
+		GoalCoordinates = GoalCoords.clone();
+		StepCount = RawDirections.size();
+
+		// No leg takes more bytes then it has steps
+		byte[] Packing = new byte[StepCount];
+		int Offset = 0;
+		int i = 0;
+		while (i < StepCount) {
+			Direction Heading = RawDirections.get(i);
+			int Magnitude = 1;
+			while (i + Magnitude < StepCount && RawDirections.get(i + Magnitude) == Heading) {
+				Magnitude++;
+			}
+			Offset = writeLeg(Packing, Offset, Heading, Magnitude);
+			i += Magnitude;
+		}
+		Legs = Arrays.copyOf(Packing, Offset);
+		FirstLeg = 0;
+		FirstLegSkip = 0;
+	}
+
+	/**
+	 * The tail of a Source Path, reading the same bytes.
+	 */
+	private PackedPath(PackedPath Source, int LegOffset, int LegSkip, int Steps, float PathLength, MapCoordinate StartCoords) {
+		Legs = Source.Legs;
+		FirstLeg = LegOffset;
+		FirstLegSkip = LegSkip;
+		StepCount = Steps;
+		Length = PathLength;
+		MovementType = Source.MovementType;
+		StartCoordinates = StartCoords.clone();
+		GoalCoordinates = Source.GoalCoordinates;
+	}
+
+	private static int writeLeg(byte[] Packing, int Offset, Direction Heading, int Magnitude) {
+		int Remainder = Magnitude - 1;
+		int Head = Heading.ordinal() | (Remainder & MAGNITUDE_BITS) << MAGNITUDE_SHIFT;
+		Remainder >>>= 2;
+		if (Remainder != 0)
+			Head |= MORE_BYTES;
+		Packing[Offset++] = (byte) Head;
+
+		while (Remainder != 0) {
+			int Part = Remainder & 0x7F;
+			Remainder >>>= 7;
+			Packing[Offset++] = (byte) (Remainder != 0 ? Part | MORE_BYTES : Part);
+		}
+		return Offset;
+	}
+
+	/**
+	 * The rest of this Path from the step StepIndex, which is reached at
+	 * StartCoords, costing PathLength. Only the position to start reading
+	 * from is new, the legs themselves are shared.
+	 */
+	PackedPath suffix(int StepIndex, MapCoordinate StartCoords, float PathLength) {
+		if (StepIndex == 0)
+			return new PackedPath(this, FirstLeg, FirstLegSkip, StepCount, PathLength, StartCoords);
+
+		PackedPathWalker Reader = new PackedPathWalker(this);
+		for (int i = 0; i < StepIndex; i++) {
+			Reader.nextDirection();
+		}
+		if (Reader.LegRemaining == 0)
+			return new PackedPath(this, Reader.Offset, 0, StepCount - StepIndex, PathLength, StartCoords);
+
+		int LegSkip = Reader.LegMagnitude - Reader.LegRemaining;
+		return new PackedPath(this, Reader.LegStart, LegSkip, StepCount - StepIndex, PathLength, StartCoords);
+	}
+
+	/**
+	 * Bytes held for the legs, shared with any tails cut from this Path.
+	 */
+	public int getPackedSize() {
+		return Legs.length;
+	}
+
+	public PathWalker getPathWalker() {
+		return new PackedPathWalker(this);
+	}
+}
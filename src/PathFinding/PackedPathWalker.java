@@ -0,0 +1,139 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.io.Serializable;
+
+/**
+ * PathWalker for a PackedPath, decoding one leg at a time as it is reached.
+ * The Coordinate of the step is only kept once a Coordinate is asked for, a
+ * walker read only for Directions holds nothing but a few counters.
+ *
+ * @author Impaler
+ */
+public class PackedPathWalker implements PathWalker, Serializable {
+
+	private static final long serialVersionUID = 1;
+	PackedPath TargetPath;
+	int Offset;          // Offset of the next leg
+	int LegStart;        // Offset of the current leg
+	int LegMagnitude;
+	int LegRemaining;    // Steps of the current leg not yet taken
+	Direction Heading;
+	int CurrentStep;
+	private MapCoordinate StepCoordinates;
+
+	PackedPathWalker(PackedPath SourcePath) {
+		TargetPath = SourcePath;
+		reset();
+	}
+
+	public void reset() {
+		Offset = TargetPath.FirstLeg;
+		LegRemaining = 0;
+		Heading = null;
+		CurrentStep = 0;
+		StepCoordinates = null;
+	}
+
+	private void readLeg() {
+		byte[] Legs = TargetPath.Legs;
+		LegStart = Offset;
+		int Head = Legs[Offset++] & 0xFF;
+		Heading = Direction.ANGULAR_DIRECTIONS[Head & PackedPath.DIRECTION_BITS];
+
+		int Remainder = (Head >>> PackedPath.MAGNITUDE_SHIFT) & PackedPath.MAGNITUDE_BITS;
+		if ((Head & PackedPath.MORE_BYTES) != 0) {
+			int Shift = 2;
+			int Part;
+			do {
+				Part = Legs[Offset++] & 0xFF;
+				Remainder |= (Part & 0x7F) << Shift;
+				Shift += 7;
+			} while ((Part & PackedPath.MORE_BYTES) != 0);
+		}
+		LegMagnitude = Remainder + 1;
+		LegRemaining = LegMagnitude;
+		if (LegStart == TargetPath.FirstLeg)
+			LegRemaining -= TargetPath.FirstLegSkip;
+	}
+
+	public MapCoordinate nextCoordinate() {
+		if (CurrentStep < TargetPath.StepCount) {
+			if (StepCoordinates == null)
+				locate();
+			StepCoordinates.translate(nextDirection());
+			return StepCoordinates;
+		}
+		return TargetPath.GoalCoordinates; // Keep returning the Goal if we've reached the end of the path
+	}
+
+	public Direction nextDirection() {
+		if (CurrentStep < TargetPath.StepCount) {
+			if (LegRemaining == 0)
+				readLeg();
+
+			CurrentStep++;
+			LegRemaining--;
+			return Heading;
+		}
+		return Direction.DIRECTION_DESTINATION;
+	}
+
+	/**
+	 * A new Coordinate one step ahead, the walker is left where it is.
+	 */
+	public MapCoordinate peekCoordinate() {
+		if (CurrentStep < TargetPath.StepCount) {
+			if (StepCoordinates == null)
+				locate();
+			MapCoordinate Ahead = StepCoordinates.clone();
+			Ahead.translate(peekDirection());
+			return Ahead;
+		}
+		return TargetPath.GoalCoordinates; // Keep returning the Goal if we've reached the end of the path
+	}
+
+	public Direction peekDirection() {
+		if (CurrentStep < TargetPath.StepCount) {
+			if (LegRemaining > 0)
+				return Heading;
+			return Direction.ANGULAR_DIRECTIONS[TargetPath.Legs[Offset] & PackedPath.DIRECTION_BITS];
+		}
+		return Direction.DIRECTION_DESTINATION;
+	}
+
+	/**
+	 * Finds the Coordinate of the current step by replaying the steps taken
+	 * from the Start, only done the first time a Coordinate is wanted.
+	 */
+	private void locate() {
+		StepCoordinates = TargetPath.StartCoordinates.clone();  // Paths are shared, never step the original
+		PackedPathWalker Replay = new PackedPathWalker(TargetPath);
+		for (int i = 0; i < CurrentStep; i++) {
+			StepCoordinates.translate(Replay.nextDirection());
+		}
+	}
+
+	public int getCurrentStep() {
+		return CurrentStep;
+	}
+}
@@ -24,7 +24,7 @@ import java.io.Serializable;
  * Abstract base for all PathFinding Algorithms, all Algorithms need a Grid
  * to work upon, Heristics, Start/Goal points to operate upon.
  *
- * Implementations: AStar
+ * Implementations: AStar, JumpPointSearch, BidirectionalAStar, HierarchicalAStar
  *
  * @author Impaler
  */
@@ -40,12 +40,15 @@ public abstract class PathAlgorithm<T> implements Serializable {
 	Heuristic MainHeuristic;
 	Heuristic TieBreakerHeuristic;
 	MapPath FinalPath;
+	boolean FringeExausted;  // Searching is over and no Path was found
+	int RequiredClearance = 1;  // Blocks with less clearance are not entered
 
 	void setEndPoints(MapCoordinate StartCoords, MapCoordinate GoalCoords) {
 		StartCoordinates = StartCoords;
 		GoalCoordinates = GoalCoords;
 		GraphReads = ExpandedNodes = 0;
 		FinalPath = null;
+		FringeExausted = false;
 	}
 
 	void setHeuristics(Heuristic PrimaryHeuristic, Heuristic SecondaryHeuristic) {
@@ -55,6 +58,7 @@ public abstract class PathAlgorithm<T> implements Serializable {
 
 	void setModality(MovementModality MovementType) {
 		Modality = MovementType;
+		RequiredClearance = MovementType != null ? MovementType.getLargestSize() : 1;
 	}
 
 	int getGraphReads() {
@@ -65,6 +69,17 @@ public abstract class PathAlgorithm<T> implements Serializable {
 		return ExpandedNodes;
 	}
 
+	boolean isExhausted() {
+		return FringeExausted;
+	}
+
+	/**
+	 * Gives up a search that will not be finished, handing back any storage
+	 * it holds.
+	 */
+	void abandon() {
+	}
+
 	abstract boolean searchPath(int NodesToExpand);       // Search but do not return Path
 
 	abstract MapPath findPath(int NodesToExpand);     // Search and return the best Path
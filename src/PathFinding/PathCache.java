@@ -0,0 +1,348 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+import Map.Coordinates.MapCoordinate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of found Paths, keyed by Modality, Start and Goal.
+ * A request is answered by a whole cached Path, or failing that by the tail of
+ * any cached Path to the same Goal that passes through the requested Start.
+ *
+ * Each entry records the Chunks its Path crosses, an edit touching one of them
+ * drops the entry. Paths found while an edit was made are not stored, as the
+ * search may have read the Grid from before the edit.
+ *
+ * @author Impaler
+ */
+public class PathCache {
+
+	public static final int DEFAULT_CAPACITY = 512;
+
+	/**
+	 * Modality and end points of a request, Start is null for the key that
+	 * groups all entries sharing a Goal.
+	 */
+	static class Key {
+
+		MovementModality Modality;
+		MapCoordinate Start, Goal;
+
+		Key(MovementModality KeyModality, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+			Modality = KeyModality;
+			Start = StartCoords;
+			Goal = GoalCoords;
+		}
+
+		@Override
+		public boolean equals(Object Argument) {
+			if (!(Argument instanceof Key))
+				return false;
+
+			Key Arg = (Key) Argument;
+			if (Start == null ? Arg.Start != null : Arg.Start == null || !Start.equals(Arg.Start))
+				return false;
+			return Goal.equals(Arg.Goal) && Modality.equals(Arg.Modality);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Goal.hashCode() * 31 + Modality.hashCode();
+			if (Start != null)
+				hash = hash * 17 + Start.hashCode();
+			return hash;
+		}
+	}
+
+	/**
+	 * A cached Path with every Coordinate along it and the cost of the Path
+	 * up to each, so any tail can be cut out without searching. Tails share
+	 * the packed legs of the cached Path.
+	 */
+	static class Entry {
+
+		Key EntryKey;
+		PackedPath CachedPath;
+		float[] LengthToStep;
+		StepTable StepIndexes;
+		HashSet<ChunkCoordinate> Chunks;
+	}
+
+	/**
+	 * The step at which a Path passes each Block, an open addressing table
+	 * from PackedCoordinate to step sized once for the Path. Twelve bytes a
+	 * slot and at most half the slots used, where a HashMap entry with its
+	 * boxed Coordinate and step took several objects per step.
+	 */
+	static class StepTable {
+
+		// Keys are stored plus one so that 0 can mark an empty slot
+		final long[] TableKeys;
+		final int[] TableSteps;
+		final int TableMask;
+
+		StepTable(int StepCount) {
+			int Size = 2;
+			while (Size < StepCount * 2) {
+				Size <<= 1;
+			}
+			TableKeys = new long[Size];
+			TableSteps = new int[Size];
+			TableMask = Size - 1;
+		}
+
+		/**
+		 * Records the step at a location, a later step at the same location
+		 * replaces the earlier.
+		 */
+		void put(long Key, int Step) {
+			long Stored = Key + 1;
+			int Slot = PackedCoordinate.hash(Key) & TableMask;
+			while (TableKeys[Slot] != 0 && TableKeys[Slot] != Stored) {
+				Slot = (Slot + 1) & TableMask;
+			}
+			TableKeys[Slot] = Stored;
+			TableSteps[Slot] = Step;
+		}
+
+		/**
+		 * The step at a location, -1 if the Path does not pass it
+		 */
+		int find(long Key) {
+			long Stored = Key + 1;
+			int Slot = PackedCoordinate.hash(Key) & TableMask;
+			while (TableKeys[Slot] != 0) {
+				if (TableKeys[Slot] == Stored)
+					return TableSteps[Slot];
+				Slot = (Slot + 1) & TableMask;
+			}
+			return -1;
+		}
+	}
+
+	LinkedHashMap<Key, Entry> Entries;
+	HashMap<Key, ArrayList<Entry>> GoalEntries;
+	HashMap<ChunkCoordinate, ArrayList<Entry>> ChunkEntries;
+	int Capacity;
+	int Generation;
+	int Hits, SuffixHits, Misses, Invalidations;
+
+	public PathCache(int MaximumEntries) {
+		Capacity = MaximumEntries;
+		Entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		GoalEntries = new HashMap<Key, ArrayList<Entry>>();
+		ChunkEntries = new HashMap<ChunkCoordinate, ArrayList<Entry>>();
+	}
+
+	/**
+	 * Changes with each edit, a Path found across a change of Generation is
+	 * refused by store.
+	 */
+	public synchronized int getGeneration() {
+		return Generation;
+	}
+
+	/**
+	 * A cached Path from Start to Goal, the same Path object is handed to
+	 * every requester so it must not be altered. Null if none is cached.
+	 */
+	public synchronized MapPath find(MovementModality Modality, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		Entry Whole = Entries.get(new Key(Modality, StartCoords, GoalCoords));
+		if (Whole != null) {
+			Hits++;
+			return Whole.CachedPath;
+		}
+
+		ArrayList<Entry> SameGoal = GoalEntries.get(new Key(Modality, null, GoalCoords));
+		if (SameGoal != null) {
+			long StartKey = PackedCoordinate.pack(StartCoords);
+			for (Entry Candidate : SameGoal) {
+				int StepIndex = Candidate.StepIndexes.find(StartKey);
+				if (StepIndex >= 0) {
+					Entries.get(Candidate.EntryKey);  // Refresh its place in the LRU order
+					SuffixHits++;
+					return suffix(Candidate, StepIndex, StartCoords);
+				}
+			}
+		}
+
+		Misses++;
+		return null;
+	}
+
+	private static PackedPath suffix(Entry Source, int StepIndex, MapCoordinate StartCoords) {
+		float Length = Source.LengthToStep[Source.CachedPath.StepCount] - Source.LengthToStep[StepIndex];
+		return Source.CachedPath.suffix(StepIndex, StartCoords, Length);
+	}
+
+	/**
+	 * Adds a found Path unless an edit has been made since Generation was
+	 * read, Grid supplies the step costs. Paths that stop short of their Goal
+	 * are not stored.
+	 */
+	public synchronized void store(MovementModality Modality, MapPath FoundPath, GridInterface Grid, int SearchGeneration) {
+		if (!(FoundPath instanceof PackedPath) || SearchGeneration != Generation)
+			return;
+
+		PackedPath Found = (PackedPath) FoundPath;
+		Key NewKey = new Key(Modality, Found.StartCoordinates.clone(), Found.GoalCoordinates.clone());
+		if (Entries.containsKey(NewKey))
+			return;
+
+		Entry NewEntry = new Entry();
+		NewEntry.EntryKey = NewKey;
+		NewEntry.CachedPath = Found;
+		NewEntry.LengthToStep = new float[Found.StepCount + 1];
+		NewEntry.StepIndexes = new StepTable(Found.StepCount);
+		NewEntry.Chunks = new HashSet<ChunkCoordinate>();
+
+		MapCoordinate StepCoordinates = Found.StartCoordinates.clone();
+		PathWalker Reader = Found.getPathWalker();
+		float Length = 0;
+		for (int Step = 0; Step < Found.StepCount; Step++) {
+			Direction Heading = Reader.nextDirection();
+			NewEntry.StepIndexes.put(PackedCoordinate.pack(StepCoordinates), Step);
+			NewEntry.Chunks.add(StepCoordinates.Chunk.clone());
+			NewEntry.LengthToStep[Step] = Length;
+
+			float Cost = Grid.getEdgeCost(StepCoordinates, Heading);
+			Length += Cost > 0 ? Cost : 0;
+			StepCoordinates.translate(Heading);
+		}
+		if (!StepCoordinates.equals(Found.GoalCoordinates))
+			return;  // A partial Path from an exhausted search
+		NewEntry.LengthToStep[Found.StepCount] = Length;
+		NewEntry.Chunks.add(StepCoordinates.Chunk.clone());
+
+		Entries.put(NewKey, NewEntry);
+		index(GoalEntries, new Key(Modality, null, NewKey.Goal), NewEntry);
+		for (ChunkCoordinate Chunk : NewEntry.Chunks) {
+			index(ChunkEntries, Chunk, NewEntry);
+		}
+
+		while (Entries.size() > Capacity) {
+			Iterator<Map.Entry<Key, Entry>> Eldest = Entries.entrySet().iterator();
+			Entry Evicted = Eldest.next().getValue();
+			Eldest.remove();
+			unindex(Evicted);
+		}
+	}
+
+	/**
+	 * Drops every entry whose Path crosses a Chunk holding one of the edited
+	 * Coordinates or a neighbor of one, as an edit changes the edges of both.
+	 */
+	public synchronized void invalidate(MapCoordinate[] EditedCoords) {
+		Generation++;
+		if (Entries.isEmpty())
+			return;
+
+		for (ChunkCoordinate Chunk : getTouchedChunks(EditedCoords)) {
+			ArrayList<Entry> Crossing = ChunkEntries.get(Chunk);
+			if (Crossing == null)
+				continue;
+
+			for (Entry Dropped : new ArrayList<Entry>(Crossing)) {
+				Entries.remove(Dropped.EntryKey);
+				unindex(Dropped);
+				Invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * The Chunks holding the edited Coordinates or any of their neighbors
+	 */
+	static HashSet<ChunkCoordinate> getTouchedChunks(MapCoordinate[] EditedCoords) {
+		HashSet<ChunkCoordinate> Touched = new HashSet<ChunkCoordinate>();
+		MapCoordinate Neighbor = new MapCoordinate();
+		for (MapCoordinate Edited : EditedCoords) {
+			for (Direction Heading : Direction.ANGULAR_DIRECTIONS) {
+				Neighbor.copy(Edited);
+				Neighbor.translate(Heading);
+				if (!Touched.contains(Neighbor.Chunk))
+					Touched.add(Neighbor.Chunk.clone());
+			}
+		}
+		return Touched;
+	}
+
+	public synchronized void clear() {
+		Generation++;
+		Entries.clear();
+		GoalEntries.clear();
+		ChunkEntries.clear();
+	}
+
+	private void unindex(Entry Target) {
+		Key GoalKey = new Key(Target.EntryKey.Modality, null, Target.EntryKey.Goal);
+		ArrayList<Entry> SameGoal = GoalEntries.get(GoalKey);
+		if (SameGoal != null) {
+			SameGoal.remove(Target);
+			if (SameGoal.isEmpty())
+				GoalEntries.remove(GoalKey);
+		}
+
+		for (ChunkCoordinate Chunk : Target.Chunks) {
+			ArrayList<Entry> Crossing = ChunkEntries.get(Chunk);
+			if (Crossing != null) {
+				Crossing.remove(Target);
+				if (Crossing.isEmpty())
+					ChunkEntries.remove(Chunk);
+			}
+		}
+	}
+
+	private static <K> void index(HashMap<K, ArrayList<Entry>> Index, K IndexKey, Entry Target) {
+		ArrayList<Entry> List = Index.get(IndexKey);
+		if (List == null) {
+			List = new ArrayList<Entry>();
+			Index.put(IndexKey, List);
+		}
+		List.add(Target);
+	}
+
+	public synchronized int getHits() {
+		return Hits;
+	}
+
+	public synchronized int getSuffixHits() {
+		return SuffixHits;
+	}
+
+	public synchronized int getMisses() {
+		return Misses;
+	}
+
+	public synchronized int getInvalidations() {
+		return Invalidations;
+	}
+
+	public synchronized int size() {
+		return Entries.size();
+	}
+}
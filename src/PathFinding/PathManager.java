@@ -20,9 +20,12 @@ package PathFinding;
 import java.util.ArrayList;
 import java.util.BitSet;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
 import Core.Clock;
 import Core.Main;
@@ -41,25 +44,58 @@ import java.io.Serializable;
  * Master Controller for all pathfinding operations. All pathfinding is done on
  * abstractions of the Map structure called Grids rather then the real map, these
  * abstractions are specialized for a specific Movement Modality. Map changes
- * have to be pushed here to keep the Grids accurate.
+ * have to be pushed here to keep the Grids accurate. Only the walking Grid is
+ * built with the Map, the Grid of any other Modality is derived from the Map
+ * the first time that Modality is asked for, and Modalities moving by the same
+ * EdgeRule share one Grid.
  *
  * Navagator objects which are embeded in moving entites which then
  * request paths from PathFinder. Each incoming Path request is matched to an
  * appropriate Grid instance and then an appropriate PathAlgorim instance is
- * created, given the Grid refrence and submitted to the threadPool.
+ * created, given the Grid refrence and submitted to the PathScheduler. Destinations
+ * requested often get a FlowField which Navigators follow instead of searching.
  *
  * @author Impaler
  */
 public class PathManager extends AbstractAppState {
 
 	private static final long serialVersionUID = 1;
+
+	/**
+	 * The PathAlgorithm a request is searched with, SEARCH_AUTOMATIC picks one
+	 * by the distance between the end points.
+	 */
+	public enum SearchMethod {
+
+		SEARCH_AUTOMATIC,
+		SEARCH_ASTAR,
+		SEARCH_JUMP_POINT,
+		SEARCH_BIDIRECTIONAL,
+		SEARCH_HIERARCHICAL
+	}
+
+	/**
+	 * The result of findNearestPath, the index of the Goal chosen among
+	 * those given and the Path to it.
+	 */
+	public static class NearestPath {
+
+		public int GoalIndex;
+		public MapPath FoundPath;
+	}
+
 	static PathManager Singleton = null;
 	Clock PathingTimer;
-	//AStar AstarImplementation;
-	PathAlgorithm HeriarchialAstarImplementation;
-	//KhazadGrid MapGrid;
+	// Paths between Chunks further apart than this search the EntranceGraph first
+	static final int HIERARCHICAL_CHUNK_DISTANCE = 2;
+	// Most Blocks a detour around a broken stretch of Path may expand
+	static final int DETOUR_NODE_LIMIT = 2048;
+	// Most Blocks a search for the nearest of several Goals may expand
+	static final int NEAREST_NODE_LIMIT = 8192;
 	ConcurrentHashMap<MovementModality, GridInterface> Grids;
-	ArrayList<GridInterface> GridArray;
+	CopyOnWriteArrayList<GridInterface> GridArray;
+	// Map the Grids are derived from, null until createMapAbstraction
+	GameMap SourceMap;
 
 	Heuristic ManhattenHeuristic;
 	Heuristic EuclideanHeuristic;
@@ -67,8 +103,12 @@ public class PathManager extends AbstractAppState {
 	Heuristic DijkstraHeuristic;
 	Heuristic DiagonalHeuristic;
 	Heuristic OctileHeuristic;
-	ArrayList<Pool> PoolList;
-	ExecutorService Executor;
+	PathScheduler Scheduler;
+	// Threads the Grids are built on, the applications pool once initialized
+	ExecutorService BuildPool;
+	PathCache PathResults;
+	FlowFieldCache FlowFields;
+	PathWatchers Watchers;
 	public PathTester Tester;
 
 	private PathManager() {
@@ -79,16 +119,33 @@ public class PathManager extends AbstractAppState {
 		DiagonalHeuristic = new Heuristic.Diagonal();
 		OctileHeuristic = new Heuristic.Octile();
 
-		PoolList = new ArrayList<Pool>();
+		PathResults = new PathCache(PathCache.DEFAULT_CAPACITY);
+		FlowFields = new FlowFieldCache(FlowFieldCache.DEFAULT_CAPACITY);
+		Watchers = new PathWatchers();
+		Scheduler = new PathScheduler(PathScheduler.defaultThreadCount(), PathScheduler.DEFAULT_FRAME_BUDGET);
+		PathingTimer = new Clock(1);
 		Grids = new ConcurrentHashMap<MovementModality, GridInterface>();
-		GridArray = new ArrayList<GridInterface>();
+		GridArray = new CopyOnWriteArrayList<GridInterface>();
 	}
 
 	@Override
 	public void initialize(AppStateManager stateManager, Application app) {
 		super.initialize(stateManager, app);
-		Main core = (Main) app;
-		Executor = core.getThreadPool();
+		if (Scheduler.isShutdown())
+			Scheduler = new PathScheduler(PathScheduler.defaultThreadCount(), PathScheduler.DEFAULT_FRAME_BUDGET);
+		if (app instanceof Main)
+			BuildPool = ((Main) app).getThreadPool();
+	}
+
+	@Override
+	public void update(float tpf) {
+		Scheduler.beginFrame();
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		Scheduler.shutdown();
 	}
 
 	public static PathManager getSingleton() {
@@ -98,25 +155,11 @@ public class PathManager extends AbstractAppState {
 		return Singleton;
 	}
 
-	Pool ProvidePool() {  // Simple but effective
-		for (Pool TargetPool : PoolList) {
-			if (!TargetPool.isInUse()) {
-				TargetPool.setInUse(true);
-				return TargetPool;
-			}
-		}
-
-		// No Pools available so Create a new one
-		Pool NewPool = new Pool();
-		NewPool.setInUse(true);
-		PoolList.add(NewPool);
-		return NewPool;
-	}
-
 	public void createMapAbstraction(GameMap TargetMap) {
 		MovementModality BasicPawn = new MovementModality(MovementModality.MovementType.MOVEMENT_TYPE_WALK, 1, 1);
-		KhazadGrid MainGrid = new KhazadGrid(TargetMap, BasicPawn);
+		KhazadGrid MainGrid = new KhazadGrid(TargetMap, BasicPawn, BuildPool);
 		addGrid(MainGrid);
+		SourceMap = TargetMap;
 
 		Tester = new PathTester();
 		Tester.Initialize(this);
@@ -127,29 +170,60 @@ public class PathManager extends AbstractAppState {
 		GridArray.add(NewGrid);
 	}
 
-	public void editMapAbstractions(MapCoordinate[] Coordinates) {
-		for (GridInterface Grid : Grids.values()) {
+	public synchronized void editMapAbstractions(MapCoordinate[] Coordinates) {
+		PathResults.invalidate(Coordinates);
+		FlowFields.invalidate(Coordinates);
+		for (GridInterface Grid : GridArray) {
 			Grid.dirtyMapCoordinate(Coordinates.clone());
 		}
+		Watchers.notifyEdit(Coordinates);
 	}
 
 	void deleteMapAbstractions() {
+		SourceMap = null;
 		Grids.clear();
 		GridArray.clear();
+		PathResults.clear();
+		FlowFields.clear();
+		Watchers.clear();
 	}
 
-	public Future findFuturePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+	public Future<MapPath> findFuturePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		return findFuturePath(MovementType, StartCoords, GoalCoords, SearchMethod.SEARCH_AUTOMATIC);
+	}
+
+	public Future<MapPath> findFuturePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords, SearchMethod Method) {
+		return findFuturePath(MovementType, StartCoords, GoalCoords, Method, PathScheduler.Priority.PRIORITY_JOB);
+	}
+
+	/**
+	 * Queues a search at the given Priority, a request matching one already
+	 * being searched shares its result. Cancelling the returned Future drops
+	 * this request without disturbing others sharing the search.
+	 */
+	public Future<MapPath> findFuturePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords, SearchMethod Method, PathScheduler.Priority RequestPriority) {
 		GridInterface TargetGrid = getModalityGrid(MovementType);
 		if (TargetGrid != null) {
 			if (TargetGrid.contains(StartCoords) && TargetGrid.contains(GoalCoords)) {
 				if (isPathPossible(MovementType, StartCoords, GoalCoords)) {
-					AStar PathTask = new AStar(TargetGrid);
-					PathTask.assignResources(ProvidePool(), new LinkedListDeque<AStarNode>(30));
-					PathTask.setModality(MovementType);
-					PathTask.setHeuristics(ManhattenHeuristic, EuclideanHeuristic);
-					PathTask.setEndPoints(StartCoords, GoalCoords);
+					if (FlowFields.noteRequest(MovementType, GoalCoords))
+						submitFlowField(TargetGrid, MovementType, GoalCoords);
+
+					final MapPath CachedPath = PathResults.find(MovementType, StartCoords, GoalCoords);
+					if (CachedPath != null) {
+						FutureTask<MapPath> Completed = new FutureTask<MapPath>(new Callable<MapPath>() {
+							public MapPath call() {
+								return CachedPath;
+							}
+						});
+						Completed.run();
+						return Completed;
+					}
 
-					return Executor.submit(PathTask);
+					int Generation = PathResults.getGeneration();
+					// The Start is often a Pawns location which moves while the search runs
+					PathAlgorithm<?> PathTask = createPathTask(TargetGrid, Method, MovementType, StartCoords.clone(), GoalCoords.clone());
+					return Scheduler.submitSearch(PathTask, Method, RequestPriority, PathResults, TargetGrid, Generation);
 				}
 			}
 		}
@@ -157,18 +231,93 @@ public class PathManager extends AbstractAppState {
 		return null;
 	}
 
+	/**
+	 * Finds the nearest of several Goals reachable from the Start, and the
+	 * Path to it, with a single search on the calling thread. Goals in another
+	 * connectivity zone are dropped before searching. The search gives up
+	 * after NEAREST_NODE_LIMIT Blocks so a caller on the game thread is never
+	 * held for long. Null if no Goal was reached within it.
+	 */
+	public NearestPath findNearestPath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate[] Goals) {
+		GridInterface TargetGrid = getModalityGrid(MovementType);
+		if (TargetGrid == null || !TargetGrid.contains(StartCoords))
+			return null;
+
+		ArrayList<MapCoordinate> Reachable = new ArrayList<MapCoordinate>();
+		ArrayList<Integer> ReachableIndexes = new ArrayList<Integer>();
+		for (int i = 0; i < Goals.length; i++) {
+			if (TargetGrid.contains(Goals[i]) && TargetGrid.isPathPossible(MovementType, StartCoords, Goals[i])) {
+				Reachable.add(Goals[i].clone());
+				ReachableIndexes.add(i);
+			}
+		}
+		if (Reachable.isEmpty())
+			return null;
+
+		int Generation = PathResults.getGeneration();
+		MultiGoalAStar PathTask = new MultiGoalAStar(TargetGrid);
+		PathTask.setModality(MovementType);
+		PathTask.setHeuristics(getAdmissibleHeuristic(TargetGrid), EuclideanHeuristic);
+		PathTask.setGoals(StartCoords.clone(), Reachable.toArray(new MapCoordinate[Reachable.size()]));
+
+		if (!PathTask.searchPath(NEAREST_NODE_LIMIT)) {
+			PathTask.abandon();
+			return null;
+		}
+		MapPath FoundPath = PathTask.findPath(0);
+		if (FoundPath == null)
+			return null;
+		// Cached so the Navigator sent to the Goal does not search again
+		PathResults.store(MovementType, FoundPath, TargetGrid, Generation);
+
+		NearestPath Result = new NearestPath();
+		Result.GoalIndex = ReachableIndexes.get(PathTask.getGoalIndex());
+		Result.FoundPath = FoundPath;
+		return Result;
+	}
+
+	/**
+	 * Searches for a way between two Blocks of a Path an edit has broken the
+	 * stretch between, on the calling thread. The search gives up after
+	 * DETOUR_NODE_LIMIT Blocks, a detour that long is better found by
+	 * searching the whole Path again. Null if none was found.
+	 */
+	MapPath findDetour(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		GridInterface TargetGrid = getModalityGrid(MovementType);
+		if (TargetGrid == null || !TargetGrid.isPathPossible(MovementType, StartCoords, GoalCoords))
+			return null;
+
+		PathAlgorithm<?> PathTask = createPathTask(TargetGrid, SearchMethod.SEARCH_ASTAR, MovementType, StartCoords.clone(), GoalCoords.clone());
+		if (!PathTask.searchPath(DETOUR_NODE_LIMIT)) {
+			PathTask.abandon();
+			return null;
+		}
+		return PathTask.findPath(0);
+	}
+
 	public MapPath profilePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords, PathTester.Profile TargetProfile) {
+		return profilePath(MovementType, StartCoords, GoalCoords, SearchMethod.SEARCH_AUTOMATIC, TargetProfile);
+	}
+
+	public MapPath profilePath(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords, SearchMethod Method, PathTester.Profile TargetProfile) {
 		GridInterface TargetGrid = getModalityGrid(MovementType);
 		if (TargetGrid != null) {
 			if (TargetGrid.contains(StartCoords) && TargetGrid.contains(GoalCoords)) {
 				if (isPathPossible(MovementType, StartCoords, GoalCoords)) {
 					PathingTimer.start();
-					AStar PathTask = new AStar(TargetGrid);
-					PathTask.assignResources(ProvidePool(), new LinkedListDeque<AStarNode>(30));
-					PathTask.setModality(MovementType);
-					PathTask.setHeuristics(ManhattenHeuristic, EuclideanHeuristic);
-					PathTask.setEndPoints(StartCoords, GoalCoords);
-					MapPath FoundPath = PathTask.call();
+					MapPath CachedPath = PathResults.find(MovementType, StartCoords, GoalCoords);
+					if (CachedPath != null) {
+						TargetProfile.PathTimeCost = PathingTimer.stop();
+						TargetProfile.ProfiledPath = CachedPath;
+						TargetProfile.ResultCode = ProfileResultCode.PATH_CODE_SUCCESS;
+						TargetProfile.CacheHit = true;
+						return CachedPath;
+					}
+
+					int Generation = PathResults.getGeneration();
+					PathAlgorithm<?> PathTask = createPathTask(TargetGrid, Method, MovementType, StartCoords, GoalCoords);
+					MapPath FoundPath = PathTask.findPath(0);
+					PathResults.store(MovementType, FoundPath, TargetGrid, Generation);
 
 					TargetProfile.PathTimeCost = PathingTimer.stop();
 
@@ -198,6 +347,67 @@ public class PathManager extends AbstractAppState {
 		}
 	}
 
+	/**
+	 * Creates the PathAlgorithm for a request. Automatically long Paths on a
+	 * KhazadGrid are searched through its EntranceGraph, shorter ones with a
+	 * plain AStar over the Blocks, as are short Paths asked of the
+	 * hierarchical search. Jump point and hierarchical searches need a
+	 * KhazadGrid and fall back to AStar on other Grids, as do all searches for
+	 * creatures larger then one Block.
+	 */
+	PathAlgorithm<?> createPathTask(GridInterface TargetGrid, SearchMethod Method, MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		if (Method == SearchMethod.SEARCH_AUTOMATIC)
+			Method = SearchMethod.SEARCH_HIERARCHICAL;
+		// Through the entrances of the same or a neighboring Chunk the detour costs more then it saves
+		if (Method == SearchMethod.SEARCH_HIERARCHICAL && getChunkDistance(StartCoords, GoalCoords) < HIERARCHICAL_CHUNK_DISTANCE)
+			Method = SearchMethod.SEARCH_ASTAR;
+		if (!(TargetGrid instanceof KhazadGrid) && Method != SearchMethod.SEARCH_BIDIRECTIONAL)
+			Method = SearchMethod.SEARCH_ASTAR;
+		if (MovementType.getLargestSize() > 1)
+			Method = SearchMethod.SEARCH_ASTAR;  // Only AStar keeps to the clearance of larger creatures
+
+		PathAlgorithm<?> PathTask;
+		switch (Method) {
+			case SEARCH_HIERARCHICAL:
+				PathTask = new HierarchicalAStar(TargetGrid, ((KhazadGrid) TargetGrid).getEntranceGraph());
+				break;
+			case SEARCH_JUMP_POINT:
+				PathTask = new JumpPointSearch(TargetGrid);
+				break;
+			case SEARCH_BIDIRECTIONAL:
+				PathTask = new BidirectionalAStar(TargetGrid);
+				break;
+			default:
+				PathTask = new AStar(TargetGrid);
+				break;
+		}
+		PathTask.setModality(MovementType);
+		if (Method == SearchMethod.SEARCH_BIDIRECTIONAL) {
+			PathTask.setHeuristics(getAdmissibleHeuristic(TargetGrid), EuclideanHeuristic);
+		} else {
+			PathTask.setHeuristics(ManhattenHeuristic, EuclideanHeuristic);
+		}
+		PathTask.setEndPoints(StartCoords, GoalCoords);
+		return PathTask;
+	}
+
+	/**
+	 * A Heuristic that never overestimates the cost of a Path on the Grid, for
+	 * searches that take the first Path they complete as the shortest. The
+	 * Octile matches the edge costs of a KhazadGrid, elsewhere only the
+	 * Chebyshev bound of one per step is assumed.
+	 */
+	Heuristic getAdmissibleHeuristic(GridInterface TargetGrid) {
+		return TargetGrid instanceof KhazadGrid ? OctileHeuristic : ChebyshevHeuristic;
+	}
+
+	static int getChunkDistance(MapCoordinate StartCoords, MapCoordinate GoalCoords) {
+		int X = Math.abs(StartCoords.Chunk.X - GoalCoords.Chunk.X);
+		int Y = Math.abs(StartCoords.Chunk.Y - GoalCoords.Chunk.Y);
+		int Z = Math.abs(StartCoords.Chunk.Z - GoalCoords.Chunk.Z);
+		return Math.max(X, Math.max(Y, Z));
+	}
+
 	public boolean isPathPossible(MovementModality MovementType, MapCoordinate StartCoords, MapCoordinate GoalCoords) {
 		GridInterface TargetGrid = getModalityGrid(MovementType);
 		if (TargetGrid != null) {
@@ -207,7 +417,47 @@ public class PathManager extends AbstractAppState {
 	}
 
 	GridInterface getModalityGrid(MovementModality MovementType) {
-		return Grids.get(MovementType);
+		GridInterface TargetGrid = Grids.get(MovementType);
+		if (TargetGrid == null && SourceMap != null)
+			TargetGrid = deriveGrid(MovementType);
+		return TargetGrid;
+	}
+
+	/**
+	 * Finds the Grid for a Modality not asked for before. A Grid held for
+	 * another Modality with the same EdgeRule is shared, otherwise a new one is
+	 * built on the calling thread alongside the first Grid so Chunks with the
+	 * same edges in both share their storage. Edits wait while a Grid is built
+	 * so none are missed.
+	 */
+	synchronized GridInterface deriveGrid(MovementModality MovementType) {
+		GridInterface TargetGrid = Grids.get(MovementType);
+		if (TargetGrid != null)
+			return TargetGrid;
+
+		int RuleKey = MovementType.getEdgeRuleKey();
+		if (RuleKey == 0)
+			return null;  // Capable of no movement at all
+
+		KhazadGrid BaseGrid = null;
+		for (GridInterface Candidate : GridArray) {
+			if (Candidate instanceof KhazadGrid) {
+				KhazadGrid CandidateGrid = (KhazadGrid) Candidate;
+				if (CandidateGrid.getEdgeRuleKey() == RuleKey) {
+					TargetGrid = CandidateGrid;
+					break;
+				}
+				if (BaseGrid == null)
+					BaseGrid = CandidateGrid;
+			}
+		}
+
+		if (TargetGrid == null) {
+			TargetGrid = new KhazadGrid(SourceMap, MovementType, BuildPool, BaseGrid);
+			GridArray.add(TargetGrid);
+		}
+		Grids.put(MovementType, TargetGrid);
+		return TargetGrid;
 	}
 
 	GridInterface getModalityGrid(int GridIndex) {
@@ -215,13 +465,8 @@ public class PathManager extends AbstractAppState {
 	}
 
 	int getModalityGridIndex(MovementModality MovementType) {
-		for (int i = 0; i < GridArray.size(); i++) {
-			GridInterface grid = GridArray.get(i);
-			if (grid.getModality().equals(MovementType)) {
-				return i;
-			}
-		}
-		return -1;
+		GridInterface TargetGrid = getModalityGrid(MovementType);
+		return TargetGrid != null ? GridArray.indexOf(TargetGrid) : -1;
 	}
 
 	public BitSet getDirectionFlags(MapCoordinate Coordinates, MovementModality Modality) {
@@ -232,6 +477,18 @@ public class PathManager extends AbstractAppState {
 		return null;
 	}
 
+	/**
+	 * The edges out of a Location as the bits of Direction ordinals, 0 if the
+	 * Modality has no Grid.
+	 */
+	public int getDirectionMask(MapCoordinate Coordinates, int ModalityIndex) {
+		GridInterface TargetGrid = getModalityGrid(ModalityIndex);
+		if (TargetGrid != null) {
+			return TargetGrid.getDirectionMask(Coordinates);
+		}
+		return 0;
+	}
+
 	boolean contains(MapCoordinate Coordinates, MovementModality Modality) {
 		GridInterface TargetGrid = getModalityGrid(Modality);
 		if (TargetGrid != null) {
@@ -257,6 +514,81 @@ public class PathManager extends AbstractAppState {
 		return -1;
 	}
 
+	public PathCache getPathCache() {
+		return PathResults;
+	}
+
+	/**
+	 * Bounds the memory of each search, see SearchArena. A search reaching
+	 * MaximumNodes fails, arenas larger then RetainedNodes are shrunk after
+	 * their search.
+	 */
+	public void setSearchMemoryLimits(int MaximumNodes, int RetainedNodes) {
+		SearchArena.setLimits(MaximumNodes, RetainedNodes);
+	}
+
+	/**
+	 * The most nodes held by any one search so far.
+	 */
+	public int getSearchHighWaterMark() {
+		return SearchArena.getHighWaterMark();
+	}
+
+	public int getSearchOverflows() {
+		return SearchArena.getOverflows();
+	}
+
+	public int getSearchArenasCreated() {
+		return SearchArena.getArenasCreated();
+	}
+
+	public PathScheduler getScheduler() {
+		return Scheduler;
+	}
+
+	public FlowFieldCache getFlowFieldCache() {
+		return FlowFields;
+	}
+
+	public PathWatchers getPathWatchers() {
+		return Watchers;
+	}
+
+	/**
+	 * The FlowField toward a popular Destination, null if none has been built.
+	 */
+	public FlowField getFlowField(MovementModality MovementType, MapCoordinate Destination) {
+		return FlowFields.find(MovementType, Destination);
+	}
+
+	/**
+	 * Builds a FlowField leading to the nearest of several Destinations, such
+	 * as the Blocks of a stockpile, on the calling thread. Null if the Modality
+	 * has no Grid.
+	 */
+	public FlowField createAreaFlowField(MovementModality MovementType, MapCoordinate[] Destinations) {
+		GridInterface TargetGrid = getModalityGrid(MovementType);
+		if (TargetGrid == null || Destinations.length == 0)
+			return null;
+
+		int Generation = FlowFields.getGeneration();
+		FlowField AreaField = new FlowField(MovementType, Destinations);
+		AreaField.build(TargetGrid);
+		FlowFields.storeArea(AreaField, Generation);
+		return AreaField;
+	}
+
+	void submitFlowField(final GridInterface TargetGrid, MovementModality MovementType, MapCoordinate Destination) {
+		final int Generation = FlowFields.getGeneration();
+		final FlowField NewField = new FlowField(MovementType, new MapCoordinate[] {Destination});
+		Scheduler.submit(new Runnable() {
+			public void run() {
+				NewField.build(TargetGrid);
+				FlowFields.store(NewField, Generation);
+			}
+		}, PathScheduler.Priority.PRIORITY_WANDER);
+	}
+
 	public int getConnectivityZone(MapCoordinate TestCoords, MovementModality Modality) {
 		GridInterface TargetGrid = getModalityGrid(Modality);
 		if (TargetGrid != null) {
@@ -0,0 +1,428 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.MapCoordinate;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs Path searches on worker threads of its own so that searching never
+ * takes threads from terrain building or the game Ticker. Requests are queued
+ * by Priority, a Path ordered by the player is started before those for jobs,
+ * which are started before wandering and FlowField builds.
+ *
+ * A request for the same Path by the same method as one not yet finished
+ * shares that search, each caller holds its own ticket which can be cancelled
+ * without affecting the others. The search is dropped once every ticket on it
+ * is cancelled, whether it is still queued or already running. A request of
+ * higher Priority raises the shared search to its own Priority, so an order
+ * from the player never waits behind the idle Pawn that asked first.
+ *
+ * Searches below player Priority run in slices drawn from a budget of node
+ * expansions which PathManager refills every frame, so a storm of requests
+ * from idle Pawns is spread over several frames rather then run all at once.
+ * A hierarchical search counts the Blocks it expands in the EntranceGraph,
+ * rebuilding Clusters or refining its chain, so they are charged too.
+ *
+ * @author Impaler
+ */
+public class PathScheduler {
+
+	public enum Priority {
+
+		PRIORITY_PLAYER, // Ordered directly by the player, never waits on the budget
+		PRIORITY_JOB, // Needed to carry out a job
+		PRIORITY_WANDER     // Idle movement and background work
+	}
+
+	// Nodes expanded between checks for cancellation and budget
+	static final int SEARCH_SLICE = 256;
+	public static final int DEFAULT_FRAME_BUDGET = 20000;
+
+	ThreadPoolExecutor Workers;
+	HashMap<RequestKey, ScheduledSearch> InFlight;
+	AtomicLong Sequence;
+
+	final Object BudgetLock = new Object();
+	int FrameBudget;
+	int Budget;
+
+	int Submitted, Shared, Cancelled;
+	AtomicInteger Expansions;
+
+	public PathScheduler(int Threads, int ExpansionsPerFrame) {
+		FrameBudget = ExpansionsPerFrame;
+		Budget = ExpansionsPerFrame;
+		InFlight = new HashMap<RequestKey, ScheduledSearch>();
+		Sequence = new AtomicLong();
+		Expansions = new AtomicInteger();
+
+		final AtomicInteger ThreadCount = new AtomicInteger();
+		ThreadFactory Factory = new ThreadFactory() {
+			public Thread newThread(Runnable Target) {
+				Thread Worker = new Thread(Target, "PathWorker-" + ThreadCount.incrementAndGet());
+				Worker.setDaemon(true);
+				return Worker;
+			}
+		};
+		Workers = new ThreadPoolExecutor(Threads, Threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), Factory);
+	}
+
+	/**
+	 * Half the processors, leaving the rest for rendering and terrain building.
+	 */
+	static int defaultThreadCount() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	}
+
+	/**
+	 * Identifies a search for sharing, the Coordinates are copied as the
+	 * Start of a request is often a Pawns location which moves.
+	 */
+	static class RequestKey {
+
+		PathCache.Key Ends;
+		PathManager.SearchMethod Method;
+
+		RequestKey(MovementModality Modality, MapCoordinate StartCoords, MapCoordinate GoalCoords, PathManager.SearchMethod SearchType) {
+			Ends = new PathCache.Key(Modality, StartCoords.clone(), GoalCoords.clone());
+			Method = SearchType;
+		}
+
+		@Override
+		public boolean equals(Object Argument) {
+			if (!(Argument instanceof RequestKey))
+				return false;
+
+			RequestKey Arg = (RequestKey) Argument;
+			return Method == Arg.Method && Ends.equals(Arg.Ends);
+		}
+
+		@Override
+		public int hashCode() {
+			return Ends.hashCode() * 7 + Method.ordinal();
+		}
+	}
+
+	/**
+	 * Work on the queue, ordered by Priority and then by arrival.
+	 */
+	class ScheduledJob<V> extends FutureTask<V> implements Comparable<ScheduledJob<?>> {
+
+		volatile Priority JobPriority;  // Only changed while off the queue
+		long Order;
+
+		ScheduledJob(Callable<V> Work, Priority WorkPriority) {
+			super(Work);
+			JobPriority = WorkPriority;
+			Order = Sequence.getAndIncrement();
+		}
+
+		public int compareTo(ScheduledJob<?> Other) {
+			if (JobPriority != Other.JobPriority)
+				return JobPriority.ordinal() - Other.JobPriority.ordinal();
+			return Order < Other.Order ? -1 : (Order == Other.Order ? 0 : 1);
+		}
+	}
+
+	/**
+	 * A Path search shared by all the tickets taken on it.
+	 */
+	class ScheduledSearch extends ScheduledJob<MapPath> {
+
+		RequestKey Key;
+		SearchWork Work;
+		int Tickets;
+
+		ScheduledSearch(SearchWork SearchJob, Priority WorkPriority, RequestKey SearchKey) {
+			super(SearchJob, WorkPriority);
+			Work = SearchJob;
+			Key = SearchKey;
+		}
+
+		@Override
+		protected void done() {
+			synchronized (PathScheduler.this) {
+				if (InFlight.get(Key) == this)
+					InFlight.remove(Key);
+			}
+		}
+	}
+
+	/**
+	 * Runs a PathAlgorithm slice by slice and stores what it finds in the
+	 * PathCache.
+	 */
+	class SearchWork implements Callable<MapPath> {
+
+		PathAlgorithm<?> Task;
+		volatile Priority WorkPriority;  // May be raised while running, see raise
+		PathCache Results;
+		GridInterface Grid;
+		int Generation;
+		volatile boolean Abandoned;
+
+		SearchWork(PathAlgorithm<?> SearchTask, Priority SearchPriority, PathCache Cache, GridInterface TargetGrid, int CacheGeneration) {
+			Task = SearchTask;
+			WorkPriority = SearchPriority;
+			Results = Cache;
+			Grid = TargetGrid;
+			Generation = CacheGeneration;
+		}
+
+		public MapPath call() throws InterruptedException {
+			try {
+				while (!Abandoned) {
+					int Slice = SEARCH_SLICE;
+					boolean Budgeted = false;
+					if (WorkPriority != Priority.PRIORITY_PLAYER) {
+						int Granted = takeBudget(SEARCH_SLICE, this);
+						if (Granted > 0) {
+							Slice = Granted;
+							Budgeted = true;
+						}
+					}
+
+					int Before = Task.getExpandedNodes();
+					boolean Found = Task.searchPath(Slice);
+					int Used = Task.getExpandedNodes() - Before;
+					Expansions.addAndGet(Used);
+					if (Budgeted)
+						chargeBudget(Used - Slice);
+
+					if (Found || Task.isExhausted())
+						break;
+				}
+			} catch (InterruptedException e) {
+				Task.abandon();
+				throw e;
+			}
+
+			if (Abandoned) {
+				Task.abandon();
+				return null;
+			}
+			MapPath FoundPath = Task.findPath(0);
+			Results.store(Task.Modality, FoundPath, Grid, Generation);
+			return FoundPath;
+		}
+	}
+
+	/**
+	 * One callers hold on a possibly shared search.
+	 */
+	class Ticket implements Future<MapPath> {
+
+		ScheduledSearch Search;
+		volatile boolean TicketCancelled;
+
+		Ticket(ScheduledSearch TargetSearch) {
+			Search = TargetSearch;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (TicketCancelled || Search.isDone())
+				return false;
+
+			TicketCancelled = true;
+			release(Search);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return TicketCancelled || Search.isCancelled();
+		}
+
+		public boolean isDone() {
+			return TicketCancelled || Search.isDone();
+		}
+
+		public MapPath get() throws InterruptedException, ExecutionException {
+			if (TicketCancelled)
+				throw new CancellationException();
+			return Search.get();
+		}
+
+		public MapPath get(long Timeout, TimeUnit Unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (TicketCancelled)
+				throw new CancellationException();
+			return Search.get(Timeout, Unit);
+		}
+	}
+
+	/**
+	 * Queues a search, or joins one for the same Path already queued or
+	 * running. The returned Future gives the Path, null if none was found.
+	 */
+	synchronized Future<MapPath> submitSearch(PathAlgorithm<?> Task, PathManager.SearchMethod Method, Priority RequestPriority, PathCache Results, GridInterface Grid, int Generation) {
+		RequestKey Key = new RequestKey(Task.Modality, Task.StartCoordinates, Task.GoalCoordinates, Method);
+		ScheduledSearch Search = InFlight.get(Key);
+		if (Search != null && !Search.isCancelled()) {
+			Shared++;
+			if (RequestPriority.ordinal() < Search.JobPriority.ordinal())
+				raise(Search, RequestPriority);
+		} else {
+			SearchWork Work = new SearchWork(Task, RequestPriority, Results, Grid, Generation);
+			Search = new ScheduledSearch(Work, RequestPriority, Key);
+			InFlight.put(Key, Search);
+			Submitted++;
+			Workers.execute(Search);
+		}
+		Search.Tickets++;
+		return new Ticket(Search);
+	}
+
+	/**
+	 * Moves a shared search up to a higher Priority. A queued search is taken
+	 * off the queue and put back, as its place cannot change while queued, a
+	 * running one leaves the budget from its next slice.
+	 */
+	private void raise(ScheduledSearch Search, Priority NewPriority) {
+		Search.Work.WorkPriority = NewPriority;
+		boolean Queued = Workers.remove(Search);
+		Search.JobPriority = NewPriority;
+		if (Queued)
+			Workers.execute(Search);
+
+		synchronized (BudgetLock) {
+			BudgetLock.notifyAll();  // Wakes it if waiting on the budget
+		}
+	}
+
+	/**
+	 * Queues work which is not a Path search, such as a FlowField build.
+	 */
+	Future<?> submit(Runnable Work, Priority WorkPriority) {
+		ScheduledJob<Object> Job = new ScheduledJob<Object>(Executors.callable(Work), WorkPriority);
+		Workers.execute(Job);
+		return Job;
+	}
+
+	private synchronized void release(ScheduledSearch Search) {
+		Search.Tickets--;
+		if (Search.Tickets > 0)
+			return;
+
+		Cancelled++;
+		Search.Work.Abandoned = true;
+		if (InFlight.get(Search.Key) == Search)
+			InFlight.remove(Search.Key);
+		Search.cancel(false);
+		Workers.remove(Search);
+	}
+
+	/**
+	 * Waits until the frames budget has expansions left and takes up to Wanted
+	 * of them. Gives 0 if the Waiting search is raised to player Priority
+	 * meanwhile, it then runs without the budget.
+	 */
+	int takeBudget(int Wanted, SearchWork Waiting) throws InterruptedException {
+		synchronized (BudgetLock) {
+			while (Budget <= 0) {
+				if (Waiting.WorkPriority == Priority.PRIORITY_PLAYER)
+					return 0;
+				BudgetLock.wait();
+			}
+			int Granted = Math.min(Wanted, Budget);
+			Budget -= Granted;
+			return Granted;
+		}
+	}
+
+	/**
+	 * Settles the difference between expansions granted and those used, a
+	 * search that overran its slice is repaid from the next frame.
+	 */
+	void chargeBudget(int Overrun) {
+		if (Overrun == 0)
+			return;
+		synchronized (BudgetLock) {
+			Budget -= Overrun;
+			if (Budget > FrameBudget)
+				Budget = FrameBudget;
+		}
+	}
+
+	/**
+	 * Refills the expansion budget, called once a frame.
+	 */
+	public void beginFrame() {
+		synchronized (BudgetLock) {
+			Budget = FrameBudget + Math.min(Budget, 0);
+			BudgetLock.notifyAll();
+		}
+	}
+
+	public void setFrameBudget(int ExpansionsPerFrame) {
+		synchronized (BudgetLock) {
+			FrameBudget = ExpansionsPerFrame;
+		}
+	}
+
+	public synchronized int getInFlight() {
+		return InFlight.size();
+	}
+
+	public synchronized int getSubmitted() {
+		return Submitted;
+	}
+
+	public synchronized int getShared() {
+		return Shared;
+	}
+
+	public synchronized int getCancelled() {
+		return Cancelled;
+	}
+
+	public int getExpansions() {
+		return Expansions.get();
+	}
+
+	public int getQueued() {
+		return Workers.getQueue().size();
+	}
+
+	boolean isShutdown() {
+		return Workers.isShutdown();
+	}
+
+	/**
+	 * Drops everything queued and interrupts running searches.
+	 */
+	void shutdown() {
+		Workers.shutdownNow();
+		synchronized (this) {
+			InFlight.clear();
+		}
+	}
+}
@@ -60,7 +60,8 @@ public class PathTester implements Serializable {
 	protected class GroupProfile implements Serializable {
 
 		private static final long serialVersionUID = 1;
-		ArrayList<Profile> Profiles;
+		ArrayList<Profile> Profiles = new ArrayList<Profile>();
+		PathManager.SearchMethod Method = PathManager.SearchMethod.SEARCH_AUTOMATIC;
 		int TotalPathSteps = 0;
 		float TotalPathLength = 0;
 		int TotalGraphReads = 0;
@@ -107,6 +108,7 @@ public class PathTester implements Serializable {
 	transient PathManager ParentManager;
 	Dice PathDice;
 	MapCoordinate ManualStartCoords, ManualGoalCoords;  // Used for manual testing
+	PathManager.SearchMethod ManualMethod = PathManager.SearchMethod.SEARCH_AUTOMATIC;
 	MapPath ManualPath;
 	GroupProfile ManualProfileGroup;
 	GroupProfile CurrentProfileGroup;
@@ -176,28 +178,55 @@ public class PathTester implements Serializable {
 
 		Profile NewProfile = new Profile();
 		MovementModality MovementType = new MovementModality(MovementModality.MovementType.MOVEMENT_TYPE_WALK, 1, 1);
-		ParentManager.profilePath(MovementType, ManualStartCoords, ManualGoalCoords, NewProfile);
+		ParentManager.profilePath(MovementType, ManualStartCoords, ManualGoalCoords, ManualMethod, NewProfile);
 
 		ManualProfileGroup.Profiles.add(NewProfile);
+		ManualProfileGroup.Method = ManualMethod;
 		ManualPath = NewProfile.ProfiledPath;
 
 		ManualProfileGroup.Analyze();
 		CurrentProfileGroup = ManualProfileGroup;
 	}
 
-	void runPathTestSuites(int[] TestSystems) {
+	/**
+	 * The search method manual Paths are profiled with, SEARCH_AUTOMATIC
+	 * unless set.
+	 */
+	public void setManualMethod(PathManager.SearchMethod Method) {
+		ManualMethod = Method;
+	}
+
+	/**
+	 * Profiles every search method on the same Iterations random Start Goal
+	 * pairs drawn with Seed, the results are left in ProfileGroupList with one
+	 * GroupProfile per method.
+	 */
+	public void profileSearchMethods(int Seed, int Iterations) {
+		StartCoordsList.clear();
+		GoalCoordsList.clear();
+		createTestSuite(Seed, Iterations);
+		runPathTestSuites(PathManager.SearchMethod.values());
+	}
+
+	/**
+	 * Runs the same Start Goal pairs through each search method, the Path cache
+	 * is emptied before each so every method is measured on its own searches.
+	 */
+	void runPathTestSuites(PathManager.SearchMethod[] TestSystems) {
 		ProfileGroupList = new GroupProfile[TestSystems.length];
 		for (int i = 0; i < TestSystems.length; i++) {
-			ProfileGroupList[TestSystems[i]] = new GroupProfile();
-			testSuite(TestingIterations, Basic, ProfileGroupList[TestSystems[i]], StartCoordsList, GoalCoordsList);
-			CurrentProfileGroup = ProfileGroupList[TestSystems[i]];
+			ProfileGroupList[i] = new GroupProfile();
+			ProfileGroupList[i].Method = TestSystems[i];
+			ParentManager.getPathCache().clear();
+			testSuite(TestingIterations, Basic, TestSystems[i], ProfileGroupList[i], StartCoordsList, GoalCoordsList);
+			CurrentProfileGroup = ProfileGroupList[i];
 		}
 	}
 
-	void testSuite(int Iterations, MovementModality MovementType, GroupProfile SystemProfileGroup, ArrayList<MapCoordinate> StartCoordsList, ArrayList<MapCoordinate> GoalCoordsList) {
+	void testSuite(int Iterations, MovementModality MovementType, PathManager.SearchMethod Method, GroupProfile SystemProfileGroup, ArrayList<MapCoordinate> StartCoordsList, ArrayList<MapCoordinate> GoalCoordsList) {
 		for (int i = 0; i < Iterations; ++i) {
 			Profile NewProfile = new Profile();
-			ParentManager.profilePath(MovementType, StartCoordsList.get(i), GoalCoordsList.get(i), NewProfile);
+			ParentManager.profilePath(MovementType, StartCoordsList.get(i), GoalCoordsList.get(i), Method, NewProfile);
 			SystemProfileGroup.Profiles.add(NewProfile);
 		}
 		SystemProfileGroup.Analyze();
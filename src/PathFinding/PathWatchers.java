@@ -0,0 +1,109 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.MapCoordinate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The Navigators following a Path through each Chunk. An edit tells only the
+ * Navigators watching a Chunk it touched, which then check and mend their own
+ * Paths, Navigators elsewhere on the Map are left alone.
+ *
+ * Navigators are held weakly so one dropped along with its Pawn, without
+ * clearing its Path first, is not kept alive here.
+ *
+ * @author Impaler
+ */
+public class PathWatchers {
+
+	HashMap<ChunkCoordinate, Set<Navigator>> Watchers;
+	int EditCount;
+	int Notices;
+
+	public PathWatchers() {
+		Watchers = new HashMap<ChunkCoordinate, Set<Navigator>>();
+	}
+
+	synchronized void watch(Navigator Watcher, Collection<ChunkCoordinate> Chunks) {
+		for (ChunkCoordinate Chunk : Chunks) {
+			Set<Navigator> ChunkWatchers = Watchers.get(Chunk);
+			if (ChunkWatchers == null) {
+				ChunkWatchers = Collections.newSetFromMap(new WeakHashMap<Navigator, Boolean>());
+				Watchers.put(Chunk, ChunkWatchers);
+			}
+			ChunkWatchers.add(Watcher);
+		}
+	}
+
+	synchronized void unwatch(Navigator Watcher, Collection<ChunkCoordinate> Chunks) {
+		for (ChunkCoordinate Chunk : Chunks) {
+			Set<Navigator> ChunkWatchers = Watchers.get(Chunk);
+			if (ChunkWatchers == null)
+				continue;
+
+			ChunkWatchers.remove(Watcher);
+			if (ChunkWatchers.isEmpty())
+				Watchers.remove(Chunk);
+		}
+	}
+
+	/**
+	 * Marks every Navigator watching a Chunk the edit touched, the Navigators
+	 * check their Paths on their next step.
+	 */
+	synchronized void notifyEdit(MapCoordinate[] EditedCoords) {
+		EditCount++;
+		for (ChunkCoordinate Chunk : PathCache.getTouchedChunks(EditedCoords)) {
+			Set<Navigator> ChunkWatchers = Watchers.get(Chunk);
+			if (ChunkWatchers == null)
+				continue;
+
+			for (Navigator Watcher : ChunkWatchers) {
+				Watcher.notePathEdited();
+				Notices++;
+			}
+		}
+	}
+
+	/**
+	 * Counts the edits so far, a Path searched while this changed may already
+	 * be broken when it arrives.
+	 */
+	public synchronized int getEditCount() {
+		return EditCount;
+	}
+
+	public synchronized int getNotices() {
+		return Notices;
+	}
+
+	public synchronized int getWatchedChunks() {
+		return Watchers.size();
+	}
+
+	public synchronized void clear() {
+		Watchers.clear();
+	}
+}
@@ -0,0 +1,381 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package PathFinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scratch storage for a single search, every node is an index into parallel
+ * arrays rather then an object. Nodes are found by their PackedCoordinate
+ * through an open addressing table, and the Fringe is a binary heap that
+ * tracks the position of each node so a cheaper way to an open node lowers
+ * its key in place instead of adding a duplicate.
+ *
+ * Each thread keeps its arenas which are reset rather then discarded after a
+ * search, so once grown to the size of the searches it runs no memory is
+ * allocated per node. A search needing more arenas at once then the thread
+ * has free, such as a bidirectional search, adds another to the thread.
+ *
+ * Memory is bounded two ways. A search may not hold more then MaximumNodes,
+ * once full the searches treat the arena as exhausted. An arena grown past
+ * RetainedNodes is shrunk back when released, so one huge search does not pin
+ * its storage on the thread forever. The largest search seen is kept as a
+ * high water mark.
+ *
+ * @author Impaler
+ */
+class SearchArena {
+
+	static final int INITIAL_NODES = 1024;
+	public static final int DEFAULT_MAXIMUM_NODES = 1 << 20;
+	public static final int DEFAULT_RETAINED_NODES = 1 << 16;
+	// Most nodes a single expansion can add, one per Direction
+	static final int EXPANSION_NODES = 26;
+
+	// HeapIndex of a node that has been expanded
+	static final int CLOSED = -1;
+
+	static volatile int MaximumNodes = DEFAULT_MAXIMUM_NODES;
+	static volatile int RetainedNodes = DEFAULT_RETAINED_NODES;
+
+	static final AtomicInteger HighWaterNodes = new AtomicInteger();
+	static final AtomicInteger ArenasCreated = new AtomicInteger();
+	static final AtomicInteger Searches = new AtomicInteger();
+	static final AtomicInteger Overflows = new AtomicInteger();
+	static final AtomicInteger Shrinks = new AtomicInteger();
+
+	private static final ThreadLocal<ArrayList<SearchArena>> Arenas = new ThreadLocal<ArrayList<SearchArena>>() {
+
+		@Override
+		protected ArrayList<SearchArena> initialValue() {
+			return new ArrayList<SearchArena>();
+		}
+	};
+
+	// Open addressing table from PackedCoordinate to node, 0 is an empty slot
+	long[] TableKeys;
+	int[] TableNodes;
+	int TableMask;
+
+	// Per node data, indexed by node
+	long[] Keys;
+	float[] PathLength;
+	float[] Estimate;
+	float[] TieBreaker;
+	int[] Parent;
+	// Direction from the parent and how many Blocks it runs, more then one for a jump
+	byte[] ParentDirection;
+	int[] Steps;
+	int[] HeapIndex;
+	int[] TableSlot;
+	int NodeCount;
+
+	int[] Heap;
+	int HeapSize;
+
+	boolean InUse;
+
+	SearchArena() {
+		allocateTable(INITIAL_NODES * 2);
+		allocateNodes(INITIAL_NODES);
+	}
+
+	/**
+	 * A free arena of the calling thread, a new one is added if all the
+	 * threads arenas are in use.
+	 */
+	static SearchArena acquire() {
+		ArrayList<SearchArena> ThreadArenas = Arenas.get();
+		for (int i = 0; i < ThreadArenas.size(); i++) {
+			SearchArena Arena = ThreadArenas.get(i);
+			if (!Arena.InUse) {
+				Arena.InUse = true;
+				return Arena;
+			}
+		}
+
+		SearchArena NewArena = new SearchArena();
+		ArenasCreated.incrementAndGet();
+		NewArena.InUse = true;
+		ThreadArenas.add(NewArena);
+		return NewArena;
+	}
+
+	/**
+	 * Empties the arena for its next search, only the slots used are cleared
+	 * unless the arena has outgrown RetainedNodes and is reallocated smaller.
+	 */
+	void release() {
+		Searches.incrementAndGet();
+		int HighWater = HighWaterNodes.get();
+		while (NodeCount > HighWater && !HighWaterNodes.compareAndSet(HighWater, NodeCount)) {
+			HighWater = HighWaterNodes.get();
+		}
+		if (isFull())
+			Overflows.incrementAndGet();
+
+		if (Keys.length > Math.max(RetainedNodes, INITIAL_NODES)) {
+			allocateTable(INITIAL_NODES * 2);
+			allocateNodes(INITIAL_NODES);
+			Shrinks.incrementAndGet();
+		} else {
+			for (int i = 0; i < NodeCount; i++) {
+				TableKeys[TableSlot[i]] = 0;
+			}
+		}
+		NodeCount = 0;
+		HeapSize = 0;
+		InUse = false;
+	}
+
+	/**
+	 * Sets the most nodes one search may hold and the size arenas are shrunk
+	 * to once released, taking effect from each arenas next search.
+	 */
+	static void setLimits(int MaximumSearchNodes, int RetainedSearchNodes) {
+		MaximumNodes = Math.max(MaximumSearchNodes, EXPANSION_NODES * 2);
+		RetainedNodes = RetainedSearchNodes;
+	}
+
+	static int getHighWaterMark() {
+		return HighWaterNodes.get();
+	}
+
+	static void resetHighWaterMark() {
+		HighWaterNodes.set(0);
+	}
+
+	static int getArenasCreated() {
+		return ArenasCreated.get();
+	}
+
+	static int getSearches() {
+		return Searches.get();
+	}
+
+	static int getOverflows() {
+		return Overflows.get();
+	}
+
+	static int getShrinks() {
+		return Shrinks.get();
+	}
+
+	private void allocateTable(int Size) {
+		TableKeys = new long[Size];
+		TableNodes = new int[Size];
+		TableMask = Size - 1;
+	}
+
+	private void allocateNodes(int Size) {
+		Keys = new long[Size];
+		PathLength = new float[Size];
+		Estimate = new float[Size];
+		TieBreaker = new float[Size];
+		Parent = new int[Size];
+		ParentDirection = new byte[Size];
+		Steps = new int[Size];
+		HeapIndex = new int[Size];
+		TableSlot = new int[Size];
+		Heap = new int[Size];
+	}
+
+	private void growNodes() {
+		int Size = Keys.length * 2;
+		Keys = Arrays.copyOf(Keys, Size);
+		PathLength = Arrays.copyOf(PathLength, Size);
+		Estimate = Arrays.copyOf(Estimate, Size);
+		TieBreaker = Arrays.copyOf(TieBreaker, Size);
+		Parent = Arrays.copyOf(Parent, Size);
+		ParentDirection = Arrays.copyOf(ParentDirection, Size);
+		Steps = Arrays.copyOf(Steps, Size);
+		HeapIndex = Arrays.copyOf(HeapIndex, Size);
+		TableSlot = Arrays.copyOf(TableSlot, Size);
+		Heap = Arrays.copyOf(Heap, Size);
+	}
+
+	private void growTable() {
+		allocateTable(TableKeys.length * 2);
+		for (int i = 0; i < NodeCount; i++) {
+			TableSlot[i] = insertSlot(Keys[i], i);
+		}
+	}
+
+	/**
+	 * Keys are stored plus one so that 0 can mark an empty slot
+	 */
+	private int insertSlot(long Key, int Node) {
+		int Slot = PackedCoordinate.hash(Key) & TableMask;
+		while (TableKeys[Slot] != 0) {
+			Slot = (Slot + 1) & TableMask;
+		}
+		TableKeys[Slot] = Key + 1;
+		TableNodes[Slot] = Node;
+		return Slot;
+	}
+
+	/**
+	 * The node for a location, -1 if it has not been reached
+	 */
+	int find(long Key) {
+		long Stored = Key + 1;
+		int Slot = PackedCoordinate.hash(Key) & TableMask;
+		while (TableKeys[Slot] != 0) {
+			if (TableKeys[Slot] == Stored)
+				return TableNodes[Slot];
+			Slot = (Slot + 1) & TableMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a node for a location not yet reached, it is not placed on the heap.
+	 */
+	int add(long Key) {
+		if (NodeCount == Keys.length)
+			growNodes();
+		if ((NodeCount + 1) * 2 > TableKeys.length)
+			growTable();
+
+		int Node = NodeCount++;
+		Keys[Node] = Key;
+		TableSlot[Node] = insertSlot(Key, Node);
+		HeapIndex[Node] = CLOSED;
+		return Node;
+	}
+
+	void set(int Node, int ParentNode, int Direction, float Length, float MinimumCost, float TieBreak) {
+		Parent[Node] = ParentNode;
+		ParentDirection[Node] = (byte) Direction;
+		Steps[Node] = 1;
+		PathLength[Node] = Length;
+		Estimate[Node] = MinimumCost;
+		TieBreaker[Node] = TieBreak;
+	}
+
+	boolean isClosed(int Node) {
+		return HeapIndex[Node] == CLOSED;
+	}
+
+	int getNodeCount() {
+		return NodeCount;
+	}
+
+	int getOpenCount() {
+		return HeapSize;
+	}
+
+	/**
+	 * The open node of least total cost, left on the heap
+	 */
+	int peek() {
+		return Heap[0];
+	}
+
+	float getTotalCost(int Node) {
+		return PathLength[Node] + Estimate[Node];
+	}
+
+	boolean isEmpty() {
+		return HeapSize == 0;
+	}
+
+	/**
+	 * True once another expansion could take the arena past MaximumNodes, the
+	 * search must stop as though its Fringe were exhausted.
+	 */
+	boolean isFull() {
+		return NodeCount > MaximumNodes - EXPANSION_NODES;
+	}
+
+	void push(int Node) {
+		Heap[HeapSize] = Node;
+		HeapIndex[Node] = HeapSize;
+		HeapSize++;
+		siftUp(HeapIndex[Node]);
+	}
+
+	/**
+	 * Takes the node of least total cost off the heap and marks it closed
+	 */
+	int pop() {
+		int Top = Heap[0];
+		HeapSize--;
+		if (HeapSize > 0) {
+			Heap[0] = Heap[HeapSize];
+			HeapIndex[Heap[0]] = 0;
+			siftDown(0);
+		}
+		HeapIndex[Top] = CLOSED;
+		return Top;
+	}
+
+	/**
+	 * Lowers the path length of an open node and restores heap order
+	 */
+	void decrease(int Node, int ParentNode, int Direction, float Length) {
+		Parent[Node] = ParentNode;
+		ParentDirection[Node] = (byte) Direction;
+		Steps[Node] = 1;
+		PathLength[Node] = Length;
+		siftUp(HeapIndex[Node]);
+	}
+
+	private boolean before(int First, int Second) {
+		float FirstCost = PathLength[First] + Estimate[First];
+		float SecondCost = PathLength[Second] + Estimate[Second];
+		if (FirstCost != SecondCost)
+			return FirstCost < SecondCost;
+		return TieBreaker[First] < TieBreaker[Second];
+	}
+
+	private void siftUp(int Position) {
+		int Node = Heap[Position];
+		while (Position > 0) {
+			int ParentPosition = (Position - 1) >> 1;
+			int Above = Heap[ParentPosition];
+			if (!before(Node, Above))
+				break;
+			Heap[Position] = Above;
+			HeapIndex[Above] = Position;
+			Position = ParentPosition;
+		}
+		Heap[Position] = Node;
+		HeapIndex[Node] = Position;
+	}
+
+	private void siftDown(int Position) {
+		int Node = Heap[Position];
+		while (true) {
+			int Child = (Position << 1) + 1;
+			if (Child >= HeapSize)
+				break;
+			if (Child + 1 < HeapSize && before(Heap[Child + 1], Heap[Child]))
+				Child++;
+			if (!before(Heap[Child], Node))
+				break;
+			Heap[Position] = Heap[Child];
+			HeapIndex[Heap[Position]] = Position;
+			Position = Child;
+		}
+		Heap[Position] = Node;
+		HeapIndex[Node] = Position;
+	}
+}
@@ -39,6 +39,7 @@ public class VectorPath extends MapPath implements Serializable {
 		Directions = new ArrayList<Direction>();
 		Magnitudes = new ArrayList<Integer>();
 
+		Length = PathLength;
 		StartCoordinates = StartCoords;
 		GoalCoordinates = GoalCoords;
 		StepCount = RawDirections.size();
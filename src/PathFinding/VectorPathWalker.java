@@ -50,7 +50,7 @@ public class VectorPathWalker implements PathWalker, Serializable {
 			} else {
 				MagnitudeCountDown = 0;
 			}
-			StepCoordinates = TargetPath.StartCoordinates;
+			StepCoordinates = TargetPath.StartCoordinates.clone();  // Paths may be shared, never step the original
 		}
 		LegCounter = 0;
 		CurrentStep = 0;
@@ -97,8 +97,9 @@ public class VectorPathWalker implements PathWalker, Serializable {
 				dir = TargetPath.Directions.get(LegCounter);
 			}
 
-			StepCoordinates.translate(dir);
-			return StepCoordinates;
+			MapCoordinate Ahead = StepCoordinates.clone();  // Peeking must not move the walker
+			Ahead.translate(dir);
+			return Ahead;
 		}
 		return TargetPath.GoalCoordinates; // Keep returning the Goal if we've reached the end of the path
 	}
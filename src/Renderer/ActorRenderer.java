@@ -34,6 +34,7 @@ import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.asset.AssetManager;
+import com.jme3.light.DirectionalLight;
 
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
@@ -110,15 +111,14 @@ public class ActorRenderer extends AbstractAppState {
 					MapCoordinate coords = target.getLocation();
 					MapRenderer Renderer = state.getState(MapRenderer.class);
 
-					Node zNode;
-					if (map.isBlockSunLit(coords)) {
-						zNode = Renderer.getZNodeLight(coords.Chunk.Z);
-					} else {
-						zNode = Renderer.getZNodeDark(coords.Chunk.Z);
-					}
-
+					Node zNode = Renderer.getZNode(coords.Chunk.Z);
 					zNode.attachChild(actorNode);
 
+					DirectionalLight Sun = game.getWeather().getSun();
+					actorNode.removeLight(Sun);
+					if (map.isBlockSunLit(coords))
+						actorNode.addLight(Sun);
+
 					if (target instanceof Pawn) {
 						MovePawn((Pawn) target, CurrentTick);
 					} else {
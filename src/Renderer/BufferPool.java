@@ -0,0 +1,299 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Pool of direct buffers shared by the mesh builders. Direct memory is only
+ * given back to the system once the garbage collector finalizes a buffer, so
+ * rather then allocating anew for every mesh, buffers are borrowed in power of
+ * two size classes and released back when the mesh is discarded. Buffers
+ * beyond the retained budget, or of no size class, are freed at once.
+ *
+ * A borrowed buffer has its limit set to the requested size and may have
+ * greater capacity, it must not be released while any Mesh still draws it.
+ *
+ * @author Impaler
+ */
+public class BufferPool {
+
+	// Smallest and largest size classes, in elements
+	static final int MINIMUM_CLASS_SHIFT = 6;
+	static final int MAXIMUM_CLASS_SHIFT = 22;
+	static final int CLASS_COUNT = MAXIMUM_CLASS_SHIFT - MINIMUM_CLASS_SHIFT + 1;
+
+	public static final long DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+	private static BufferPool instance = null;
+
+	// Retained buffers of each size class
+	ArrayList<ArrayList<FloatBuffer>> FloatBuffers;
+	ArrayList<ArrayList<IntBuffer>> IntBuffers;
+	ArrayList<ArrayList<ShortBuffer>> ShortBuffers;
+	ArrayList<ArrayList<ByteBuffer>> ByteBuffers;
+
+	long Budget;
+	long RetainedBytes;
+	int Borrows, Reuses;
+
+	protected BufferPool() {
+		FloatBuffers = new ArrayList<ArrayList<FloatBuffer>>(CLASS_COUNT);
+		IntBuffers = new ArrayList<ArrayList<IntBuffer>>(CLASS_COUNT);
+		ShortBuffers = new ArrayList<ArrayList<ShortBuffer>>(CLASS_COUNT);
+		ByteBuffers = new ArrayList<ArrayList<ByteBuffer>>(CLASS_COUNT);
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			FloatBuffers.add(new ArrayList<FloatBuffer>());
+			IntBuffers.add(new ArrayList<IntBuffer>());
+			ShortBuffers.add(new ArrayList<ShortBuffer>());
+			ByteBuffers.add(new ArrayList<ByteBuffer>());
+		}
+		Budget = DEFAULT_BUDGET;
+		RetainedBytes = 0;
+	}
+
+	public static synchronized BufferPool getBufferPool() {
+		if (instance == null) {
+			instance = new BufferPool();
+		}
+		return instance;
+	}
+
+	public synchronized FloatBuffer borrowFloatBuffer(int Size) {
+		int SizeClass = sizeClass(Size);
+		if (SizeClass < 0)
+			return BufferUtils.createFloatBuffer(Size);
+
+		FloatBuffer Target = takeFrom(FloatBuffers.get(SizeClass), 4);
+		if (Target == null)
+			Target = BufferUtils.createFloatBuffer(classCapacity(SizeClass));
+		Target.clear();
+		Target.limit(Size);
+		return Target;
+	}
+
+	public synchronized IntBuffer borrowIntBuffer(int Size) {
+		int SizeClass = sizeClass(Size);
+		if (SizeClass < 0)
+			return BufferUtils.createIntBuffer(Size);
+
+		IntBuffer Target = takeFrom(IntBuffers.get(SizeClass), 4);
+		if (Target == null)
+			Target = BufferUtils.createIntBuffer(classCapacity(SizeClass));
+		Target.clear();
+		Target.limit(Size);
+		return Target;
+	}
+
+	public synchronized ShortBuffer borrowShortBuffer(int Size) {
+		int SizeClass = sizeClass(Size);
+		if (SizeClass < 0)
+			return BufferUtils.createShortBuffer(Size);
+
+		ShortBuffer Target = takeFrom(ShortBuffers.get(SizeClass), 2);
+		if (Target == null)
+			Target = BufferUtils.createShortBuffer(classCapacity(SizeClass));
+		Target.clear();
+		Target.limit(Size);
+		return Target;
+	}
+
+	public synchronized ByteBuffer borrowByteBuffer(int Size) {
+		int SizeClass = sizeClass(Size);
+		if (SizeClass < 0)
+			return BufferUtils.createByteBuffer(Size);
+
+		ByteBuffer Target = takeFrom(ByteBuffers.get(SizeClass), 1);
+		if (Target == null)
+			Target = BufferUtils.createByteBuffer(classCapacity(SizeClass));
+		Target.clear();
+		Target.limit(Size);
+		return Target;
+	}
+
+	public FloatBuffer borrowFloatBuffer(Vector3f[] Data) {
+		FloatBuffer Target = borrowFloatBuffer(Data.length * 3);
+		for (Vector3f Element : Data) {
+			Target.put(Element.x);
+			Target.put(Element.y);
+			Target.put(Element.z);
+		}
+		Target.flip();
+		return Target;
+	}
+
+	public IntBuffer borrowIntBuffer(int[] Data) {
+		IntBuffer Target = borrowIntBuffer(Data.length);
+		Target.put(Data);
+		Target.flip();
+		return Target;
+	}
+
+	private <T extends Buffer> T takeFrom(ArrayList<T> Stack, int ElementBytes) {
+		Borrows++;
+		if (Stack.isEmpty())
+			return null;
+
+		T Target = Stack.remove(Stack.size() - 1);
+		RetainedBytes -= (long) Target.capacity() * ElementBytes;
+		Reuses++;
+		return Target;
+	}
+
+	/**
+	 * Returns a buffer to the pool, or frees it if the pool is full or the
+	 * buffer fits no size class.
+	 */
+	public synchronized void release(Buffer Target) {
+		if (Target == null || !Target.isDirect())
+			return;
+
+		int SizeClass = sizeClass(Target.capacity());
+		if (SizeClass < 0 || classCapacity(SizeClass) != Target.capacity()) {
+			BufferUtils.destroyDirectBuffer(Target);
+			return;
+		}
+
+		int ElementBytes;
+		if (Target instanceof FloatBuffer || Target instanceof IntBuffer) {
+			ElementBytes = 4;
+		} else if (Target instanceof ShortBuffer) {
+			ElementBytes = 2;
+		} else if (Target instanceof ByteBuffer) {
+			ElementBytes = 1;
+		} else {
+			BufferUtils.destroyDirectBuffer(Target);
+			return;
+		}
+
+		long Bytes = (long) Target.capacity() * ElementBytes;
+		if (RetainedBytes + Bytes > Budget) {
+			BufferUtils.destroyDirectBuffer(Target);
+			return;
+		}
+
+		if (Target instanceof FloatBuffer) {
+			FloatBuffers.get(SizeClass).add((FloatBuffer) Target);
+		} else if (Target instanceof IntBuffer) {
+			IntBuffers.get(SizeClass).add((IntBuffer) Target);
+		} else if (Target instanceof ShortBuffer) {
+			ShortBuffers.get(SizeClass).add((ShortBuffer) Target);
+		} else {
+			ByteBuffers.get(SizeClass).add((ByteBuffer) Target);
+		}
+		RetainedBytes += Bytes;
+	}
+
+	/**
+	 * Releases every buffer of a Mesh that will not be drawn again, the
+	 * buffers are cleared from the Mesh so any later use fails plainly.
+	 */
+	public void release(Mesh Target) {
+		if (Target == null)
+			return;
+
+		ArrayList<VertexBuffer> Buffers = new ArrayList<VertexBuffer>();
+		for (VertexBuffer Buffer : Target.getBufferList()) {
+			Buffers.add(Buffer);
+		}
+		for (VertexBuffer Buffer : Buffers) {
+			Target.clearBuffer(Buffer.getBufferType());
+			release(Buffer.getData());
+		}
+	}
+
+	/**
+	 * Releases the Meshes of every Geometry under a detached Spatial.
+	 */
+	public void releaseMeshes(Spatial Target) {
+		if (Target instanceof Geometry) {
+			release(((Geometry) Target).getMesh());
+		} else if (Target instanceof Node) {
+			for (Spatial Child : ((Node) Target).getChildren()) {
+				releaseMeshes(Child);
+			}
+		}
+	}
+
+	public synchronized void setBudget(long ByteBudget) {
+		Budget = ByteBudget;
+		trim();
+	}
+
+	public synchronized long getRetainedBytes() {
+		return RetainedBytes;
+	}
+
+	public synchronized int getBorrows() {
+		return Borrows;
+	}
+
+	public synchronized int getReuses() {
+		return Reuses;
+	}
+
+	/**
+	 * Frees pooled buffers, largest classes first, until within the budget.
+	 */
+	private void trim() {
+		for (int i = CLASS_COUNT - 1; i >= 0 && RetainedBytes > Budget; i--) {
+			RetainedBytes -= freeAll(FloatBuffers.get(i), 4);
+			RetainedBytes -= freeAll(IntBuffers.get(i), 4);
+			RetainedBytes -= freeAll(ShortBuffers.get(i), 2);
+			RetainedBytes -= freeAll(ByteBuffers.get(i), 1);
+		}
+	}
+
+	private static <T extends Buffer> long freeAll(ArrayList<T> Stack, int ElementBytes) {
+		long Freed = 0;
+		for (T Target : Stack) {
+			Freed += (long) Target.capacity() * ElementBytes;
+			BufferUtils.destroyDirectBuffer(Target);
+		}
+		Stack.clear();
+		return Freed;
+	}
+
+	private static int sizeClass(int Size) {
+		if (Size <= 0)
+			return -1;
+
+		int Shift = 32 - Integer.numberOfLeadingZeros(Size - 1);
+		Shift = Math.max(Shift, MINIMUM_CLASS_SHIFT);
+		if (Shift > MAXIMUM_CLASS_SHIFT)
+			return -1;
+		return Shift - MINIMUM_CLASS_SHIFT;
+	}
+
+	private static int classCapacity(int SizeClass) {
+		return 1 << (SizeClass + MINIMUM_CLASS_SHIFT);
+	}
+}
@@ -0,0 +1,102 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Map.Coordinates.BlockCoordinate;
+
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+
+/**
+ * Holds the Geometry of every detail level of one Chunk that is currently
+ * attached to the Scene graph, along with the detail level being shown, so
+ * detail changes need no searching of the Scene graph by name.
+ *
+ * Only touched from the render thread.
+ *
+ * @author Impaler
+ */
+public class ChunkGeometry {
+
+	Geometry[] TerrainGeometry;
+	int DetailLevel;
+	// Level from distance alone, kept between passes for the hysteresis
+	int DistanceLevel;
+	// Level chosen by the last distance pass, before it is applied
+	int TargetLevel;
+	// Pass in which the Chunk was last inside the Frustum
+	int LevelPass;
+
+	public ChunkGeometry() {
+		TerrainGeometry = new Geometry[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		DetailLevel = 0;
+		DistanceLevel = 0;
+		TargetLevel = 0;
+		LevelPass = 0;
+	}
+
+	/**
+	 * Swaps in newly built Geometry, replacing and detaching whatever was there,
+	 * the replaced Meshes are released to the BufferPool.
+	 */
+	public void attach(Node ChunkNode, Geometry[] NewGeometry, Spatial.CullHint Hint) {
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			if (TerrainGeometry[i] != null && TerrainGeometry[i] != NewGeometry[i]) {
+				TerrainGeometry[i].removeFromParent();
+				BufferPool.getBufferPool().release(TerrainGeometry[i].getMesh());
+			}
+
+			TerrainGeometry[i] = NewGeometry[i];
+
+			if (TerrainGeometry[i] != null)
+				ChunkNode.attachChild(TerrainGeometry[i]);
+		}
+		show(DetailLevel, Hint);
+	}
+
+	/**
+	 * Detaches all Geometry, the array returned is no longer held here.
+	 */
+	public Geometry[] detach() {
+		Geometry[] Detached = TerrainGeometry;
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			if (TerrainGeometry[i] != null)
+				TerrainGeometry[i].removeFromParent();
+		}
+
+		TerrainGeometry = new Geometry[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		return Detached;
+	}
+
+	/**
+	 * Shows the given detail level with the Hint and hides all the others.
+	 */
+	public void show(int Level, Spatial.CullHint Hint) {
+		DetailLevel = Level;
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			Spatial.CullHint LevelHint = i == Level ? Hint : Spatial.CullHint.Always;
+			if (TerrainGeometry[i] != null)
+				TerrainGeometry[i].setCullHint(LevelHint);
+		}
+	}
+
+	public int getDetailLevel() {
+		return DetailLevel;
+	}
+}
@@ -0,0 +1,187 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Map.Coordinates.ChunkCoordinate;
+
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used cache of Chunk geometry that has been detached from the
+ * Scene graph after leaving the Frustum. Each entry records the Terrain
+ * version of the Chunk it was built from, so geometry of a Chunk that has since
+ * changed is never handed back. Entries are evicted oldest first once the total
+ * size of their vertex buffers exceeds the byte budget.
+ *
+ * Geometry dropped from the cache is no longer attached anywhere, so its
+ * buffers are released to the BufferPool.
+ *
+ * Accessed from both the render thread and the builder threads.
+ *
+ * @author Impaler
+ */
+public class ChunkMeshCache {
+
+	public static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+
+	public class CachedMesh {
+
+		int Version;
+		Geometry[] TerrainGeometry;
+		long Bytes;
+
+		public Geometry[] getTerrainGeometry() {
+			return TerrainGeometry;
+		}
+	}
+
+	LinkedHashMap<ChunkCoordinate, CachedMesh> Entries;
+	long Budget;
+	long UsedBytes;
+	int Hits, Misses;
+
+	public ChunkMeshCache(long ByteBudget) {
+		Entries = new LinkedHashMap<ChunkCoordinate, CachedMesh>(64, 0.75f, true);
+		Budget = ByteBudget;
+		UsedBytes = 0;
+	}
+
+	/**
+	 * Stores the detached geometry of a Chunk, all detail levels are kept
+	 * together as TerrainBuilder meshes them in a single pass. Geometry too
+	 * large to be kept is released.
+	 */
+	public synchronized void put(ChunkCoordinate Coords, int Version, Geometry[] Terrain) {
+		remove(Coords);
+
+		CachedMesh Entry = new CachedMesh();
+		Entry.Version = Version;
+		Entry.TerrainGeometry = Terrain;
+		Entry.Bytes = geometrySize(Terrain);
+
+		if (Entry.Bytes == 0 || Entry.Bytes > Budget) {
+			releaseGeometry(Terrain);
+			return;
+		}
+
+		Entries.put(Coords, Entry);
+		UsedBytes += Entry.Bytes;
+		evict();
+	}
+
+	/**
+	 * Removes and returns the cached geometry of a Chunk if it was built from
+	 * the given version, stale entries are dropped.
+	 */
+	public synchronized CachedMesh take(ChunkCoordinate Coords, int Version) {
+		CachedMesh Entry = Entries.remove(Coords);
+		if (Entry == null) {
+			Misses++;
+			return null;
+		}
+
+		UsedBytes -= Entry.Bytes;
+		if (Entry.Version != Version) {
+			releaseGeometry(Entry.TerrainGeometry);
+			Misses++;
+			return null;
+		}
+		Hits++;
+		return Entry;
+	}
+
+	public synchronized void remove(ChunkCoordinate Coords) {
+		CachedMesh Entry = Entries.remove(Coords);
+		if (Entry != null) {
+			UsedBytes -= Entry.Bytes;
+			releaseGeometry(Entry.TerrainGeometry);
+		}
+	}
+
+	public synchronized void clear() {
+		for (CachedMesh Entry : Entries.values()) {
+			releaseGeometry(Entry.TerrainGeometry);
+		}
+		Entries.clear();
+		UsedBytes = 0;
+	}
+
+	public synchronized void setBudget(long ByteBudget) {
+		Budget = ByteBudget;
+		evict();
+	}
+
+	public synchronized long getBudget() {
+		return Budget;
+	}
+
+	public synchronized long getUsedBytes() {
+		return UsedBytes;
+	}
+
+	public synchronized int getHits() {
+		return Hits;
+	}
+
+	public synchronized int getMisses() {
+		return Misses;
+	}
+
+	private void evict() {
+		Iterator<CachedMesh> it = Entries.values().iterator();
+		while (UsedBytes > Budget && it.hasNext()) {
+			CachedMesh Oldest = it.next();
+			UsedBytes -= Oldest.Bytes;
+			releaseGeometry(Oldest.TerrainGeometry);
+			it.remove();
+		}
+	}
+
+	private static void releaseGeometry(Geometry[] GeometryArray) {
+		BufferPool Pool = BufferPool.getBufferPool();
+		for (Geometry geom : GeometryArray) {
+			if (geom != null)
+				Pool.release(geom.getMesh());
+		}
+	}
+
+	private static long geometrySize(Geometry[] GeometryArray) {
+		long Size = 0;
+		if (GeometryArray != null) {
+			for (Geometry geom : GeometryArray) {
+				if (geom != null)
+					Size += meshSize(geom.getMesh());
+			}
+		}
+		return Size;
+	}
+
+	static long meshSize(Mesh TargetMesh) {
+		long Size = 0;
+		for (VertexBuffer Buffer : TargetMesh.getBufferList()) {
+			if (Buffer.getData() != null)
+				Size += (long) Buffer.getData().limit() * Buffer.getFormat().getComponentSize();
+		}
+		return Size;
+	}
+}
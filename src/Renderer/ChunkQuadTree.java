@@ -0,0 +1,222 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Interface.GameCameraState;
+
+import Map.Chunk;
+import Map.GameMap;
+import Map.Sector;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Spatial index of all Chunks in the Map for quick Frustum queries. The Map is
+ * wide and shallow so the tree divides on the X and Y axis only, each node
+ * carries a BoundingBox enclosing all the Chunks below it. Nodes entirely
+ * outside the Frustum are skipped along with everything under them and nodes
+ * entirely inside add their Chunks without any further testing, so the cost
+ * of a query follows the number of visible Chunks rather then the Map size.
+ *
+ * The tree is rebuilt whenever Chunks are added to the Map.
+ *
+ * @author Impaler
+ */
+public class ChunkQuadTree {
+
+	// Leaves stop dividing once they cover this many Chunk columns on a side
+	static final int LEAF_EDGE = 2;
+
+	protected class QuadNode {
+
+		int MinX, MaxX, MinY, MaxY;
+		BoundingBox Bounds;
+		QuadNode[] Children;
+		ArrayList<Chunk> Chunks;
+		ArrayList<ChunkCoordinate> ChunkCoordinates;
+		ArrayList<BoundingBox> ChunkBounds;
+
+		QuadNode(int NewMinX, int NewMaxX, int NewMinY, int NewMaxY) {
+			MinX = NewMinX;
+			MaxX = NewMaxX;
+			MinY = NewMinY;
+			MaxY = NewMaxY;
+		}
+
+		boolean isLeaf() {
+			return Children == null;
+		}
+	}
+
+	QuadNode Root;
+	GameMap IndexedMap;
+	int IndexedChunkCount;
+
+	public ChunkQuadTree() {
+		Root = null;
+		IndexedMap = null;
+		IndexedChunkCount = 0;
+	}
+
+	public boolean needsRebuild(GameMap map) {
+		return Root == null || map != IndexedMap || map.getChunkCount() != IndexedChunkCount;
+	}
+
+	public void build(GameMap map) {
+		ArrayList<Chunk> AllChunks = new ArrayList<Chunk>();
+		for (Sector targetSector : map.getSectorCollection()) {
+			AllChunks.addAll(targetSector.getChunkCollection());
+		}
+
+		IndexedMap = map;
+		IndexedChunkCount = AllChunks.size();
+		Root = null;
+
+		if (AllChunks.isEmpty())
+			return;
+
+		int MinX = Integer.MAX_VALUE, MaxX = Integer.MIN_VALUE;
+		int MinY = Integer.MAX_VALUE, MaxY = Integer.MIN_VALUE;
+		for (Chunk TargetChunk : AllChunks) {
+			ChunkCoordinate Coords = TargetChunk.getChunkCoordinates();
+			MinX = Math.min(MinX, Coords.X);
+			MaxX = Math.max(MaxX, Coords.X);
+			MinY = Math.min(MinY, Coords.Y);
+			MaxY = Math.max(MaxY, Coords.Y);
+		}
+
+		Root = buildNode(MinX, MaxX, MinY, MaxY, AllChunks);
+	}
+
+	private QuadNode buildNode(int MinX, int MaxX, int MinY, int MaxY, ArrayList<Chunk> NodeChunks) {
+		QuadNode Node = new QuadNode(MinX, MaxX, MinY, MaxY);
+		Node.Bounds = enclosingBox(NodeChunks);
+
+		if ((MaxX - MinX) < LEAF_EDGE && (MaxY - MinY) < LEAF_EDGE) {
+			Node.Chunks = NodeChunks;
+			Node.ChunkCoordinates = new ArrayList<ChunkCoordinate>(NodeChunks.size());
+			Node.ChunkBounds = new ArrayList<BoundingBox>(NodeChunks.size());
+			for (Chunk TargetChunk : NodeChunks) {
+				ChunkCoordinate Coords = TargetChunk.getChunkCoordinates();
+				Node.ChunkCoordinates.add(Coords);
+				Node.ChunkBounds.add(chunkBox(Coords));
+			}
+			return Node;
+		}
+
+		int SplitX = MinX + ((MaxX - MinX) / 2);
+		int SplitY = MinY + ((MaxY - MinY) / 2);
+
+		ArrayList<ArrayList<Chunk>> Quadrants = new ArrayList<ArrayList<Chunk>>(4);
+		for (int i = 0; i < 4; i++) {
+			Quadrants.add(new ArrayList<Chunk>());
+		}
+
+		for (Chunk TargetChunk : NodeChunks) {
+			ChunkCoordinate Coords = TargetChunk.getChunkCoordinates();
+			int Quadrant = (Coords.X > SplitX ? 1 : 0) + (Coords.Y > SplitY ? 2 : 0);
+			Quadrants.get(Quadrant).add(TargetChunk);
+		}
+
+		ArrayList<QuadNode> Children = new ArrayList<QuadNode>(4);
+		for (int i = 0; i < 4; i++) {
+			ArrayList<Chunk> QuadrantChunks = Quadrants.get(i);
+			if (QuadrantChunks.isEmpty())
+				continue;
+
+			int ChildMinX = (i & 1) == 0 ? MinX : SplitX + 1;
+			int ChildMaxX = (i & 1) == 0 ? SplitX : MaxX;
+			int ChildMinY = (i & 2) == 0 ? MinY : SplitY + 1;
+			int ChildMaxY = (i & 2) == 0 ? SplitY : MaxY;
+			Children.add(buildNode(ChildMinX, ChildMaxX, ChildMinY, ChildMaxY, QuadrantChunks));
+		}
+		Node.Children = Children.toArray(new QuadNode[Children.size()]);
+		return Node;
+	}
+
+	/**
+	 * Same conservative box that was used to test single Chunks, a full Chunk
+	 * edge of extent around the Chunks origin.
+	 */
+	static BoundingBox chunkBox(ChunkCoordinate Coords) {
+		BoundingBox ChunkBox = new BoundingBox();
+		ChunkBox.setXExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
+		ChunkBox.setYExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
+		ChunkBox.setZExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
+		ChunkBox.setCenter(Coords.getVector());
+		ChunkBox.setCheckPlane(0);
+		return ChunkBox;
+	}
+
+	private static BoundingBox enclosingBox(ArrayList<Chunk> NodeChunks) {
+		Vector3f Min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+		Vector3f Max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+
+		for (Chunk TargetChunk : NodeChunks) {
+			Vector3f Center = TargetChunk.getChunkCoordinates().getVector();
+			Min.minLocal(Center);
+			Max.maxLocal(Center);
+		}
+
+		BoundingBox Box = new BoundingBox();
+		Box.setCenter(Min.add(Max).multLocal(0.5f));
+		Box.setXExtent(((Max.x - Min.x) / 2) + BlockCoordinate.CHUNK_EDGE_SIZE);
+		Box.setYExtent(((Max.y - Min.y) / 2) + BlockCoordinate.CHUNK_EDGE_SIZE);
+		Box.setZExtent(((Max.z - Min.z) / 2) + BlockCoordinate.CHUNK_EDGE_SIZE);
+		Box.setCheckPlane(0);
+		return Box;
+	}
+
+	/**
+	 * Adds every Chunk whose bounds are inside or intersecting the Cameras
+	 * Frustum and which the OcclusionCuller considers visible to Results.
+	 */
+	public void queryFrustum(GameCameraState CameraState, OcclusionCuller Occlusion, Collection<Chunk> Results) {
+		if (Root != null)
+			queryNode(Root, CameraState, Occlusion, Results, false);
+	}
+
+	private void queryNode(QuadNode Node, GameCameraState CameraState, OcclusionCuller Occlusion, Collection<Chunk> Results, boolean FullyInside) {
+		if (!FullyInside) {
+			Camera.FrustumIntersect Result = CameraState.intersect(Node.Bounds);
+			if (Result == Camera.FrustumIntersect.Outside)
+				return;
+			FullyInside = (Result == Camera.FrustumIntersect.Inside);
+		}
+
+		if (Node.isLeaf()) {
+			for (int i = 0; i < Node.Chunks.size(); i++) {
+				if (!Occlusion.isChunkVisible(Node.ChunkCoordinates.get(i)))
+					continue;
+				if (FullyInside || CameraState.intersect(Node.ChunkBounds.get(i)) != Camera.FrustumIntersect.Outside)
+					Results.add(Node.Chunks.get(i));
+			}
+		} else {
+			for (QuadNode Child : Node.Children) {
+				queryNode(Child, CameraState, Occlusion, Results, FullyInside);
+			}
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.Collidable;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.jme3.util.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Chunk Mesh stored in a compact vertex layout, positions are fixed point
+ * shorts in Chunk local space, normals are normalized bytes, texture
+ * coordinates normalized unsigned shorts, the baked sunlight and occlusion
+ * normalized unsigned bytes and indexes are 16 bit whenever the Mesh has few
+ * enough vertices. A vertex takes 18 bytes rather then 40.
+ *
+ * Normals and texture coordinates are expanded by the graphics card as
+ * normalized attributes, positions are returned to Chunk units by the
+ * DECODE_SCALE set on the Geometry, so the Terrain material draws the Mesh
+ * unchanged.
+ *
+ * @author Impaler
+ */
+public class CompactMesh extends Mesh {
+
+	// Fixed point steps per Block, positions reach about 128 Blocks either way
+	public static final float POSITION_SCALE = 256.0f;
+	public static final float DECODE_SCALE = 1.0f / POSITION_SCALE;
+
+	static final int MAXIMUM_SHORT_INDEX = 65536;
+
+	// Expanded copy of the Mesh built only if something collides with it
+	private Mesh CollisionMesh;
+
+	public CompactMesh() {
+		super();
+	}
+
+	/**
+	 * Packs a Mesh of float positions, normals, texture coordinates and lighting.
+	 */
+	public static CompactMesh compact(Mesh Source) {
+		CompactMesh Packed = new CompactMesh();
+		Packed.setMode(Source.getMode());
+		BufferPool Pool = BufferPool.getBufferPool();
+
+		int VertexCount = Source.getVertexCount();
+
+		FloatBuffer Positions = (FloatBuffer) Source.getBuffer(Type.Position).getData();
+		ShortBuffer PackedPositions = Pool.borrowShortBuffer(VertexCount * 3);
+		Positions.rewind();
+		while (Positions.hasRemaining()) {
+			PackedPositions.put(packPosition(Positions.get()));
+		}
+		PackedPositions.flip();
+		Packed.setBuffer(Type.Position, 3, Format.Short, PackedPositions);
+
+		VertexBuffer NormalBuffer = Source.getBuffer(Type.Normal);
+		if (NormalBuffer != null) {
+			FloatBuffer Normals = (FloatBuffer) NormalBuffer.getData();
+			ByteBuffer PackedNormals = Pool.borrowByteBuffer(VertexCount * 3);
+			Normals.rewind();
+			while (Normals.hasRemaining()) {
+				PackedNormals.put((byte) Math.round(clamp(Normals.get(), -1, 1) * 127));
+			}
+			PackedNormals.flip();
+			Packed.setBuffer(Type.Normal, 3, Format.Byte, PackedNormals);
+			Packed.getBuffer(Type.Normal).setNormalized(true);
+		}
+
+		VertexBuffer TextureBuffer = Source.getBuffer(Type.TexCoord);
+		if (TextureBuffer != null) {
+			FloatBuffer TexCoords = (FloatBuffer) TextureBuffer.getData();
+			ShortBuffer PackedTexCoords = Pool.borrowShortBuffer(VertexCount * 2);
+			TexCoords.rewind();
+			while (TexCoords.hasRemaining()) {
+				PackedTexCoords.put((short) Math.round(clamp(TexCoords.get(), 0, 1) * 65535));
+			}
+			PackedTexCoords.flip();
+			Packed.setBuffer(Type.TexCoord, 2, Format.UnsignedShort, PackedTexCoords);
+			Packed.getBuffer(Type.TexCoord).setNormalized(true);
+		}
+
+		VertexBuffer LightingBuffer = Source.getBuffer(Type.TexCoord2);
+		if (LightingBuffer != null) {
+			FloatBuffer Lighting = (FloatBuffer) LightingBuffer.getData();
+			ByteBuffer PackedLighting = Pool.borrowByteBuffer(VertexCount * 2);
+			Lighting.rewind();
+			while (Lighting.hasRemaining()) {
+				PackedLighting.put((byte) Math.round(clamp(Lighting.get(), 0, 1) * 255));
+			}
+			PackedLighting.flip();
+			Packed.setBuffer(Type.TexCoord2, 2, Format.UnsignedByte, PackedLighting);
+			Packed.getBuffer(Type.TexCoord2).setNormalized(true);
+		}
+
+		IndexBuffer Indexes = Source.getIndexBuffer();
+		if (Indexes != null) {
+			int IndexCount = Indexes.size();
+			if (VertexCount < MAXIMUM_SHORT_INDEX) {
+				ShortBuffer PackedIndexes = Pool.borrowShortBuffer(IndexCount);
+				for (int i = 0; i < IndexCount; i++) {
+					PackedIndexes.put((short) Indexes.get(i));
+				}
+				PackedIndexes.flip();
+				Packed.setBuffer(Type.Index, 3, Format.UnsignedShort, PackedIndexes);
+			} else {
+				IntBuffer PackedIndexes = Pool.borrowIntBuffer(IndexCount);
+				for (int i = 0; i < IndexCount; i++) {
+					PackedIndexes.put(Indexes.get(i));
+				}
+				PackedIndexes.flip();
+				Packed.setBuffer(Type.Index, 3, Format.UnsignedInt, PackedIndexes);
+			}
+		}
+
+		Packed.updateBound();
+		Packed.setStatic();
+		return Packed;
+	}
+
+	/**
+	 * Wraps the Mesh in a Geometry scaled back to Chunk units.
+	 */
+	public static Geometry createGeometry(String Name, Mesh PackedMesh) {
+		Geometry geom = new Geometry(Name, PackedMesh);
+		geom.setLocalScale(DECODE_SCALE);
+		return geom;
+	}
+
+	private static short packPosition(float Value) {
+		return (short) Math.round(clamp(Value * POSITION_SCALE, Short.MIN_VALUE, Short.MAX_VALUE));
+	}
+
+	private static float clamp(float Value, float Min, float Max) {
+		return Math.max(Min, Math.min(Max, Value));
+	}
+
+	/**
+	 * Positions are shorts so the bound can not be computed by the Mesh
+	 */
+	@Override
+	public void updateBound() {
+		VertexBuffer PositionBuffer = getBuffer(Type.Position);
+		if (PositionBuffer == null)
+			return;
+
+		ShortBuffer Positions = (ShortBuffer) PositionBuffer.getData();
+		Vector3f Min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+		Vector3f Max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+
+		Positions.rewind();
+		while (Positions.remaining() >= 3) {
+			float x = Positions.get(), y = Positions.get(), z = Positions.get();
+			Min.set(Math.min(Min.x, x), Math.min(Min.y, y), Math.min(Min.z, z));
+			Max.set(Math.max(Max.x, x), Math.max(Max.y, y), Math.max(Max.z, z));
+		}
+		Positions.rewind();
+
+		if (Min.x <= Max.x)
+			setBound(new BoundingBox(Min, Max));
+	}
+
+	/**
+	 * The collision tree only reads float positions, so collisions are done
+	 * against an expanded copy built on first use.
+	 */
+	@Override
+	public int collideWith(Collidable other, Matrix4f worldMatrix, BoundingVolume worldBound, CollisionResults results) {
+		if (CollisionMesh == null)
+			CollisionMesh = expand();
+		return CollisionMesh.collideWith(other, worldMatrix, worldBound, results);
+	}
+
+	private Mesh expand() {
+		Mesh Expanded = new Mesh();
+		Expanded.setMode(getMode());
+
+		ShortBuffer Positions = (ShortBuffer) getBuffer(Type.Position).getData();
+		FloatBuffer ExpandedPositions = BufferUtils.createFloatBuffer(Positions.limit());
+		for (int i = 0; i < Positions.limit(); i++) {
+			ExpandedPositions.put(Positions.get(i));
+		}
+		ExpandedPositions.flip();
+		Expanded.setBuffer(Type.Position, 3, ExpandedPositions);
+
+		IndexBuffer Indexes = getIndexBuffer();
+		if (Indexes != null) {
+			IntBuffer ExpandedIndexes = BufferUtils.createIntBuffer(Indexes.size());
+			for (int i = 0; i < Indexes.size(); i++) {
+				ExpandedIndexes.put(Indexes.get(i));
+			}
+			ExpandedIndexes.flip();
+			Expanded.setBuffer(Type.Index, 3, ExpandedIndexes);
+		}
+
+		Expanded.updateBound();
+		Expanded.createCollisionData();
+		return Expanded;
+	}
+}
@@ -0,0 +1,300 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Map.Coordinates.BlockCoordinate;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.scene.Mesh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Chunk meshes kept on disk between sessions so a loaded game need only mesh
+ * the Chunks that changed. The file is an append only log of records, texture
+ * Atlas placements and meshes, each mesh is indexed by the Faces hash of the
+ * Chunk it was built from and its detail level. The full Faces key is stored
+ * beside the mesh and compared on load, so a Chunk whose hash collides with
+ * another never draws its mesh. Atlas records are replayed on open so the
+ * texture coordinates baked into the meshes stay valid, the log is started
+ * over if the Atlas of this session has diverged from it.
+ *
+ * Only the record headers are read on open, mesh data is read back when a
+ * TerrainBuilder asks for it.
+ *
+ * @author Impaler
+ */
+public class DiskMeshCache {
+
+	static final int MAGIC = 0x4B4D4331;  // KMC1
+	static final int FORMAT_VERSION = 5;  // Faces key, then one mesh with baked lighting and edge skirts
+	static final int HEADER_SIZE = 8;
+
+	static final byte RECORD_ATLAS = 1;
+	static final byte RECORD_MESH = 2;
+
+	// Nothing more is stored once the log grows beyond this, and a log found
+	// larger on open is started over, so the next session begins it afresh
+	public static final long MAXIMUM_FILE_SIZE = 512L * 1024 * 1024;
+
+	RandomAccessFile CacheFile;
+	ArrayList<HashMap<Long, Long>> MeshOffsets;  // By detail level
+	int AtlasRecords;
+	boolean Valid;
+
+	public DiskMeshCache() {
+		MeshOffsets = new ArrayList<HashMap<Long, Long>>(BlockCoordinate.CHUNK_DETAIL_LEVELS);
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			MeshOffsets.add(new HashMap<Long, Long>());
+		}
+		Valid = false;
+	}
+
+	/**
+	 * Opens the log and indexes all records in it, the Atlas must not yet hold
+	 * images the log does not know about or the log is discarded.
+	 */
+	public synchronized void open(File TargetFile) {
+		close();
+		try {
+			File Parent = TargetFile.getAbsoluteFile().getParentFile();
+			if (Parent != null && !Parent.exists())
+				Parent.mkdirs();
+
+			CacheFile = new RandomAccessFile(TargetFile, "rw");
+			Valid = true;
+			if (CacheFile.length() < HEADER_SIZE || CacheFile.length() > MAXIMUM_FILE_SIZE || !readHeader() || !indexRecords()) {
+				reset();
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			close();
+		}
+	}
+
+	public synchronized void close() {
+		if (CacheFile != null) {
+			try {
+				CacheFile.close();
+			} catch (IOException e) {
+				System.err.println(e.toString());
+			}
+		}
+		CacheFile = null;
+		Valid = false;
+		clearIndex();
+	}
+
+	public synchronized boolean isOpen() {
+		return Valid;
+	}
+
+	private boolean readHeader() throws IOException {
+		CacheFile.seek(0);
+		return CacheFile.readInt() == MAGIC && CacheFile.readInt() == FORMAT_VERSION;
+	}
+
+	private boolean indexRecords() throws IOException {
+		TextureManager Texturing = TextureManager.getTextureManager();
+		long Position = HEADER_SIZE;
+		long Length = CacheFile.length();
+
+		try {
+			while (Position < Length) {
+				CacheFile.seek(Position);
+				byte Type = CacheFile.readByte();
+
+				if (Type == RECORD_ATLAS) {
+					int AtlasKey = CacheFile.readInt();
+					if (!Texturing.replayAtlasKey(AtlasRecords, AtlasKey))
+						return false;
+					AtlasRecords++;
+				} else if (Type == RECORD_MESH) {
+					long Hash = CacheFile.readLong();
+					byte DetailLevel = CacheFile.readByte();
+					long DataOffset = CacheFile.getFilePointer();
+					int KeyLength = CacheFile.readInt();
+					CacheFile.seek(CacheFile.getFilePointer() + KeyLength);
+					int MeshLength = CacheFile.readInt();
+					CacheFile.seek(CacheFile.getFilePointer() + MeshLength);
+
+					if (CacheFile.getFilePointer() > Length)
+						break;  // Partial record from an interrupted write
+					MeshOffsets.get(DetailLevel).put(Hash, DataOffset);
+				} else {
+					break;
+				}
+				Position = CacheFile.getFilePointer();
+			}
+		} catch (EOFException e) {
+			// Partial record, truncated below
+		} catch (IOException e) {
+			return false;
+		} catch (IndexOutOfBoundsException e) {
+			return false;
+		}
+
+		CacheFile.setLength(Position);
+		return true;
+	}
+
+	private void reset() throws IOException {
+		clearIndex();
+		CacheFile.setLength(0);
+		CacheFile.seek(0);
+		CacheFile.writeInt(MAGIC);
+		CacheFile.writeInt(FORMAT_VERSION);
+	}
+
+	private void clearIndex() {
+		for (HashMap<Long, Long> Offsets : MeshOffsets) {
+			Offsets.clear();
+		}
+		AtlasRecords = 0;
+	}
+
+	public synchronized boolean contains(long Hash, int DetailLevel) {
+		return Valid && MeshOffsets.get(DetailLevel).containsKey(Hash);
+	}
+
+	/**
+	 * Reads back the Mesh stored for the hash and detail level, returns null if
+	 * nothing is stored or what is stored was built from Faces other then Key.
+	 */
+	public Mesh load(long Hash, long[] Key, int DetailLevel) {
+		byte[] KeyData = encodeKey(Key);
+		byte[] MeshData;
+
+		synchronized (this) {
+			if (!Valid)
+				return null;
+			Long Offset = MeshOffsets.get(DetailLevel).get(Hash);
+			if (Offset == null)
+				return null;
+
+			try {
+				CacheFile.seek(Offset);
+				byte[] StoredKey = new byte[CacheFile.readInt()];
+				if (StoredKey.length != KeyData.length)
+					return null;
+				CacheFile.readFully(StoredKey);
+				if (!Arrays.equals(StoredKey, KeyData))
+					return null;
+
+				MeshData = new byte[CacheFile.readInt()];
+				CacheFile.readFully(MeshData);
+			} catch (IOException e) {
+				System.err.println(e.toString());
+				MeshOffsets.get(DetailLevel).remove(Hash);
+				return null;
+			}
+		}
+
+		try {
+			return readMesh(MeshData);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Appends the Mesh of one detail level of a Chunk, Atlas placements made
+	 * since the last record are written first so they always precede the
+	 * meshes whose texture coordinates depend on them. Key is the full Faces
+	 * key the hash was taken from.
+	 */
+	public void store(long Hash, long[] Key, int DetailLevel, Mesh TerrainMesh) {
+		if (TerrainMesh == null || contains(Hash, DetailLevel))
+			return;
+
+		byte[] KeyData = encodeKey(Key);
+		byte[] MeshData;
+		try {
+			MeshData = writeMesh(TerrainMesh);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			return;
+		}
+
+		synchronized (this) {
+			if (!Valid || MeshOffsets.get(DetailLevel).containsKey(Hash))
+				return;
+
+			try {
+				if (CacheFile.length() > MAXIMUM_FILE_SIZE)
+					return;
+
+				CacheFile.seek(CacheFile.length());
+				TextureManager Texturing = TextureManager.getTextureManager();
+				int AtlasCount = Texturing.getAtlasKeyCount();
+				while (AtlasRecords < AtlasCount) {
+					CacheFile.writeByte(RECORD_ATLAS);
+					CacheFile.writeInt(Texturing.getAtlasKey(AtlasRecords));
+					AtlasRecords++;
+				}
+
+				CacheFile.writeByte(RECORD_MESH);
+				CacheFile.writeLong(Hash);
+				CacheFile.writeByte(DetailLevel);
+				long DataOffset = CacheFile.getFilePointer();
+				CacheFile.writeInt(KeyData.length);
+				CacheFile.write(KeyData);
+				CacheFile.writeInt(MeshData.length);
+				CacheFile.write(MeshData);
+
+				MeshOffsets.get(DetailLevel).put(Hash, DataOffset);
+			} catch (IOException e) {
+				System.err.println(e.toString());
+				close();
+			}
+		}
+	}
+
+	private static byte[] encodeKey(long[] Key) {
+		ByteBuffer Data = ByteBuffer.allocate(Key.length * 8);
+		Data.asLongBuffer().put(Key);
+		return Data.array();
+	}
+
+	private static byte[] writeMesh(Mesh TargetMesh) throws IOException {
+		if (TargetMesh == null)
+			return new byte[0];
+
+		ByteArrayOutputStream Output = new ByteArrayOutputStream();
+		BinaryExporter.getInstance().save(TargetMesh, Output);
+		return Output.toByteArray();
+	}
+
+	private static Mesh readMesh(byte[] Data) throws IOException {
+		if (Data.length == 0)
+			return null;
+
+		return (Mesh) BinaryImporter.getInstance().load(new ByteArrayInputStream(Data));
+	}
+}
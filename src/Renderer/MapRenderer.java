@@ -18,6 +18,7 @@
 package Renderer;
 
 import Game.Game;
+import Game.Weather;
 
 import Map.Coordinates.ChunkCoordinate;
 import Map.Coordinates.BlockCoordinate;
@@ -32,7 +33,6 @@ import com.jme3.light.AmbientLight;
 
 import com.jme3.math.ColorRGBA;
 import com.jme3.scene.Node;
-import com.jme3.scene.Spatial;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
@@ -53,15 +53,13 @@ public class MapRenderer extends AbstractAppState {
 	ExecutorService Executor;
 
 	Node MapNode = null;
-	Node sunnyterrainNode = null;
-	Node darkterrainNode = null;
+	Node terrainNode = null;
 	TileBuilder builder;
+	Weather SunWeather;
 	//Game game;
 
-	ConcurrentHashMap<ChunkCoordinate, Node> LightChunkNodeMap;
-	ConcurrentHashMap<ChunkCoordinate, Node> DarkChunkNodeMap;
-	TIntObjectMap<Node> ZMapLight;
-	TIntObjectMap<Node> ZMapDark;
+	ConcurrentHashMap<ChunkCoordinate, Node> ChunkNodeMap;
+	TIntObjectMap<Node> ZMap;
 
 	Semaphore semaphore;
 	boolean SunnyRendering, DarkRendering;
@@ -72,10 +70,8 @@ public class MapRenderer extends AbstractAppState {
 	public MapRenderer(ExecutorService Threadpool) {
 		Executor = Threadpool;
 
-		LightChunkNodeMap = new ConcurrentHashMap<ChunkCoordinate, Node>();
-		DarkChunkNodeMap = new ConcurrentHashMap<ChunkCoordinate, Node>();
-		ZMapLight = new TIntObjectHashMap<Node>();
-		ZMapDark = new TIntObjectHashMap<Node>();
+		ChunkNodeMap = new ConcurrentHashMap<ChunkCoordinate, Node>();
+		ZMap = new TIntObjectHashMap<Node>();
 		builder = new TileBuilder();
 
 		semaphore = new Semaphore(1);
@@ -95,47 +91,42 @@ public class MapRenderer extends AbstractAppState {
 		this.MapNode = new Node("MapNode");
 		this.app.getRootNode().attachChild(MapNode);
 
-		darkterrainNode = new Node("DarkTerrainNode");
-		sunnyterrainNode = new Node("SunnyTerrainNode");
-		MapNode.attachChild(darkterrainNode);
-		MapNode.attachChild(sunnyterrainNode);
+		// Sunlight and ambient occlusion are baked into the Terrain meshes, the
+		// lights here only reach the Actors standing on it
+		terrainNode = new Node("TerrainNode");
+		MapNode.attachChild(terrainNode);
 
 		ColorRGBA Suncolor = ColorRGBA.White;
-		AmbientLight Darkglow = new AmbientLight();
-		Darkglow.setColor(Suncolor.mult(1.8f));
-		darkterrainNode.addLight(Darkglow);
+		AmbientLight Glow = new AmbientLight();
+		Glow.setColor(Suncolor.mult(1.8f));
+		terrainNode.addLight(Glow);
 
-		AmbientLight Lightglow = new AmbientLight();
-		Lightglow.setColor(Suncolor.mult(1.8f));
-		sunnyterrainNode.addLight(Lightglow);
-
-		TargetGame.getWeather().attatchSun(sunnyterrainNode);
+		SunWeather = TargetGame.getWeather();
+		SunWeather.resetSun();
 	}
 
 	public void detachFromGame() {
 		//this.game = null;
 		MapNode = null;
-		darkterrainNode = null;
-		sunnyterrainNode = null;
+		terrainNode = null;
+		SunWeather = null;
 
-		LightChunkNodeMap.clear();
-		DarkChunkNodeMap.clear();
-		ZMapLight.clear();
-		ZMapDark.clear();
+		ChunkNodeMap.clear();
+		ZMap.clear();
 	}
 
-	public Node getChunkNodeLight(ChunkCoordinate TargetCoordinates) {
+	public Node getChunkNode(ChunkCoordinate TargetCoordinates) {
 		Node ChunkNode = null;
 		try {  // Semaphore prevents multiple copies of the same Chunk node from being created
 			semaphore.acquire();
 			try {
-				ChunkNode = LightChunkNodeMap.get(TargetCoordinates);
+				ChunkNode = ChunkNodeMap.get(TargetCoordinates);
 				if (ChunkNode == null) {
-					ChunkNode = new Node("LightNode" + TargetCoordinates.toString());
+					ChunkNode = new Node("ChunkNode" + TargetCoordinates.toString());
 					ChunkNode.move(TargetCoordinates.getVector());
 
-					getZNodeLight(TargetCoordinates.Z).attachChild(ChunkNode);
-					LightChunkNodeMap.put(TargetCoordinates, ChunkNode);
+					getZNode(TargetCoordinates.Z).attachChild(ChunkNode);
+					ChunkNodeMap.put(TargetCoordinates, ChunkNode);
 				}
 			} finally {
 				semaphore.release();
@@ -148,50 +139,15 @@ public class MapRenderer extends AbstractAppState {
 		return ChunkNode;
 	}
 
-	public Node getChunkNodeDark(ChunkCoordinate TargetCoordinates) {
-		Node ChunkNode = DarkChunkNodeMap.get(TargetCoordinates);
-		try {  // Semaphore prevents multiple copies of the same Chunk node from being created
-			semaphore.acquire();
-			try {
-				if (ChunkNode == null) {
-					ChunkNode = new Node("DarkChunkNode");
-					ChunkNode.move(TargetCoordinates.getVector());
-
-					getZNodeDark(TargetCoordinates.Z).attachChild(ChunkNode);
-					DarkChunkNodeMap.put(TargetCoordinates, ChunkNode);
-				}
-			} finally {
-				semaphore.release();
-			}
-		} catch (final InterruptedException e) {
-			System.err.println(e.getLocalizedMessage());
-			System.err.println(e.getMessage());
-			System.err.println(e.toString());
-		}
-		return ChunkNode;
-	}
-
-	public Node getZNodeLight(int zlevel) {
+	public Node getZNode(int zlevel) {
 		//TODO use a primite equipped map to eliminate Integer
-		Node targetnode = ZMapLight.get(zlevel);
+		Node targetnode = ZMap.get(zlevel);
 		if (targetnode == null) {
 
-			targetnode = new Node("ZMapLightNode");
+			targetnode = new Node("ZMapNode");
 			targetnode.move(0, 0, zlevel);
-			ZMapLight.put(zlevel, targetnode);
-			sunnyterrainNode.attachChild(targetnode);
-		}
-		return targetnode;
-	}
-
-	public Node getZNodeDark(int zlevel) {
-		Node targetnode = ZMapDark.get(zlevel);
-		if (targetnode == null) {
-
-			targetnode = new Node("ZMapDarkNode");
-			targetnode.move(0, 0, zlevel);
-			ZMapDark.put(zlevel, targetnode);
-			darkterrainNode.attachChild(targetnode);
+			ZMap.put(zlevel, targetnode);
+			terrainNode.attachChild(targetnode);
 		}
 		return targetnode;
 	}
@@ -213,38 +169,33 @@ public class MapRenderer extends AbstractAppState {
 		}
 	}
 
+	/**
+	 * Sunlit and dark Faces share one mesh, the Terrain material discards
+	 * whichever is hidden.
+	 */
 	public void setSunnyRendering(boolean SunnyRendering) {
 		this.SunnyRendering = SunnyRendering;
-		if (SunnyRendering) {
-			sunnyterrainNode.setCullHint(Spatial.CullHint.Dynamic);
-		} else {
-			sunnyterrainNode.setCullHint(Spatial.CullHint.Always);
-		}
+		TextureManager.getTextureManager().setSunlitVisible(SunnyRendering);
 	}
 
 	public void setDarkRendering(boolean DarkRendering) {
 		this.DarkRendering = DarkRendering;
-		if (DarkRendering) {
-			darkterrainNode.setCullHint(Spatial.CullHint.Dynamic);
-		} else {
-			darkterrainNode.setCullHint(Spatial.CullHint.Always);
-		}
+		TextureManager.getTextureManager().setDarkVisible(DarkRendering);
 	}
 
 	public Node getMapNode() {
 		return MapNode;
 	}
 
-	public Node getSunTerrainNode() {
-		return sunnyterrainNode;
-	}
-
-	public Node getDarkTerrainNode() {
-		return darkterrainNode;
+	public Node getTerrainNode() {
+		return terrainNode;
 	}
 
 	@Override
 	public void update(float tpf) {
+		if (SunWeather != null)
+			TextureManager.getTextureManager().setSun(SunWeather.getSunDirection(), SunWeather.getSunColor());
+
 		if (DirtySlice) {
 			DirtySlice = false;
 			MapSlicer Slicer = new MapSlicer(app, this);
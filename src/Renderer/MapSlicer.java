@@ -48,21 +48,9 @@ public class MapSlicer implements Callable<Void>{
 				Top = renderer.Top;
 				Bottom = renderer.Bottom;
 
-				TIntObjectMap<Node> ZMapLight = renderer.ZMapLight;
-				TIntObjectMap<Node> ZMapDark =  renderer.ZMapDark;
+				TIntObjectMap<Node> ZMap = renderer.ZMap;
 
-				for (Node targetnode : ZMapLight.valueCollection()) {
-					float Z = targetnode.getLocalTranslation().getZ();
-					float ChunkBottom = (Z * BlockCoordinate.CHUNK_EDGE_SIZE);
-					float ChunkTop = ChunkBottom + BlockCoordinate.CHUNK_EDGE_SIZE;
-					if (ChunkBottom <= Top && Bottom <= ChunkTop && renderer.SunnyRendering) {
-						targetnode.setCullHint(Spatial.CullHint.Inherit);
-					} else {
-						targetnode.setCullHint(Spatial.CullHint.Always);
-					}
-				}
-
-				for (Node targetnode : ZMapDark.valueCollection()) {
+				for (Node targetnode : ZMap.valueCollection()) {
 					float Z = targetnode.getLocalTranslation().getZ();
 					float ChunkBottom = (Z * BlockCoordinate.CHUNK_EDGE_SIZE);
 					float ChunkTop = ChunkBottom + BlockCoordinate.CHUNK_EDGE_SIZE;
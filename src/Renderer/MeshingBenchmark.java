@@ -0,0 +1,291 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Data.DataManager;
+
+import Map.BlockShape;
+import Map.Chunk;
+import Map.GameMap;
+import Map.Sector;
+import Map.TileBuilder;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.SectorCoordinate;
+
+import Terrain.Geology;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.scene.Mesh;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/**
+ * Measures Face building and terrain meshing without a display or graphics
+ * card, on a seeded Geology world and on synthetic worst case Chunks. Run from
+ * the project directory so the assets folder is found.
+ *
+ * Arguments, all optional: seed, world edge in Chunks, measured iterations.
+ *
+ * @author Impaler
+ */
+public class MeshingBenchmark {
+
+	static final int WARMUP_ITERATIONS = 1;
+
+	/**
+	 * Timings and counts of one scenario, summed over the measured iterations.
+	 */
+	static class Result {
+
+		String Name;
+		int Chunks;
+		long[] FaceNanos = new long[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		long[] MeshNanos = new long[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		long[] Faces = new long[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		long[] Vertices = new long[BlockCoordinate.CHUNK_DETAIL_LEVELS];
+		long AllocatedBytes;
+
+		Result(String ScenarioName) {
+			Name = ScenarioName;
+		}
+	}
+
+	interface Scenario {
+
+		String getName();
+
+		GameMap buildMap();
+	}
+
+	int Seed;
+	int WorldSize;
+	int Iterations;
+	TileBuilder Tiles;
+
+	public MeshingBenchmark(int BenchmarkSeed, int Size, int MeasuredIterations) {
+		Seed = BenchmarkSeed;
+		WorldSize = Size;
+		Iterations = MeasuredIterations;
+		Tiles = new TileBuilder();
+	}
+
+	public static void main(String[] args) {
+		int Seed = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		int Size = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int Iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		DataManager.getDataManager().initialize();
+
+		DesktopAssetManager Assets = new DesktopAssetManager(true);
+		Assets.registerLocator("assets/", FileLocator.class);
+		ImageManager.getImageManager().initialize(Assets);
+		TextureManager.getTextureManager().initialize(Assets);
+
+		MeshingBenchmark Benchmark = new MeshingBenchmark(Seed, Size, Iterations);
+		Benchmark.run(Benchmark.geologyScenario());
+		Benchmark.run(Benchmark.checkerboardScenario());
+		Benchmark.run(Benchmark.slopeScenario());
+	}
+
+	public void run(Scenario Target) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			measure(Target, new Result(Target.getName()));
+		}
+
+		Result Totals = new Result(Target.getName());
+		for (int i = 0; i < Iterations; i++) {
+			measure(Target, Totals);
+		}
+		report(Totals);
+	}
+
+	private void measure(Scenario Target, Result Totals) {
+		GameMap Map = Target.buildMap();
+
+		ArrayList<Chunk> Chunks = new ArrayList<Chunk>();
+		for (Sector TargetSector : Map.getSectorCollection()) {
+			Chunks.addAll(TargetSector.getChunkCollection());
+		}
+
+		long AllocatedBefore = allocatedBytes();
+		for (Chunk TargetChunk : Chunks) {
+			for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+				long Start = System.nanoTime();
+				TargetChunk.buildFaces(Map, i);
+				Totals.FaceNanos[i] += System.nanoTime() - Start;
+				Totals.Faces[i] += TargetChunk.getFaces(i).size();
+			}
+
+			TerrainBuilder Builder = new TerrainBuilder(null, TargetChunk, Tiles, null);
+			for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+				if (TargetChunk.getFaces(i).isEmpty())
+					continue;
+
+				long Start = System.nanoTime();
+				Mesh Built = Builder.meshFaces(i);
+				Totals.MeshNanos[i] += System.nanoTime() - Start;
+
+				if (Built != null) {
+					Totals.Vertices[i] += Built.getVertexCount();
+					BufferPool.getBufferPool().release(Built);
+				}
+			}
+		}
+		long AllocatedAfter = allocatedBytes();
+
+		Totals.Chunks += Chunks.size();
+		if (AllocatedBefore >= 0 && AllocatedAfter >= 0)
+			Totals.AllocatedBytes += AllocatedAfter - AllocatedBefore;
+	}
+
+	private void report(Result Totals) {
+		long Faces = 0, Vertices = 0, FaceNanos = 0, MeshNanos = 0;
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			Faces += Totals.Faces[i];
+			Vertices += Totals.Vertices[i];
+			FaceNanos += Totals.FaceNanos[i];
+			MeshNanos += Totals.MeshNanos[i];
+		}
+
+		System.out.println("== " + Totals.Name + " ==  Chunks " + Totals.Chunks / Math.max(Iterations, 1) + "  Iterations " + Iterations);
+		System.out.println(String.format("  faces/sec %.0f  vertices/sec %.0f  heap bytes/chunk %d",
+				perSecond(Faces, FaceNanos + MeshNanos), perSecond(Vertices, MeshNanos),
+				Totals.Chunks > 0 ? Totals.AllocatedBytes / Totals.Chunks : 0));
+
+		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
+			if (Totals.Faces[i] == 0)
+				continue;
+			System.out.println(String.format("  LOD %d  faces %8d  vertices %8d  build faces %8.2f ms  mesh %8.2f ms",
+					i, Totals.Faces[i] / Iterations, Totals.Vertices[i] / Iterations,
+					Totals.FaceNanos[i] / (Iterations * 1e6), Totals.MeshNanos[i] / (Iterations * 1e6)));
+		}
+	}
+
+	private static double perSecond(long Count, long Nanos) {
+		return Nanos > 0 ? Count * 1e9 / Nanos : 0;
+	}
+
+	/**
+	 * Heap bytes allocated by this thread so far, or -1 where the JVM can not
+	 * tell.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean Bean = ManagementFactory.getThreadMXBean();
+		if (Bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) Bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	/**
+	 * The world a new game would have for the seed, without Faces.
+	 */
+	Scenario geologyScenario() {
+		return new Scenario() {
+
+			public String getName() {
+				return "Geology seed " + Seed + " " + WorldSize + "x" + WorldSize;
+			}
+
+			public GameMap buildMap() {
+				Geology MapGeology = new Geology();
+				MapGeology.initialize(Seed);
+				MapGeology.generateWorldHeightMap(WorldSize, WorldSize);
+
+				GameMap Map = new GameMap(Seed);
+				MapGeology.loadMapChunks(Map, 0, 0, WorldSize, WorldSize);
+				Map.generateFirstLight();
+				return Map;
+			}
+		};
+	}
+
+	/**
+	 * Alternating solid and empty Blocks, the most Faces a Chunk can have.
+	 */
+	Scenario checkerboardScenario() {
+		return new Scenario() {
+
+			public String getName() {
+				return "Checkerboard";
+			}
+
+			public GameMap buildMap() {
+				BlockShape Solid = new BlockShape(BlockShape.CUBE_TOP_HEIGHT);
+				BlockShape Empty = new BlockShape(BlockShape.BELOW_CUBE_HEIGHT);
+
+				GameMap Map = new GameMap(Seed);
+				Chunk TargetChunk = syntheticChunk(Map);
+				for (byte DetailLevel = 0; DetailLevel < BlockCoordinate.CHUNK_DETAIL_LEVELS; DetailLevel++) {
+					for (BlockCoordinate Index = new BlockCoordinate(DetailLevel); !Index.end(); Index.next()) {
+						boolean Filled = ((Index.getX() + Index.getY() + Index.getZ()) & 1) == 0;
+						TargetChunk.setBlockShape(Index, Filled ? Solid : Empty);
+					}
+				}
+				Map.generateFirstLight();
+				return Map;
+			}
+		};
+	}
+
+	/**
+	 * Every Block a slope of varying corner heights, each with its own Face
+	 * inside the Block and many distinct FaceShapes.
+	 */
+	Scenario slopeScenario() {
+		return new Scenario() {
+
+			public String getName() {
+				return "All slopes";
+			}
+
+			public GameMap buildMap() {
+				GameMap Map = new GameMap(Seed);
+				Chunk TargetChunk = syntheticChunk(Map);
+				int Heights = BlockShape.CUBE_TOP_HEIGHT - BlockShape.CUBE_BOTTOM_HEIGHT + 1;
+
+				for (byte DetailLevel = 0; DetailLevel < BlockCoordinate.CHUNK_DETAIL_LEVELS; DetailLevel++) {
+					for (BlockCoordinate Index = new BlockCoordinate(DetailLevel); !Index.end(); Index.next()) {
+						byte SouthEast = (byte) (BlockShape.CUBE_BOTTOM_HEIGHT + (Index.getX() + Index.getZ()) % Heights);
+						byte NorthWest = (byte) (BlockShape.CUBE_BOTTOM_HEIGHT + (Index.getY() + Index.getZ()) % Heights);
+						BlockShape Slope = new BlockShape(BlockShape.CUBE_TOP_HEIGHT, SouthEast, NorthWest, BlockShape.CUBE_BOTTOM_HEIGHT, (byte) 0);
+						TargetChunk.setBlockShape(Index, Slope);
+					}
+				}
+				Map.generateFirstLight();
+				return Map;
+			}
+		};
+	}
+
+	private static Chunk syntheticChunk(GameMap Map) {
+		Sector TargetSector = Map.getSector(new SectorCoordinate((byte) 0, (byte) 0));
+		Chunk TargetChunk = TargetSector.getChunk(new ChunkCoordinate(0, 0, 0));
+
+		short Granite = DataManager.getLabelIndex("MATERIAL_GRANITE");
+		for (byte DetailLevel = 0; DetailLevel < BlockCoordinate.CHUNK_DETAIL_LEVELS; DetailLevel++) {
+			for (BlockCoordinate Index = new BlockCoordinate(DetailLevel); !Index.end(); Index.next()) {
+				TargetChunk.setBlockMaterial(Index, Granite);
+			}
+		}
+		return TargetChunk;
+	}
+}
@@ -0,0 +1,173 @@
+/* Copyright 2010 Kenneth 'Impaler' Ferland
+
+ This file is part of Khazad.
+
+ Khazad is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Khazad is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Khazad.  If not, see <http://www.gnu.org/licenses/> */
+
+package Renderer;
+
+import Map.Chunk;
+import Map.ChunkVisibility;
+import Map.GameMap;
+import Map.Sector;
+import Map.Coordinates.Axis;
+import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.ChunkCoordinate;
+import Map.Coordinates.Direction;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Determines which Chunks can possibly be seen from the Camera by walking the
+ * ChunkVisibility graphs of the Map. The walk starts at the Chunks cut by the
+ * top slice and the Chunks open to the sky, and then moves downward and sideways
+ * only through Chunk faces that see each other, the Camera is always above the
+ * Map so no walk ever needs to go upward. Chunks never reached are buried and
+ * need not be built or drawn.
+ *
+ * The result is only recalculated when the slice moves or some Chunks
+ * visibility graph changes, so frustum swaps can query it cheaply.
+ *
+ * @author Impaler
+ */
+public class OcclusionCuller {
+
+	private static final int[] EXIT_FACES = {
+		ChunkVisibility.FACE_DOWN,
+		ChunkVisibility.FACE_NORTH,
+		ChunkVisibility.FACE_SOUTH,
+		ChunkVisibility.FACE_EAST,
+		ChunkVisibility.FACE_WEST
+	};
+
+	// Faces through which each reached Chunk has been entered
+	HashMap<ChunkCoordinate, Integer> EnteredFaces;
+	ArrayDeque<Chunk> OpenChunks;
+	ArrayDeque<Integer> OpenFaces;
+
+	int CulledSlice;
+	int CulledRevision;
+	boolean Valid;
+	boolean Enabled;
+
+	public OcclusionCuller() {
+		EnteredFaces = new HashMap<ChunkCoordinate, Integer>();
+		OpenChunks = new ArrayDeque<Chunk>();
+		OpenFaces = new ArrayDeque<Integer>();
+		Valid = false;
+		Enabled = true;
+	}
+
+	/**
+	 * Recalculates the visible Chunk set if the slice or any visibility graph
+	 * has changed since the last call, returns true if the set was rebuilt.
+	 */
+	public boolean update(GameMap map, int SliceTop) {
+		int Revision = map.getVisibilityRevision();
+		if (Valid && SliceTop == CulledSlice && Revision == CulledRevision)
+			return false;
+
+		CulledSlice = SliceTop;
+		CulledRevision = Revision;
+		Valid = true;
+
+		EnteredFaces.clear();
+		OpenChunks.clear();
+		OpenFaces.clear();
+
+		int SliceChunk = SliceTop / BlockCoordinate.CHUNK_EDGE_SIZE;
+		if (SliceTop < 0 && SliceTop % BlockCoordinate.CHUNK_EDGE_SIZE != 0)
+			SliceChunk--;
+
+		// Seed with the sliced Chunks and those under open sky
+		ChunkCoordinate AboveCoords = new ChunkCoordinate();
+		for (Sector targetSector : map.getSectorCollection()) {
+			for (Chunk targetChunk : targetSector.getChunkCollection()) {
+				ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
+				if (Coords.Z == SliceChunk) {
+					enterChunk(targetChunk, Coords, ChunkVisibility.ALL_FACES, SliceChunk);
+				} else if (Coords.Z < SliceChunk) {
+					AboveCoords.copy(Coords);
+					AboveCoords.Z++;
+					if (map.getChunk(AboveCoords) == null)
+						enterChunk(targetChunk, Coords, 1 << ChunkVisibility.FACE_UP, SliceChunk);
+				}
+			}
+		}
+
+		ChunkCoordinate NeighborCoords = new ChunkCoordinate();
+		while (!OpenChunks.isEmpty()) {
+			Chunk CurrentChunk = OpenChunks.poll();
+			int Entry = OpenFaces.poll();
+
+			ChunkVisibility Visibility = CurrentChunk.getVisibility();
+			int Exits;
+			if (Entry == ChunkVisibility.ALL_FACES) {
+				Exits = Visibility.getOpenFaces();  // Interior is exposed by the slice
+			} else {
+				Exits = Visibility.getVisibleFaces(Entry);
+			}
+
+			ChunkCoordinate Coords = CurrentChunk.getChunkCoordinates();
+			for (int Face : EXIT_FACES) {
+				if ((Exits & (1 << Face)) == 0)
+					continue;
+
+				Direction ExitDirection = Direction.AXIAL_DIRECTIONS[Face];
+				NeighborCoords.X = (short) (Coords.X + ExitDirection.getValueonAxis(Axis.AXIS_X));
+				NeighborCoords.Y = (short) (Coords.Y + ExitDirection.getValueonAxis(Axis.AXIS_Y));
+				NeighborCoords.Z = (short) (Coords.Z + ExitDirection.getValueonAxis(Axis.AXIS_Z));
+
+				Chunk Neighbor = map.getChunk(NeighborCoords);
+				if (Neighbor != null)
+					enterChunk(Neighbor, Neighbor.getChunkCoordinates(), 1 << ChunkVisibility.getOppositeFace(Face), SliceChunk);
+			}
+		}
+		return true;
+	}
+
+	private void enterChunk(Chunk TargetChunk, ChunkCoordinate Coords, int Faces, int SliceChunk) {
+		if (Coords.Z > SliceChunk)
+			return;
+
+		Integer Previous = EnteredFaces.get(Coords);
+		int OldFaces = Previous != null ? Previous.intValue() : 0;
+		int NewFaces = Faces & ~OldFaces;
+
+		if (NewFaces != 0) {
+			EnteredFaces.put(Coords, OldFaces | NewFaces);
+			OpenChunks.add(TargetChunk);
+			OpenFaces.add(Faces == ChunkVisibility.ALL_FACES ? Faces : NewFaces);
+		}
+	}
+
+	public boolean isChunkVisible(ChunkCoordinate Coords) {
+		if (!Enabled || !Valid)
+			return true;
+		return EnteredFaces.containsKey(Coords);
+	}
+
+	public void invalidate() {
+		Valid = false;
+	}
+
+	public void setEnabled(boolean NewValue) {
+		Enabled = NewValue;
+	}
+
+	public boolean isEnabled() {
+		return Enabled;
+	}
+}
@@ -52,7 +52,6 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.VertexBuffer;
-import com.jme3.util.BufferUtils;
 
 import java.util.HashMap;
 import java.util.BitSet;
@@ -107,6 +106,8 @@ public class PathingRenderer extends AbstractAppState {
 		Node PathRenderingNode = new Node("PathRenderingNode");
 		MovementModality Mod = new MovementModality(MovementModality.MovementType.MOVEMENT_TYPE_WALK, 1, 1);
 
+		BufferPool Pool = BufferPool.getBufferPool();
+		ArrayList<Mesh> WireMeshes = new ArrayList<Mesh>();
 		ChunkCoordinate ChunkCoords = TargetChunk.getChunkCoordinates();
 
 		for (BlockCoordinate Index = new BlockCoordinate(); !Index.end(); Index.next()) {
@@ -139,8 +140,9 @@ public class PathingRenderer extends AbstractAppState {
 					indexes[i] = Indexes.get(i).intValue();
 				}
 
-				EdgeWires.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-				EdgeWires.setBuffer(VertexBuffer.Type.Index, 2, BufferUtils.createIntBuffer(indexes));
+				EdgeWires.setBuffer(VertexBuffer.Type.Position, 3, Pool.borrowFloatBuffer(vertices));
+				EdgeWires.setBuffer(VertexBuffer.Type.Index, 2, Pool.borrowIntBuffer(indexes));
+				WireMeshes.add(EdgeWires);
 				EdgeWires.updateBound();
 
 				Geometry Wires = new Geometry("Connection Wires", EdgeWires);
@@ -151,6 +153,9 @@ public class PathingRenderer extends AbstractAppState {
 		}
 
 		GeometryBatchFactory.optimize(PathRenderingNode, true);
+		for (Mesh Wires : WireMeshes) {
+			Pool.release(Wires);
+		}
 		if (PathRenderingNode.getQuantity() > 0) {
 			Spatial ConnectionRendering = PathRenderingNode.getChild(0);
 			PathRenderingNode.setName("Connection Rendering" + ChunkCoords.toString());
@@ -165,13 +170,15 @@ public class PathingRenderer extends AbstractAppState {
 			ChunkCoordinate Coords = target.getChunkCoordinates();
 
 			MapRenderer Renderer = state.getState(MapRenderer.class);
-			Node ChunkNode = Renderer.getChunkNodeLight(Coords);
+			Node ChunkNode = Renderer.getChunkNode(Coords);
 			Spatial ConnectivityNode = ChunkNode.getChild("Connection Rendering" + Coords.toString());
 
 			if (target.isPathingRenderingDirty()) {
 				Node NewConnectivity = buildRendering(target);
-				if (ConnectivityNode != null)
+				if (ConnectivityNode != null) {
 					ChunkNode.detachChild(ConnectivityNode);
+					BufferPool.getBufferPool().releaseMeshes(ConnectivityNode);
+				}
 				if (NewConnectivity != null) {
 					ChunkNode.attachChild(NewConnectivity);
 				}
@@ -188,7 +195,7 @@ public class PathingRenderer extends AbstractAppState {
 		for (Chunk target : chunks) {
 			ChunkCoordinate Coords = target.getChunkCoordinates();
 			MapRenderer Renderer = state.getState(MapRenderer.class);
-			Node ChunkNode = Renderer.getChunkNodeLight(Coords);
+			Node ChunkNode = Renderer.getChunkNode(Coords);
 			Spatial ConnectivityNode = ChunkNode.getChild("Connection Rendering" + Coords.toString());
 
 			if (ConnectivityNode != null) {
@@ -143,10 +143,13 @@ public class SelectionRenderer extends AbstractAppState {
 
 		int[] indexes = {0, 1, 1, 2, 2, 3, 3, 0, 0, 4, 1, 5, 2, 6, 3, 7, 4, 5, 5, 6, 6, 7, 7, 4};
 
-		WireBoxMesh.setBuffer(VertexBuffer.Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-		WireBoxMesh.setBuffer(VertexBuffer.Type.Index, 2, BufferUtils.createIntBuffer(indexes));
+		BufferPool Pool = BufferPool.getBufferPool();
+		WireBoxMesh.setBuffer(VertexBuffer.Type.Position, 3, Pool.borrowFloatBuffer(vertices));
+		WireBoxMesh.setBuffer(VertexBuffer.Type.Index, 2, Pool.borrowIntBuffer(indexes));
 		WireBoxMesh.updateBound();
 
+		if (SelectionBox != null)
+			Pool.release(SelectionBox.getMesh());
 		SelectionBox = new Geometry("Camera Mouse Box", WireBoxMesh);
 		SelectionBox.setMaterial(mark_mat);
 	}
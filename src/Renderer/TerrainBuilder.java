@@ -30,10 +30,14 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
 import com.jme3.scene.control.LodControl;
 
 import jme3tools.optimize.GeometryBatchFactory;
 
+import java.nio.FloatBuffer;
+
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -41,114 +45,286 @@ import java.util.concurrent.Callable;
 
 /**
  * Callable class that creates a optimized mesh for a Chunk and swaps it into
- * the Scene graph.
+ * the Scene graph, the new Geometry replaces that held by the Chunks
+ * ChunkGeometry.
  *
  * @author Impaler
  */
 public class TerrainBuilder implements Callable<Void> {
 
+	// Light lost per solid Block around a vertex beyond the four under a flat floor
+	static final float OCCLUSION_STEP = 0.2f;
+
 	Chunk BuildChunk;
 	TileBuilder TileSource;
 	Application app;
-	Node TerrainLight, TerrainDark, ChunkLight, ChunkDark;
-	Geometry[] LightBuildGeometry, DarkBuildGeometry;
-	int DetailLevel;
+	Node ChunkNode;
+	Geometry[] BuildGeometry;
+	ChunkGeometry Handles;
 	Spatial.CullHint hint;
+	ChunkMeshCache MeshCache;
+	DiskMeshCache DiskCache;
+	boolean[] SolidBlocks;
 
-	public TerrainBuilder(Application Parentapp, Chunk TargetChunk, TileBuilder Tiles, int LevelofDetail) {
+	public TerrainBuilder(Application Parentapp, Chunk TargetChunk, TileBuilder Tiles, ChunkGeometry GeometryHandles) {
 		this.app = Parentapp;
 		this.BuildChunk = TargetChunk;
 		this.TileSource = Tiles;
-		this.DetailLevel = LevelofDetail;
-		
-		this.LightBuildGeometry = new Geometry[BlockCoordinate.CHUNK_DETAIL_LEVELS];
-		this.DarkBuildGeometry = new Geometry[BlockCoordinate.CHUNK_DETAIL_LEVELS];		
+		this.Handles = GeometryHandles;
+
+		this.BuildGeometry = new Geometry[BlockCoordinate.CHUNK_DETAIL_LEVELS];
 	}
 
-	public void setNodes(Node LightChunkNode, Node DarkChunkNode) {
-		this.ChunkLight = LightChunkNode;
-		this.ChunkDark = DarkChunkNode;
-		TerrainLight = new Node("TerrainLight");
-		TerrainDark = new Node("TerrainDark");
+	public void setNode(Node TargetChunkNode) {
+		this.ChunkNode = TargetChunkNode;
 	}
 
 	public void setHint(Spatial.CullHint TerrainHint) {
 		this.hint = TerrainHint;
 	}
 
+	/**
+	 * Any geometry held in the cache for the Chunk is stale once it is rebuilt
+	 */
+	public void setMeshCache(ChunkMeshCache Cache) {
+		this.MeshCache = Cache;
+	}
+
+	/**
+	 * Meshes found on disk are used in place of meshing, and newly built meshes
+	 * are written to disk for future sessions.
+	 */
+	public void setDiskCache(DiskMeshCache Cache) {
+		this.DiskCache = Cache;
+	}
+
+	/**
+	 * Uses previously built geometry instead of meshing the Chunk again, only
+	 * attachGeometry need then be called.
+	 */
+	public void setCachedGeometry(ChunkMeshCache.CachedMesh Cached) {
+		System.arraycopy(Cached.getTerrainGeometry(), 0, BuildGeometry, 0, BuildGeometry.length);
+	}
+
 	public Void call() {
-		TextureManager Texturing = TextureManager.getTextureManager();
+		if (MeshCache != null)
+			MeshCache.remove(BuildChunk.getChunkCoordinates());
 
 		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i ++) {
-			int BlockSize = 1 << i;
-			// Terrain Faces
-			HashMap<FaceCoordinate, Face> faces = BuildChunk.getFaces(i);
-			Iterator<Map.Entry<FaceCoordinate, Face>> entries = faces.entrySet().iterator();
-			while (entries.hasNext()) {
-				Map.Entry<FaceCoordinate, Face> entry = entries.next();
-				
-				FaceCoordinate coords = entry.getKey();
-				Face targetface = entry.getValue();
-
-				TextureAtlasCoordinates AtlasCoords = Texturing.getTextureCoordinates(targetface.getFaceMaterialType(), targetface.getFaceSurfaceType());
-				Mesh facemesh = TileSource.getMesh(targetface.getFaceShapeType(), AtlasCoords);
-				if (facemesh != null) {
-					Geometry geom = new Geometry("face", facemesh);
-					//geom.scale(1.001f);  //T-Chunk junction hack
-					
-					geom.scale(BlockSize, BlockSize, BlockSize);
-					geom.setLocalTranslation(new Vector3f(coords.getX() * BlockSize, coords.getY() * BlockSize, coords.getZ() * BlockSize));
-					geom.setMaterial(TextureManager.getTextureManager().TerrainMaterial);
-
-					if (targetface.isSunlit()) {
-						TerrainLight.attachChild(geom);
-					} else {
-						TerrainDark.attachChild(geom);
+			if (BuildChunk.getFaces(i).isEmpty())
+				continue;
+
+			String Name = "Geometry Chunk " + BuildChunk.toString() + "DetailLevel " + i;
+			long FacesHash = 0;
+			long[] FacesKey = null;
+			if (DiskCache != null) {
+				FacesHash = BuildChunk.getFacesHash(i);
+				FacesKey = BuildChunk.getFacesKey(i);
+				Mesh CachedMesh = DiskCache.load(FacesHash, FacesKey, i);
+				if (CachedMesh != null) {
+					BuildGeometry[i] = terrainGeometry(CachedMesh, Name);
+					continue;
+				}
+			}
+
+			Mesh BuiltMesh = meshFaces(i);
+			if (BuiltMesh != null) {
+				BuildGeometry[i] = terrainGeometry(BuiltMesh, Name);
+				if (DiskCache != null)
+					DiskCache.store(FacesHash, FacesKey, i, BuiltMesh);
+			}
+		}
+
+		attachGeometry();
+		return null;
+	}
+
+	/**
+	 * Meshes the Faces of one detail level into a single CompactMesh, null if
+	 * no Face has a shape to draw. Touches nothing on the render thread.
+	 */
+	public Mesh meshFaces(int DetailLevel) {
+		TextureManager Texturing = TextureManager.getTextureManager();
+		BufferPool Pool = BufferPool.getBufferPool();
+		ArrayList<Mesh> FaceMeshes = new ArrayList<Mesh>();
+		Node TerrainNode = new Node("Terrain");
+
+		int BlockSize = 1 << DetailLevel;
+		// Terrain Faces
+		HashMap<FaceCoordinate, Face> faces = BuildChunk.getFaces(DetailLevel);
+
+		Iterator<Map.Entry<FaceCoordinate, Face>> entries = faces.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<FaceCoordinate, Face> entry = entries.next();
+			
+			FaceCoordinate coords = entry.getKey();
+			Face targetface = entry.getValue();
+
+			TextureAtlasCoordinates AtlasCoords = Texturing.getTextureCoordinates(targetface.getFaceMaterialType(), targetface.getFaceSurfaceType());
+			Mesh facemesh = TileSource.getMesh(targetface.getFaceShapeType(), AtlasCoords);
+			if (facemesh != null) {
+				bakeLighting(facemesh, coords, targetface.isSunlit(), DetailLevel);
+				FaceMeshes.add(facemesh);
+				placeFaceMesh(TerrainNode, facemesh, coords, BlockSize);
+
+				// Skirts along the Chunk edge hide cracks against neighbours meshed at another detail level
+				for (Direction Side : Direction.CARDINAL_DIRECTIONS) {
+					if (!onChunkEdge(coords, Side, DetailLevel))
+						continue;
+
+					Mesh Skirt = TileSource.getSkirtMesh(targetface.getFaceShapeType(), Side, AtlasCoords);
+					if (Skirt != null) {
+						bakeLighting(Skirt, coords, targetface.isSunlit(), DetailLevel);
+						FaceMeshes.add(Skirt);
+						placeFaceMesh(TerrainNode, Skirt, coords, BlockSize);
 					}
 				}
 			}
+		}
+
+		Mesh Packed = null;
+		GeometryBatchFactory.optimize(TerrainNode, true);
+		if (TerrainNode.getQuantity() > 0) {
+			Mesh Batched = ((Geometry) TerrainNode.getChild(0)).getMesh();
+			Packed = CompactMesh.compact(Batched);
+			TerrainNode.detachAllChildren();
+			Pool.release(Batched);
+		}
+
+		// Face meshes were copied into the batch and are not drawn themselves
+		for (Mesh FaceMesh : FaceMeshes) {
+			Pool.release(FaceMesh);
+		}
+		return Packed;
+	}
 
-			GeometryBatchFactory.optimize(TerrainLight, true);
-			if (TerrainLight.getQuantity() > 0) {
-				LightBuildGeometry[i] = (Geometry) TerrainLight.getChild(0);
-				LightBuildGeometry[i].setName("LightGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
-				TerrainLight.detachAllChildren();
+	private void placeFaceMesh(Node TerrainNode, Mesh FaceMesh, FaceCoordinate Coordinates, int BlockSize) {
+		Geometry geom = new Geometry("face", FaceMesh);
+		//geom.scale(1.001f);  //T-Chunk junction hack
+
+		geom.scale(BlockSize, BlockSize, BlockSize);
+		geom.setLocalTranslation(new Vector3f(Coordinates.getX() * BlockSize, Coordinates.getY() * BlockSize, Coordinates.getZ() * BlockSize));
+		geom.setMaterial(TextureManager.getTextureManager().TerrainMaterial);
+		TerrainNode.attachChild(geom);
+	}
+
+	/**
+	 * True if the Block of the Face, at the size of this detail level, sits on
+	 * the Side of the Chunk.
+	 */
+	private static boolean onChunkEdge(FaceCoordinate Coordinates, Direction Side, int DetailLevel) {
+		int LastBlock = (BlockCoordinate.CHUNK_EDGE_SIZE >> DetailLevel) - 1;
+		switch (Side) {
+			case DIRECTION_NORTH:
+				return Coordinates.getY() == LastBlock;
+			case DIRECTION_SOUTH:
+				return Coordinates.getY() == 0;
+			case DIRECTION_EAST:
+				return Coordinates.getX() == LastBlock;
+			case DIRECTION_WEST:
+				return Coordinates.getX() == 0;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Adds the sunlight exposure of the Face and the ambient occlusion of each
+	 * vertex as a second texture coordinate, read by the Terrain material in
+	 * place of lights. Occlusion is only worked out at full detail.
+	 */
+	private void bakeLighting(Mesh FaceMesh, FaceCoordinate Coordinates, boolean Sunlit, int DetailLevel) {
+		FloatBuffer Positions = (FloatBuffer) FaceMesh.getBuffer(VertexBuffer.Type.Position).getData();
+		int VertexCount = FaceMesh.getVertexCount();
+		float Exposure = Sunlit ? 1.0f : 0.0f;
+
+		FloatBuffer Lighting = BufferPool.getBufferPool().borrowFloatBuffer(VertexCount * 2);
+		for (int i = 0; i < VertexCount; i++) {
+			float Occlusion = 1.0f;
+			if (DetailLevel == 0) {
+				float X = Coordinates.getX() + Positions.get(i * 3);
+				float Y = Coordinates.getY() + Positions.get(i * 3 + 1);
+				float Z = Coordinates.getZ() + Positions.get(i * 3 + 2);
+				Occlusion = vertexOcclusion(X, Y, Z);
 			}
+			Lighting.put(Exposure);
+			Lighting.put(Occlusion);
+		}
+		Lighting.flip();
 
-			GeometryBatchFactory.optimize(TerrainDark, true);
-			if (TerrainDark.getQuantity() > 0) {
-				DarkBuildGeometry[i] = (Geometry) TerrainDark.getChild(0);
-				DarkBuildGeometry[i].setName("DarkGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
-				TerrainDark.detachAllChildren();
+		FaceMesh.setBuffer(VertexBuffer.Type.TexCoord2, 2, Lighting);
+	}
+
+	/**
+	 * Counts the solid Blocks among the eight that meet at the lattice corner
+	 * nearest the vertex, a vertex on open flat ground has four. Blocks outside
+	 * the Chunk are taken as open.
+	 */
+	private float vertexOcclusion(float X, float Y, float Z) {
+		if (SolidBlocks == null)
+			SolidBlocks = buildSolidBlocks();
+
+		int CornerX = Math.round(X + BlockCoordinate.HALF_BLOCK);
+		int CornerY = Math.round(Y + BlockCoordinate.HALF_BLOCK);
+		int CornerZ = Math.round(Z + BlockCoordinate.HALF_BLOCK);
+
+		int Solid = 0;
+		for (int x = CornerX - 1; x <= CornerX; x++) {
+			for (int y = CornerY - 1; y <= CornerY; y++) {
+				for (int z = CornerZ - 1; z <= CornerZ; z++) {
+					if (isSolid(x, y, z))
+						Solid++;
+				}
 			}
 		}
 
-		app.enqueue(new Callable() {
-			public Object call() throws Exception {
-				for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i ++) {
-					ChunkLight.detachChildNamed("LightGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
-					if (LightBuildGeometry[i] != null) {
-						ChunkLight.attachChild(LightBuildGeometry[i]);
-						if (i == DetailLevel) {
-							LightBuildGeometry[i].setCullHint(hint);
-						} else {
-							LightBuildGeometry[i].setCullHint(Spatial.CullHint.Always);							
-						}
-					}
+		int Crowding = Math.max(0, Solid - 4);
+		return Math.max(0.0f, 1.0f - (OCCLUSION_STEP * Crowding));
+	}
 
-					ChunkDark.detachChildNamed("DarkGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
-					if (DarkBuildGeometry[i] != null) {
-						ChunkDark.attachChild(DarkBuildGeometry[i]);
-						if (i == DetailLevel) {
-							DarkBuildGeometry[i].setCullHint(hint);
-						} else {
-							DarkBuildGeometry[i].setCullHint(Spatial.CullHint.Always);							
-						}					
-					}
+	private boolean isSolid(int X, int Y, int Z) {
+		int Edge = BlockCoordinate.CHUNK_EDGE_SIZE;
+		if (X < 0 || Y < 0 || Z < 0 || X >= Edge || Y >= Edge || Z >= Edge)
+			return false;
+		return SolidBlocks[(Z * Edge + Y) * Edge + X];
+	}
+
+	private boolean[] buildSolidBlocks() {
+		int Edge = BlockCoordinate.CHUNK_EDGE_SIZE;
+		boolean[] Solids = new boolean[Edge * Edge * Edge];
+
+		BlockCoordinate Index = new BlockCoordinate();
+		BlockShape Shape = new BlockShape();
+		for (int z = 0; z < Edge; z++) {
+			for (int y = 0; y < Edge; y++) {
+				for (int x = 0; x < Edge; x++) {
+					Index.set(x, y, z);
+					BuildChunk.getBlockShape(Index, Shape);
+					Solids[(z * Edge + y) * Edge + x] = Shape.isSolid();
 				}
+			}
+		}
+		return Solids;
+	}
+
+	private static Geometry terrainGeometry(Mesh PackedMesh, String Name) {
+		if (PackedMesh == null)
+			return null;
+
+		Geometry geom = CompactMesh.createGeometry(Name, PackedMesh);
+		geom.setMaterial(TextureManager.getTextureManager().TerrainMaterial);
+		return geom;
+	}
+
+	/**
+	 * Swaps the built geometry into the Chunks node on the render thread.
+	 */
+	public void attachGeometry() {
+		app.enqueue(new Callable() {
+			public Object call() throws Exception {
+				Handles.attach(ChunkNode, BuildGeometry, hint);
 				return null;
 			}
 		});
-		return null;
 	}
 }
@@ -18,16 +18,16 @@
 package Renderer;
 
 import Map.Chunk;
-import Map.Coordinates.BlockCoordinate;
 
 import com.jme3.app.Application;
-import com.jme3.scene.Node;
+import com.jme3.scene.Geometry;
 
 import java.util.concurrent.Callable;
 
 /**
  * Callable class that removes a target Mesh from
- * the Scene graph.
+ * the Scene graph, the removed geometry is kept in a ChunkMeshCache when one
+ * is given so the Chunk can be reattached without rebuilding.
  *
  * @author Impaler
  */
@@ -36,26 +36,37 @@ public class TerrainDestroyer implements Callable<Void>{
 
 	Chunk BuildChunk;
 	Application app;
-	Node ChunkLight, ChunkDark;
-	int DetailLevel;
+	ChunkGeometry Handles;
+	ChunkMeshCache MeshCache;
+	int CacheVersion;
 
-	public TerrainDestroyer(Application Parentapp, Chunk TargetChunk, int LevelofDetail) {
+	public TerrainDestroyer(Application Parentapp, Chunk TargetChunk, ChunkGeometry GeometryHandles) {
 		this.app = Parentapp;
 		this.BuildChunk = TargetChunk;
-		this.DetailLevel = LevelofDetail;
+		this.Handles = GeometryHandles;
 	}
 
-	public void setNodes(Node LightChunkNode, Node DarkChunkNode) {
-		this.ChunkLight = LightChunkNode;
-		this.ChunkDark = DarkChunkNode;
+	/**
+	 * Version is the Terrain version of the Chunk when its geometry was built
+	 */
+	public void setMeshCache(ChunkMeshCache Cache, int Version) {
+		this.MeshCache = Cache;
+		this.CacheVersion = Version;
 	}
 
 	public Void call() {
-			app.enqueue(new Callable() {
+		app.enqueue(new Callable() {
 			public Object call() throws Exception {
-				for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i ++) {
-					ChunkLight.detachChildNamed("LightGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
-					ChunkDark.detachChildNamed("DarkGeometry Chunk " + BuildChunk.toString() + "DetailLevel " + i);
+				Geometry[] Detached = Handles.detach();
+
+				if (MeshCache != null) {
+					MeshCache.put(BuildChunk.getChunkCoordinates(), CacheVersion, Detached);
+				} else {
+					BufferPool Pool = BufferPool.getBufferPool();
+					for (Geometry geom : Detached) {
+						if (geom != null)
+							Pool.release(geom.getMesh());
+					}
 				}
 				return null;
 			}
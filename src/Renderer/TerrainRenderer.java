@@ -21,7 +21,9 @@ import Map.Coordinates.ChunkCoordinate;
 import Map.*;
 import Game.Game;
 import Interface.GameCameraState;
+import Map.Coordinates.Axis;
 import Map.Coordinates.BlockCoordinate;
+import Map.Coordinates.Direction;
 
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,15 +34,17 @@ import com.jme3.app.state.AppStateManager;
 
 import com.jme3.asset.AssetManager;
 
-import com.jme3.bounding.BoundingBox;
 import com.jme3.math.Vector3f;
 
 import com.jme3.scene.control.LodControl;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 
+import java.io.File;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.concurrent.ExecutorService;
+import javax.swing.filechooser.FileSystemView;
 
 /**
  * Rendering class for Terrain, tracks all Scene Nodes that Terrain geometry
@@ -58,16 +62,36 @@ public class TerrainRenderer extends AbstractAppState {
 	GameCameraState CameraState = null;
 	Game game = null;
 	TileBuilder builder;
+	// Detail levels are chosen per Chunk by distance, shifted by this bias
 	int LevelofDetail;
 	private boolean TerrainRenderingToggle = true;
 	Spatial.CullHint TerrainHint = Spatial.CullHint.Never;
 	ExecutorService Executor;
 	ConcurrentHashMap<ChunkCoordinate, Chunk> MeshedChunks;
+	OcclusionCuller Occlusion;
+	ChunkQuadTree ChunkIndex;
+	HashSet<Chunk> FrustumChunks;
+	ChunkMeshCache MeshCache;
+	DiskMeshCache DiskCache;
+	ConcurrentHashMap<ChunkCoordinate, ChunkGeometry> ChunkGeometries;
+	int DetailPass;
+
+	// Distance from the virtual eye at which each coarser detail level begins
+	static final float[] DETAIL_DISTANCES = {60, 120, 240, 480};
+	static final int MAX_DETAIL_LEVEL = DETAIL_DISTANCES.length;
+	// Fraction past a threshold a Chunk must move before its level switches
+	static final float DETAIL_HYSTERESIS = 0.15f;
 
 	public TerrainRenderer(ExecutorService Threadpool) {
 		Executor = Threadpool;
 		builder = new TileBuilder();
 		MeshedChunks = new ConcurrentHashMap<ChunkCoordinate, Chunk>();
+		Occlusion = new OcclusionCuller();
+		ChunkIndex = new ChunkQuadTree();
+		FrustumChunks = new HashSet<Chunk>();
+		MeshCache = new ChunkMeshCache(ChunkMeshCache.DEFAULT_BUDGET);
+		DiskCache = new DiskMeshCache();
+		ChunkGeometries = new ConcurrentHashMap<ChunkCoordinate, ChunkGeometry>();
 	}
 
 	@Override
@@ -80,6 +104,16 @@ public class TerrainRenderer extends AbstractAppState {
 
 	public void attachToGame(Game TargetGame) {
 		this.game = TargetGame;
+		Occlusion.invalidate();
+		ChunkIndex = new ChunkQuadTree();
+		FrustumChunks.clear();
+		MeshCache.clear();
+		ChunkGeometries.clear();
+
+		if (!DiskCache.isOpen()) {
+			String myDocumentsFolder = FileSystemView.getFileSystemView().getDefaultDirectory().toString();
+			DiskCache.open(new File(myDocumentsFolder + "/my games/Khazad/MeshCache.dat"));
+		}
 	}
 
 	public void queueChunkBuild(Chunk targetChunk, int DetailLevel) {
@@ -87,26 +121,47 @@ public class TerrainRenderer extends AbstractAppState {
 		ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
 
 		MeshedChunks.put(Coords, targetChunk);
-		TerrainBuilder Builder = new TerrainBuilder(app, targetChunk, builder, DetailLevel);
+		TerrainBuilder Builder = new TerrainBuilder(app, targetChunk, builder, getChunkGeometry(Coords));
 
-		Builder.setNodes(Renderer.getChunkNodeLight(Coords), Renderer.getChunkNodeDark(Coords));
+		Builder.setNode(Renderer.getChunkNode(Coords));
 		Builder.setHint(TerrainHint);
-		Executor.submit(Builder);
+		Builder.setMeshCache(MeshCache);
+		Builder.setDiskCache(DiskCache);
+
+		ChunkMeshCache.CachedMesh Cached = null;
+		if (!targetChunk.isTerrainRenderingDirty())
+			Cached = MeshCache.take(Coords, targetChunk.getTerrainVersion());
+
+		if (Cached != null) {
+			Builder.setCachedGeometry(Cached);
+			Builder.attachGeometry();
+		} else {
+			Executor.submit(Builder);
+		}
 
 		targetChunk.setDirtyTerrainRendering(false);
 	}
 
 	public void queueChunkDestroy(Chunk targetChunk, int DetailLevel) {
-		MapRenderer Renderer = state.getState(MapRenderer.class);
 		ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
 
 		MeshedChunks.remove(Coords);
-		TerrainDestroyer Destroyer = new TerrainDestroyer(app, targetChunk, DetailLevel);
+		TerrainDestroyer Destroyer = new TerrainDestroyer(app, targetChunk, getChunkGeometry(Coords));
 
-		Destroyer.setNodes(Renderer.getChunkNodeLight(Coords), Renderer.getChunkNodeDark(Coords));
+		if (!targetChunk.isTerrainRenderingDirty())
+			Destroyer.setMeshCache(MeshCache, targetChunk.getTerrainVersion());
 		Executor.submit(Destroyer);
+	}
 
-		targetChunk.setDirtyTerrainRendering(true);
+	ChunkGeometry getChunkGeometry(ChunkCoordinate Coords) {
+		ChunkGeometry Handles = ChunkGeometries.get(Coords);
+		if (Handles == null) {
+			Handles = new ChunkGeometry();
+			ChunkGeometry Existing = ChunkGeometries.putIfAbsent(Coords, Handles);
+			if (Existing != null)
+				Handles = Existing;
+		}
+		return Handles;
 	}
 
 	public void rebuildDirtyChunks(Collection<Chunk> cells) {
@@ -116,45 +171,138 @@ public class TerrainRenderer extends AbstractAppState {
 		}
 	}
 
+	/**
+	 * Queries the ChunkIndex for the Chunks now inside the Frustum, builds
+	 * those newly entering and destroys the meshed Chunks which have left, the
+	 * work done follows the visible Chunks rather then every Chunk in the Map.
+	 */
 	public void SwapFrustrumChunks() {
 		GameMap map = this.game.getMap();
-		for (Sector targetSector : map.getSectorCollection()) {
-			
-			// DO bounding box test on whole sector
-			Collection<Chunk> cells = targetSector.getChunkCollection();
+		this.CameraState = state.getState(GameCameraState.class);
+		Occlusion.update(map, CameraState.getSliceTop());
+
+		if (ChunkIndex.needsRebuild(map))
+			ChunkIndex.build(map);
+
+		FrustumChunks.clear();
+		ChunkIndex.queryFrustum(CameraState, Occlusion, FrustumChunks);
+
+		// Add Chunks newly entering the Frustrum, unchanged Chunks come from the MeshCache
+		for (Chunk targetChunk : FrustumChunks) {
+			if (targetChunk.isTerrainRenderingDirty() || !MeshedChunks.containsKey(targetChunk.getChunkCoordinates())) {
+				queueChunkBuild(targetChunk, this.LevelofDetail);
+			}
+		}
+
+		// Remove Chunks nolonger in the Frustrum or nolonger visible
+		for (Chunk targetChunk : MeshedChunks.values()) {
+			if (!FrustumChunks.contains(targetChunk)) {
+				queueChunkDestroy(targetChunk, this.LevelofDetail);
+			}
+		}
 
-			BoundingBox ChunkBox = new BoundingBox();
-			ChunkBox.setXExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
-			ChunkBox.setYExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
-			ChunkBox.setZExtent(BlockCoordinate.CHUNK_EDGE_SIZE);
-			ChunkBox.setCheckPlane(0);
+		updateDetailLevels();
+	}
 
-			this.CameraState = state.getState(GameCameraState.class);
+	/**
+	 * Picks the detail level of each Chunk in the Frustum from its distance to
+	 * a virtual eye placed back along the view direction by the zoom, so an
+	 * orthographic zoom counts as distance just as it did for the old map wide
+	 * levels. A Chunk must cross a threshold by the hysteresis margin before
+	 * switching, and neighboring Chunks are kept within one level of each other.
+	 * The gaps where Chunks of different levels meet are then never deeper than
+	 * the skirts TerrainBuilder hangs along each Chunk edge.
+	 */
+	void updateDetailLevels() {
+		if (CameraState == null || FrustumChunks.isEmpty())
+			return;
 
-			// Add Chunks newly entering the Frustrum
-			for (Chunk targetChunk : cells) {
+		Vector3f LookDirection = CameraState.getLookDirection();
+		Vector3f Eye = CameraState.getTargetLocation().subtractLocal(LookDirection.multLocal(CameraState.getZoom()));
+		float HalfEdge = BlockCoordinate.CHUNK_EDGE_SIZE / 2.0f;
+		DetailPass++;
+
+		for (Chunk targetChunk : FrustumChunks) {
+			ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
+			ChunkGeometry Handles = getChunkGeometry(Coords);
+
+			Vector3f Center = Coords.getVector().addLocal(HalfEdge, HalfEdge, HalfEdge);
+			float dx = Math.max(Math.abs(Center.x - Eye.x) - HalfEdge, 0);
+			float dy = Math.max(Math.abs(Center.y - Eye.y) - HalfEdge, 0);
+			float dz = Math.max(Math.abs(Center.z - Eye.z) - HalfEdge, 0);
+			float Distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+			int Level = Handles.DistanceLevel;
+			while (Level < MAX_DETAIL_LEVEL && Distance > DETAIL_DISTANCES[Level] * (1 + DETAIL_HYSTERESIS))
+				Level++;
+			while (Level > 0 && Distance < DETAIL_DISTANCES[Level - 1] * (1 - DETAIL_HYSTERESIS))
+				Level--;
+
+			Handles.DistanceLevel = Level;
+			Handles.TargetLevel = Math.min(Level + LevelofDetail, MAX_DETAIL_LEVEL);
+			Handles.LevelPass = DetailPass;
+		}
+
+		// Limit neighboring Chunks to one level apart, lowering only so it settles
+		ChunkCoordinate NeighborCoords = new ChunkCoordinate();
+		boolean Changed = true;
+		while (Changed) {
+			Changed = false;
+			for (Chunk targetChunk : FrustumChunks) {
 				ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
-				Vector3f Center = Coords.getVector();
-				ChunkBox.setCenter(Center);
-				if (this.CameraState.contains(ChunkBox)) {
-					if (targetChunk.isTerrainRenderingDirty()) {
-						queueChunkBuild(targetChunk, this.LevelofDetail);
+				ChunkGeometry Handles = ChunkGeometries.get(Coords);
+
+				for (Direction AxialDirection : Direction.AXIAL_DIRECTIONS) {
+					NeighborCoords.X = (short) (Coords.X + AxialDirection.getValueonAxis(Axis.AXIS_X));
+					NeighborCoords.Y = (short) (Coords.Y + AxialDirection.getValueonAxis(Axis.AXIS_Y));
+					NeighborCoords.Z = (short) (Coords.Z + AxialDirection.getValueonAxis(Axis.AXIS_Z));
+
+					ChunkGeometry Neighbor = ChunkGeometries.get(NeighborCoords);
+					if (Neighbor != null && Neighbor.LevelPass == DetailPass && Handles.TargetLevel > Neighbor.TargetLevel + 1) {
+						Handles.TargetLevel = Neighbor.TargetLevel + 1;
+						Changed = true;
 					}
 				}
 			}
+		}
 
-			// Remove Chunks nolonger in the Frustrum
-			for (Chunk targetChunk : MeshedChunks.values()) {
-				ChunkCoordinate Coords = targetChunk.getChunkCoordinates();
-				Vector3f Center = Coords.getVector();
-				ChunkBox.setCenter(Center);
-				if (this.CameraState.contains(ChunkBox) == false) {
-					queueChunkDestroy(targetChunk, this.LevelofDetail);
+		for (Chunk targetChunk : FrustumChunks) {
+			ChunkGeometry Handles = ChunkGeometries.get(targetChunk.getChunkCoordinates());
+			if (Handles.TargetLevel != Handles.getDetailLevel())
+				Handles.show(Handles.TargetLevel, TerrainHint);
+		}
+	}
+
+	/**
+	 * Reruns the frustum swap when the slice moves or digging opens up new
+	 * sightlines, as either can change which buried Chunks are visible.
+	 */
+	void updateOcclusion() {
+		if (this.game != null) {
+			GameCameraState Camera = state.getState(GameCameraState.class);
+			if (Camera != null) {
+				GameMap map = this.game.getMap();
+				if (Occlusion.update(map, Camera.getSliceTop())) {
+					SwapFrustrumChunks();
 				}
 			}
 		}
 	}
 
+	public void setOcclusionCulling(boolean NewValue) {
+		Occlusion.setEnabled(NewValue);
+		if (this.game != null)
+			SwapFrustrumChunks();
+	}
+
+	public void setMeshCacheBudget(long Bytes) {
+		MeshCache.setBudget(Bytes);
+	}
+
+	public ChunkMeshCache getMeshCache() {
+		return MeshCache;
+	}
+
 	public boolean getTerrainRendering() {
 		return TerrainRenderingToggle;
 	}
@@ -169,92 +317,31 @@ public class TerrainRenderer extends AbstractAppState {
 		if (getTerrainRendering())
 			TerrainHint = Spatial.CullHint.Dynamic;
 
-		GameMap map = this.game.getMap();
-		for (Sector targetSector : map.getSectorCollection()) {
-			for (Chunk target : targetSector.getChunkCollection()) {
-				ChunkCoordinate Coords = target.getChunkCoordinates();
-
-				MapRenderer Renderer = state.getState(MapRenderer.class);
-				Node ChunkLight = Renderer.getChunkNodeLight(Coords);
-				Node ChunkDark = Renderer.getChunkNodeDark(Coords);
-
-				Spatial light = ChunkLight.getChild("LightGeometry Chunk " + target.toString() + "DetailLevel " + this.LevelofDetail);
-				Spatial dark = ChunkDark.getChild("DarkGeometry Chunk " + target.toString() + "DetailLevel " + this.LevelofDetail);
-
-				if (light != null)
-					light.setCullHint(TerrainHint);
-				if (dark != null)
-					dark.setCullHint(TerrainHint);
-			}
-		}
-	}
-
-	public void setLevelofDetail(float ZoomLevel) {
-		int NewDetailLevel = 0;
-
-		if (ZoomLevel > 60)
-			NewDetailLevel = 1;
-		if (ZoomLevel > 120)
-			NewDetailLevel = 2;
-		if (ZoomLevel > 240)
-			NewDetailLevel = 3;
-		if (ZoomLevel > 480)
-			NewDetailLevel = 4;
-
-		if (NewDetailLevel != this.LevelofDetail) {
-			this.LevelofDetail = NewDetailLevel;
-
-			GameMap map = this.game.getMap();
-			for (Sector targetSector : map.getSectorCollection()) {
-				for (Chunk target : targetSector.getChunkCollection()) {
-					setChunkDetailLevel(target, this.LevelofDetail);
-				}
-			}
+		for (ChunkGeometry Handles : ChunkGeometries.values()) {
+			Handles.show(Handles.getDetailLevel(), TerrainHint);
 		}
 	}
 
+	/**
+	 * Shifts every Chunk toward coarser or finer detail than its distance gives.
+	 */
 	public void changeLevelofDetal(int Change) {
-		if (Change < 0 && this.LevelofDetail == 0)
-			return;
-		if (Change > 1 && this.LevelofDetail == 4)
-			return;
-
 		this.LevelofDetail += Change;
 
 		if (this.LevelofDetail < 0)
 			this.LevelofDetail = 0;
 
-		if (this.LevelofDetail > 4)
-			this.LevelofDetail = 4;
+		if (this.LevelofDetail > MAX_DETAIL_LEVEL)
+			this.LevelofDetail = MAX_DETAIL_LEVEL;
 
-		GameMap map = this.game.getMap();
-		for (Sector targetSector : map.getSectorCollection()) {
-			for (Chunk target : targetSector.getChunkCollection()) {
-				setChunkDetailLevel(target, this.LevelofDetail);
-			}
-		}
+		if (this.game != null)
+			updateDetailLevels();
 	}
 
-	private void setChunkDetailLevel(Chunk TargetChunk, int LevelofDetail) {
-		ChunkCoordinate Coords = TargetChunk.getChunkCoordinates();
-
-		MapRenderer Renderer = state.getState(MapRenderer.class);
-		Node ChunkLight = Renderer.getChunkNodeLight(Coords);
-		Node ChunkDark = Renderer.getChunkNodeDark(Coords);
-
-		for (int i = 0; i < BlockCoordinate.CHUNK_DETAIL_LEVELS; i++) {
-			Spatial.CullHint hint = Spatial.CullHint.Always;
-			if (i == LevelofDetail && TerrainRenderingToggle)
-				hint = Spatial.CullHint.Dynamic;
-
-			Spatial light = ChunkLight.getChild("LightGeometry Chunk " + TargetChunk.toString() + "DetailLevel " + i);
-			Spatial dark = ChunkDark.getChild("DarkGeometry Chunk " + TargetChunk.toString() + "DetailLevel " + i);
-
-			if (light != null)
-				light.setCullHint(hint);
-			if (dark != null)
-				dark.setCullHint(hint);
-		}
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		DiskCache.close();
 	}
 
 	@Override
@@ -262,6 +349,7 @@ public class TerrainRenderer extends AbstractAppState {
 		if (this.game != null) {
 			GameMap map = this.game.getMap();
 			if (TerrainRenderingToggle) {
+				updateOcclusion();
 				for (Sector targetSector : map.getSectorCollection()) {
 					rebuildDirtyChunks(targetSector.getChunkCollection());
 				}
@@ -23,12 +23,15 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 
 import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
 import com.jme3.texture.Texture;
 import com.jme3.texture.Texture2D;
 import com.jme3.texture.Image;
 
 import com.jme3.util.BufferUtils;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 /**
  *
@@ -40,6 +43,8 @@ public class TextureManager {
 	Texture TerrainTexture;
 	Material TerrainMaterial;
 	ConcurrentHashMap<Integer, TextureAtlasCoordinates> CoordinateMap;
+	// Material and Texture of each image in the order they entered the Atlas
+	ArrayList<Integer> AtlasKeys;
 	boolean[][] AtlasOccupiedMatrix;
 	int AtlasWidth, AtlasHeight, MinimumUnitSize;
 	Semaphore semaphore;
@@ -57,6 +62,7 @@ public class TextureManager {
 
 		semaphore = new Semaphore(1);
 		CoordinateMap = new ConcurrentHashMap<Integer, TextureAtlasCoordinates>();
+		AtlasKeys = new ArrayList<Integer>();
 		AtlasOccupiedMatrix = new boolean[AtlasWidth / MinimumUnitSize][AtlasHeight / MinimumUnitSize];
 	}
 
@@ -68,7 +74,10 @@ public class TextureManager {
 	}
 
 	public void initialize(AssetManager manager) {
-		TerrainMaterial = new Material(manager, "Common/MatDefs/Light/Lighting.j3md");
+		TerrainMaterial = new Material(manager, "MatDefs/Terrain/Terrain.j3md");
+		TerrainMaterial.setColor("AmbientColor", new ColorRGBA(0.36f, 0.36f, 0.36f, 1.0f));
+		TerrainMaterial.setColor("SunColor", ColorRGBA.Black);
+		TerrainMaterial.setVector3("SunDirection", new Vector3f(0, 0, -1));
 
 		int Bytes = Image.Format.RGBA8.getBitsPerPixel() / 8;
 		byte[] data = new byte[AtlasWidth * AtlasHeight * Bytes];
@@ -81,6 +90,23 @@ public class TextureManager {
 		TerrainMaterial.setTexture("DiffuseMap", TerrainTexture);
 	}
 
+	/**
+	 * Sunlight is baked into the Terrain meshes as an exposure per vertex, so
+	 * only these uniforms change as the Sun moves.
+	 */
+	public void setSun(Vector3f Direction, ColorRGBA Color) {
+		TerrainMaterial.setVector3("SunDirection", Direction);
+		TerrainMaterial.setColor("SunColor", Color);
+	}
+
+	public void setSunlitVisible(boolean Visible) {
+		TerrainMaterial.setBoolean("HideSunlit", !Visible);
+	}
+
+	public void setDarkVisible(boolean Visible) {
+		TerrainMaterial.setBoolean("HideDark", !Visible);
+	}
+
 	TextureAtlasCoordinates getTextureCoordinates(short MaterialTypeID, short SurfaceTypeID) {
 		TextureAtlasCoordinates Target;
 
@@ -101,6 +127,7 @@ public class TextureManager {
 					Image NewImage = Imaging.mapTexture(MaterialTypeID, TextureID);
 					Target = insertImage(NewImage);
 					CoordinateMap.put(Key, Target);
+					AtlasKeys.add(packAtlasKey(MaterialTypeID, TextureID));
 					//Imaging.SaveImage(TerrainImage, "Terrain.png");
 				}
 			} finally {
@@ -114,6 +141,83 @@ public class TextureManager {
 		return null;
 	}
 
+	private static int packAtlasKey(short MaterialTypeID, short TextureID) {
+		return (MaterialTypeID << 16) | (TextureID & 0xFFFF);
+	}
+
+	/**
+	 * Number of images placed in the Atlas so far, as images are never moved
+	 * the Atlas layout is fully described by the sequence of AtlasKeys.
+	 */
+	public int getAtlasKeyCount() {
+		try {
+			semaphore.acquire();
+			try {
+				return AtlasKeys.size();
+			} finally {
+				semaphore.release();
+			}
+		} catch (final InterruptedException e) {
+			e.printStackTrace();
+		}
+		return 0;
+	}
+
+	public int getAtlasKey(int Index) {
+		try {
+			semaphore.acquire();
+			try {
+				return AtlasKeys.get(Index);
+			} finally {
+				semaphore.release();
+			}
+		} catch (final InterruptedException e) {
+			e.printStackTrace();
+		}
+		return 0;
+	}
+
+	/**
+	 * Replays the placement of an image recorded by an earlier session so the
+	 * Atlas ends up with the same layout, returns false if the Atlas already
+	 * holds a different image at that position in the sequence.
+	 */
+	public boolean replayAtlasKey(int Index, int AtlasKey) {
+		try {
+			semaphore.acquire();
+			try {
+				if (Index < AtlasKeys.size())
+					return AtlasKeys.get(Index) == AtlasKey;
+				if (Index > AtlasKeys.size())
+					return false;
+
+				short MaterialTypeID = (short) (AtlasKey >> 16);
+				short TextureID = (short) AtlasKey;
+
+				int Key = MaterialTypeID;
+				Key = Key << 16;
+				Key += TextureID;
+				if (CoordinateMap.containsKey(Key))
+					return false;
+
+				ImageManager Imaging = ImageManager.getImageManager();
+				Image NewImage = Imaging.mapTexture(MaterialTypeID, TextureID);
+				TextureAtlasCoordinates Target = insertImage(NewImage);
+				if (Target == null)
+					return false;
+
+				CoordinateMap.put(Key, Target);
+				AtlasKeys.add(AtlasKey);
+				return true;
+			} finally {
+				semaphore.release();
+			}
+		} catch (final Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
 	TextureAtlasCoordinates insertImage(Image NewImage) {
 		int ImageWidth = NewImage.getWidth() / MinimumUnitSize;
 		int ImageHeight = NewImage.getHeight() / MinimumUnitSize;
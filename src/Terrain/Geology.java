@@ -346,6 +346,37 @@ public class Geology implements Serializable {
 		return new BlockShape(SWCornerHeight, SECornerHeight, NWCornerHeight, NECornerHeight, (byte) Split);
 	}
 
+	/**
+	 * Generates the height of every Chunk column in the range and fills the
+	 * Chunks of the map covering it with shape and material data.
+	 */
+	public void loadMapChunks(GameMap TargetMap, int X, int Y, int SizeX, int SizeY) {
+		for (int x = X; x < SizeX; x++) {
+			for (int y = Y; y < SizeY; y++) {
+				generateChunkHeight(x, y, (float) 10.0, (float) 1.5);
+
+				int zBottom, zTop;
+				if ((getChunkBottomZLevel() - 2) < 0) {
+					zBottom = ((getChunkBottomZLevel() - 2) / BlockCoordinate.CHUNK_EDGE_SIZE) - 1;
+				} else { 
+					zBottom = ((getChunkBottomZLevel() - 2) / BlockCoordinate.CHUNK_EDGE_SIZE);
+				}
+				if ((getChunkTopZLevel() + 2) < 0) {
+					zTop = ((getChunkTopZLevel() + 2) / BlockCoordinate.CHUNK_EDGE_SIZE) - 1;
+				} else { 
+					zTop = ((getChunkTopZLevel() + 2) / BlockCoordinate.CHUNK_EDGE_SIZE);
+				}
+
+				Sector targetSector = TargetMap.getSector(new SectorCoordinate((byte)0, (byte)0));
+				for (int z = zBottom; z <= zTop; z++) {
+					ChunkCoordinate TargetChunkCoordinates = new ChunkCoordinate(x, y, z);
+					Chunk targetChunk = targetSector.getChunk(TargetChunkCoordinates);
+					loadChunkData(targetChunk);
+				}
+			}
+		}
+	}
+
 	public void loadChunkData(Chunk TargetChunk) {
 		ChunkCoordinate ChunkCoords = TargetChunk.getChunkCoordinates();
 		for (byte DetailLevel = 0; DetailLevel < BlockCoordinate.CHUNK_DETAIL_LEVELS; DetailLevel++) {